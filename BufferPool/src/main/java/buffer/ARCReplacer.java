@@ -0,0 +1,370 @@
+package buffer;
+
+import impletation.IntIntHashMap;
+import storage.page.Page;
+
+import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ARCReplacer implements the Adaptive Replacement Cache policy (Megiddo &amp; Modha, FAST '03).
+ * <p>
+ * 驻留在缓冲池中的frame被分为两个LRU链表：T1（只被访问过一次，recency）和T2（至少被访问过两次，frequency）。
+ * 被替换出去的page_id会被记录在对应的ghost链表B1/B2中（只记录id，没有数据）。
+ * 若一个page在B1中被再次访问，说明T1太小，则增大T1的目标大小p；在B2中被再次访问则减小p。
+ * 一次大的scan只会经过T1，而不会将T2中的热点页面替换出去。
+ * </p>
+ * <p>
+ * 与论文中不同，替换的时机由BufferPoolManager决定：{@link #victim()} 只在evictable（unpin）的frame中选择，
+ * 新page的分类在之后的 {@link #recordAccess(int, int)} 中进行。没有被记录过访问就被unpin的frame放在T1的LRU端，
+ * 所以evictable的frame总是在T1或者T2中，选择victim时不需要扫描所有的frame。
+ * T1/T2是以frame_id为下标的数组实现的双向链表，不需要分配节点。B1/B2也使用同样的数组：下标为
+ * [numFrames, 2 * numFrames] 的节点是ghost节点，只记录page_id，空闲的ghost节点保存在一个栈中，
+ * page_id到ghost节点的映射是一个 {@link IntIntHashMap}，所以访问ghost链表同样不需要分配内存。
+ * </p>
+ */
+public class ARCReplacer implements Replacer {
+    private static final int NIL = -1;
+    private static final int NONE = 0;
+    private static final int T1 = 1;
+    private static final int T2 = 2;
+    private static final int B1 = 3;
+    private static final int B2 = 4;
+
+    private final int numFrames;
+    /** 每个节点（frame或者ghost）所在的链表，NONE/T1/T2/B1/B2 */
+    private final int[] listOf;
+    private final int[] prev;
+    private final int[] next;
+    /** 每个链表的头（MRU）、尾（LRU）和长度，以NONE/T1/T2/B1/B2为下标 */
+    private final int[] head = {NIL, NIL, NIL, NIL, NIL};
+    private final int[] tail = {NIL, NIL, NIL, NIL, NIL};
+    private final int[] length = new int[5];
+    /** frame中当前的page_id（被替换时将其加入ghost链表），或者ghost节点记录的page_id */
+    private final int[] pageOf;
+    private final boolean[] evictable;
+    /** 没有被记录过访问、由unpin放入T1的frame，之后的第一次访问仍然被视为一个新的page */
+    private final boolean[] untracked;
+    /** page_id -> 记录它的ghost节点 */
+    private final IntIntHashMap ghostOf;
+    /** 空闲的ghost节点 */
+    private final int[] freeGhosts;
+    private int numFreeGhosts;
+    /** target size of T1 */
+    private int p;
+    private int size;
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * @param numFrames the maximum number of frames the replacer will be required to store
+     */
+    public ARCReplacer(int numFrames) {
+        this.numFrames = numFrames;
+        // addGhost在删除最旧的ghost之前可能暂时多出一个，所以ghost节点有 numFrames + 1 个
+        int numNodes = 2 * numFrames + 1;
+        this.listOf = new int[numNodes];
+        this.prev = new int[numNodes];
+        this.next = new int[numNodes];
+        this.pageOf = new int[numNodes];
+        this.evictable = new boolean[numFrames];
+        this.untracked = new boolean[numFrames];
+        this.ghostOf = new IntIntHashMap(numFrames + 1, NIL);
+        this.freeGhosts = new int[numFrames + 1];
+        for (int ghost = numNodes - 1; ghost >= numFrames; ghost--) {
+            freeGhosts[numFreeGhosts++] = ghost;
+        }
+    }
+
+    /**
+     * REPLACE：若T1超过了其目标大小p，则替换T1的LRU，否则替换T2的LRU；被替换的page_id进入对应的ghost链表
+     */
+    @Override
+    public Optional<Integer> victim() {
+        lock.lock();
+        try {
+            int frameId = victimFrame();
+            return frameId == NO_VICTIM ? Optional.empty() : Optional.of(frameId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int victimFrame() {
+        lock.lock();
+        try {
+            if (size == 0) {
+                return NO_VICTIM;
+            }
+            int frameId;
+            if (length[T1] > 0 && length[T1] > p) {
+                frameId = lruEvictable(T1);
+                if (frameId == NIL) {
+                    frameId = lruEvictable(T2);
+                }
+            } else {
+                frameId = lruEvictable(T2);
+                if (frameId == NIL) {
+                    frameId = lruEvictable(T1);
+                }
+            }
+            assert frameId != NIL; // evictable的frame都在T1或者T2中
+            int list = listOf[frameId];
+            unlink(frameId);
+            int pageId = pageOf[frameId];
+            if (pageId != Page.INVALID_PAGE_ID) {
+                addGhost(list == T1 ? B1 : B2, pageId);
+            }
+            untracked[frameId] = false;
+            evictable[frameId] = false;
+            pageOf[frameId] = Page.INVALID_PAGE_ID;
+            size--;
+            return frameId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 按照REPLACE的规则，先是被优先替换的链表中的evictable frame（从LRU开始），然后是另一个链表，
+     * 忽略了替换过程中|T1|的变化
+     */
+    @Override
+    public int[] evictionCandidates(int n) {
+        lock.lock();
+        try {
+            int[] candidates = new int[Math.min(n, size)];
+            int first = length[T1] > 0 && length[T1] > p ? T1 : T2;
+            int count = collectEvictable(first, candidates, 0);
+            collectEvictable(first == T1 ? T2 : T1, candidates, count);
+            return candidates;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int collectEvictable(int list, int[] candidates, int count) {
+        for (int frameId = tail[list]; frameId != NIL && count < candidates.length; frameId = prev[frameId]) {
+            if (evictable[frameId]) {
+                candidates[count++] = frameId;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void pin(int frame_id) {
+        lock.lock();
+        try {
+            if (isInvalid(frame_id) || !evictable[frame_id]) {
+                return;
+            }
+            evictable[frame_id] = false;
+            size--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void unpin(int frame_id) {
+        lock.lock();
+        try {
+            if (isInvalid(frame_id) || evictable[frame_id]) {
+                return;
+            }
+            evictable[frame_id] = true;
+            size++;
+            if (listOf[frame_id] == NONE) { // 没有被记录过访问，视为T1中最旧的page
+                untracked[frame_id] = true;
+                linkLast(T1, frame_id);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getSize() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 不知道frame中的page时，只能将其视为T1/T2中的一次命中或者T1中的一个新页面，ghost链表不起作用
+     */
+    @Override
+    public void recordAccess(int frame_id) {
+        recordAccess(frame_id, Page.INVALID_PAGE_ID);
+    }
+
+    /**
+     * Case I：page仍在T1/T2中，移到T2的MRU；
+     * Case II/III：page在ghost链表B1/B2中，调整p，并放入T2的MRU；
+     * Case IV：新的page，放入T1的MRU
+     */
+    @Override
+    public void recordAccess(int frame_id, int page_id) {
+        lock.lock();
+        try {
+            if (isInvalid(frame_id)) {
+                return;
+            }
+            if (listOf[frame_id] != NONE && !untracked[frame_id]
+                    && (page_id == Page.INVALID_PAGE_ID || pageOf[frame_id] == page_id)) {
+                unlink(frame_id);
+                linkFirst(T2, frame_id);
+                return;
+            }
+            if (listOf[frame_id] != NONE) { // frame中换了一个page，但是没有经过victim（例如deletePage之后的newPage）
+                unlink(frame_id);
+            }
+            untracked[frame_id] = false;
+            pageOf[frame_id] = page_id;
+            int ghost = page_id == Page.INVALID_PAGE_ID ? NIL : ghostOf.get(page_id);
+            if (ghost == NIL) {
+                linkFirst(T1, frame_id);
+                return;
+            }
+            // delta使用命中的page被移出ghost链表之前的|B1|和|B2|
+            int b1Size = length[B1];
+            int b2Size = length[B2];
+            if (listOf[ghost] == B1) {
+                p = Math.min(numFrames, p + Math.max(b2Size / b1Size, 1));
+            } else {
+                p = Math.max(0, p - Math.max(b1Size / b2Size, 1));
+            }
+            dropGhost(ghost);
+            linkFirst(T2, frame_id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * frame中的page被删除，不进入ghost链表
+     */
+    @Override
+    public void remove(int frame_id) {
+        lock.lock();
+        try {
+            if (isInvalid(frame_id)) {
+                return;
+            }
+            if (evictable[frame_id]) {
+                evictable[frame_id] = false;
+                size--;
+            }
+            if (listOf[frame_id] != NONE) {
+                unlink(frame_id);
+            }
+            untracked[frame_id] = false;
+            pageOf[frame_id] = Page.INVALID_PAGE_ID;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return the target size of T1, for tests */
+    int getTargetT1Size() {
+        lock.lock();
+        try {
+            return p;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 保持 |T1| + |B1| &lt;= c 以及 |B1| + |B2| &lt;= c，即总共记录的page不超过2c
+     */
+    private void addGhost(int list, int pageId) {
+        int ghost = ghostOf.get(pageId);
+        if (ghost != NIL) { // 已经在ghost链表中（不应发生），与LinkedHashSet一样保持原来的位置
+            return;
+        }
+        ghost = freeGhosts[--numFreeGhosts];
+        pageOf[ghost] = pageId;
+        ghostOf.put(pageId, ghost);
+        linkFirst(list, ghost);
+        if (length[T1] + length[B1] > numFrames) {
+            dropGhost(tail[B1]);
+        }
+        if (length[B1] + length[B2] > numFrames) {
+            dropGhost(tail[length[B2] == 0 ? B1 : B2]);
+        }
+    }
+
+    private void dropGhost(int ghost) {
+        if (ghost == NIL) {
+            return;
+        }
+        unlink(ghost);
+        ghostOf.remove(pageOf[ghost]);
+        pageOf[ghost] = Page.INVALID_PAGE_ID;
+        freeGhosts[numFreeGhosts++] = ghost;
+    }
+
+    /**
+     * @return the least recently used evictable frame of the list, or NIL
+     */
+    private int lruEvictable(int list) {
+        for (int frameId = tail[list]; frameId != NIL; frameId = prev[frameId]) {
+            if (evictable[frameId]) {
+                return frameId;
+            }
+        }
+        return NIL;
+    }
+
+    private void linkFirst(int list, int frameId) {
+        listOf[frameId] = list;
+        prev[frameId] = NIL;
+        next[frameId] = head[list];
+        if (head[list] != NIL) {
+            prev[head[list]] = frameId;
+        } else {
+            tail[list] = frameId;
+        }
+        head[list] = frameId;
+        length[list]++;
+    }
+
+    private void linkLast(int list, int frameId) {
+        listOf[frameId] = list;
+        next[frameId] = NIL;
+        prev[frameId] = tail[list];
+        if (tail[list] != NIL) {
+            next[tail[list]] = frameId;
+        } else {
+            head[list] = frameId;
+        }
+        tail[list] = frameId;
+        length[list]++;
+    }
+
+    private void unlink(int frameId) {
+        int list = listOf[frameId];
+        if (prev[frameId] != NIL) {
+            next[prev[frameId]] = next[frameId];
+        } else {
+            head[list] = next[frameId];
+        }
+        if (next[frameId] != NIL) {
+            prev[next[frameId]] = prev[frameId];
+        } else {
+            tail[list] = prev[frameId];
+        }
+        listOf[frameId] = NONE;
+        length[list]--;
+    }
+
+    private boolean isInvalid(int frameId) {
+        return frameId < 0 || frameId >= numFrames;
+    }
+}
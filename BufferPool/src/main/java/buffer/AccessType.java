@@ -0,0 +1,13 @@
+package buffer;
+
+/**
+ * The access pattern of a caller of the buffer pool, used to choose a {@link BufferAccessStrategy}.
+ */
+public enum AccessType {
+    /** 点查询等普通的访问，页面进入主replacer */
+    NORMAL,
+    /** 一次性的顺序scan，页面只在一个私有的小ring中循环使用，不会替换出热点页面 */
+    SEQUENTIAL,
+    /** 大批量的写入（例如导入数据），与SEQUENTIAL相同，ring中的脏页在被复用时写回 */
+    BULK_WRITE
+}
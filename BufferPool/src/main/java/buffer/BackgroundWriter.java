@@ -0,0 +1,78 @@
+package buffer;
+
+import config.DBConfig;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The background writer of a buffer pool.
+ * <p>
+ * 每隔 {@link DBConfig#BG_WRITER_DELAY_MS}（或者被fetch路径遇到脏的victim时唤醒），将replacer中最先被替换的那一部分frame
+ * （evictable frame的 cleanFraction）中的脏页批量写回，从而前台线程在替换时几乎不需要等待写回。
+ * </p>
+ */
+final class BackgroundWriter implements Runnable {
+    private final Logger logger = Logger.getLogger(BackgroundWriter.class.getName());
+    private final BufferPoolManager bpm;
+    private final Thread thread;
+    /** 需要保持干净的evictable frame的比例，0表示不写 */
+    private volatile double cleanFraction;
+
+    BackgroundWriter(BufferPoolManager bpm, double cleanFraction, ThreadFactory threadFactory) {
+        this.bpm = bpm;
+        setCleanFraction(cleanFraction);
+        this.thread = threadFactory.newThread(this);
+        this.thread.setName("buffer-pool-bg-writer");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void setCleanFraction(double cleanFraction) {
+        if (cleanFraction < 0 || cleanFraction > 1) {
+            throw new IllegalArgumentException("cleanFraction must be in [0, 1]: " + cleanFraction);
+        }
+        this.cleanFraction = cleanFraction;
+    }
+
+    double getCleanFraction() {
+        return cleanFraction;
+    }
+
+    /**
+     * 前台线程遇到了需要写回的victim，说明写得不够快，立即开始下一轮
+     */
+    void wakeUp() {
+        LockSupport.unpark(thread);
+    }
+
+    void shutDown() {
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            double fraction = cleanFraction;
+            if (fraction > 0) {
+                try {
+                    bpm.writeEvictionCandidates(fraction);
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "background writer failed", e);
+                }
+            }
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(DBConfig.BG_WRITER_DELAY_MS));
+        }
+    }
+}
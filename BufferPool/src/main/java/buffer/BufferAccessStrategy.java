@@ -0,0 +1,66 @@
+package buffer;
+
+import java.util.Arrays;
+
+/**
+ * A private ring of frames used by one scan or bulk write, in the style of PostgreSQL's buffer access strategies.
+ * <p>
+ * 使用strategy读入的页面所在的frame属于这个ring，而不会进入BufferPoolManager的replacer：
+ * ring满了之后，下一次miss会复用ring中最早的frame（若其没有被pin），所以一次scan最多只会占用ring大小的frame，
+ * 不会替换出其他（例如索引的）页面。若页面在ring中时被普通（没有strategy）的fetch命中，则其被交还给主replacer。
+ * </p>
+ * 由 {@link BufferPoolManager#getAccessStrategy(AccessType)} 创建，使用完之后必须调用
+ * {@link BufferPoolManager#freeAccessStrategy(BufferAccessStrategy)}，将ring中的frame交还给主replacer。
+ * 非线程安全，每个scan使用自己的strategy。
+ */
+public final class BufferAccessStrategy {
+    static final int EMPTY_SLOT = -1;
+
+    private final AccessType accessType;
+    /** ring中的frame_id，EMPTY_SLOT表示还没有使用 */
+    private final int[] ring;
+    /** 最近一次使用的slot */
+    private int current;
+
+    BufferAccessStrategy(AccessType accessType, int ringSize) {
+        this.accessType = accessType;
+        this.ring = new int[ringSize];
+        Arrays.fill(ring, EMPTY_SLOT);
+        this.current = ringSize - 1;
+    }
+
+    public AccessType getAccessType() {
+        return accessType;
+    }
+
+    public int getRingSize() {
+        return ring.length;
+    }
+
+    /**
+     * 移动到下一个slot
+     * @return the frame in the slot, or {@link #EMPTY_SLOT}
+     */
+    int advance() {
+        current = (current + 1) % ring.length;
+        return ring[current];
+    }
+
+    /**
+     * 回到上一个slot，下一次 {@link #advance()} 仍然返回当前slot中的frame，例如当其正在写回时
+     */
+    void retreat() {
+        current = (current + ring.length - 1) % ring.length;
+    }
+
+    /**
+     * 当前slot中的frame无法复用时（例如被pin了），用一个新的frame替换它
+     */
+    void setCurrent(int frameId) {
+        ring[current] = frameId;
+    }
+
+    int[] frames() {
+        return ring;
+    }
+}
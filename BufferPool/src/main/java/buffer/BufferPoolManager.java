@@ -1,33 +1,108 @@
 package buffer;
 
+import config.DBConfig;
 import storage.disk.DiskManager;
 import storage.disk.DiskScheduler;
 import storage.page.BasicPageGuard;
+import storage.page.GuardLeakDetector;
 import storage.page.Page;
 
-import java.util.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 
 /**
  * BufferPoolManager reads disk pages to and from its internal buffer pool.
+ * <p>
+ * 锁的顺序：{@link #lock} -&gt; page table的stripe锁 -&gt; replacer
+ * </p>
  */
 public class BufferPoolManager {
+    /** 表示没有可用的frame */
+    private static final int NO_FRAME = -1;
+    /** {@link #evict(int, BufferAccessStrategy)} 的结果：page已经被移除，frame可以复用 */
+    private static final int EVICTED = 0;
+    /** {@link #evict(int, BufferAccessStrategy)} 的结果：frame在被选为victim之后又被pin了，或者不再属于owner */
+    private static final int SKIPPED = 1;
+    /** {@link #evict(int, BufferAccessStrategy)} 的结果：page正在被写回（{@link #victimIo}） */
+    private static final int BUSY = 2;
+    /** {@link #evict(int, BufferAccessStrategy)} 的结果：page正在被（预）读（{@link #victimIo}） */
+    private static final int READING = 3;
 
     private final int poolSize;
     private final Page[] pages;
-    private final AtomicInteger nextPageId = new AtomicInteger(0);
+    /** 下一个新页面的page_id，从db文件中已有的页面之后开始，所以重新打开的数据库不会覆盖其中的页面 */
+    private final AtomicInteger nextPageId;
     private DiskScheduler diskScheduler;
-    private Map<Integer, Integer> pageTable;      // Map<page_id, frame_id>
+    /**
+     * Map&lt;page_id, frame_id&gt;. 每个stripe的锁保护其中的entry以及这些page的pinCount：
+     * 只有持有stripe的锁时，才可以修改pinCount，或者将page从page table中移除（evict）
+     */
+    private final StripedPageTable pageTable;
     private Replacer replacer;
+    /**
+     * 每个frame所属的ring（{@link BufferAccessStrategy}），null表示属于主replacer。
+     * 与pinCount相同，只在持有frame中page对应的stripe锁时修改
+     */
+    private final BufferAccessStrategy[] ringOwners;
+    /**
+     * 每个frame中正在进行的（预）读请求，null表示没有。frame中的page在读请求完成之前不能被使用，也不能被evict。
+     * 只在持有frame中page对应的stripe锁时修改
+     */
+    private final CompletableFuture<Boolean>[] pendingReads;
+    /**
+     * 每个frame中正在进行的写回（后台写线程或者evict所发起的），null表示没有。写回期间page没有被pin，
+     * 但是在写成功之前page不会被evict，写失败时page重新变为脏页。
+     * 只在持有frame中page对应的stripe锁时修改
+     */
+    private final CompletableFuture<Boolean>[] pendingWrites;
+    /** 在后台写回即将被替换的脏页 */
+    private final BackgroundWriter backgroundWriter;
+    /** fetch路径上，替换时victim仍然是脏页、需要先写回的次数 */
+    private final AtomicLong numEvictionWrites = new AtomicLong(0);
+    /** 记录没有被drop的guard，null表示没有开启 */
+    private volatile GuardLeakDetector guardLeakDetector;
+    /** 异步fetch在I/O完成之后的处理在此执行，而不是在DiskScheduler的worker中 */
+    private final Executor asyncExecutor;
+    /** 是否对所有的fetch检测顺序访问，否则只检测使用SEQUENTIAL strategy的fetch */
+    private volatile boolean readAheadAllFetches = DBConfig.READ_AHEAD_ALL_FETCHES;
+    /** 每个调用者（线程）的顺序访问检测，用于read-ahead */
+    private final ThreadLocal<ReadAheadStream> readAheadStreams = ThreadLocal.withInitial(ReadAheadStream::new);
     /** List of free frames that don't have any pages on them. */
     private Deque<Integer> freeList;    // List<frame_id>
-    /** This latch protects shared data structures. We recommend updating this comment to describe what it protects. */
+    /**
+     * This latch protects the free list and the choice of a victim frame, i.e. it is only taken when a page has to be
+     * brought into the buffer pool (newPage / a miss of fetchPage). 命中缓冲池的fetch不需要获取此锁
+     */
     private Lock lock;
+    /**
+     * 最近一次acquireFrame因为I/O正在进行而跳过的victim上的I/O，null表示没有。只在持有 {@link #lock} 时访问，
+     * 没有可用的frame时，调用者在释放全局锁之后等待它，然后重试
+     */
+    private CompletableFuture<Boolean> victimIo;
+    /**
+     * 被选为victim时是脏页（或者正在被后台写线程写回）的frame，按照被选中的顺序排列。写回期间它们不在replacer中，
+     * page仍然在page table中；写回完成之后，它们先于replacer中的frame被替换，所以写回不会改变替换的顺序。
+     * 只在持有 {@link #lock} 时访问
+     */
+    private final Deque<Integer> writingVictims = new ArrayDeque<>();
 
 
     /**
@@ -38,23 +113,179 @@ public class BufferPoolManager {
      * @param log_manager the log manager (for testing only: nullptr = disable logging). Please ignore this for P1.
      */
     public BufferPoolManager(int poolSize, DiskManager diskManager) {
+        this(poolSize, diskManager, DBConfig.LRUK_REPLACER_K);
+    }
+
+    /**
+     * @brief Creates a new BufferPoolManager which uses the LRU-K replacer.
+     * @param poolSize the size of the buffer pool
+     * @param diskManager the disk manager
+     * @param replacerK the LookBack constant k for the LRU-K replacer
+     */
+    public BufferPoolManager(int poolSize, DiskManager diskManager, int replacerK) {
+        this(poolSize, diskManager, false, new LRUKReplacer(poolSize, replacerK));
+    }
+
+    /**
+     * @brief Creates a new BufferPoolManager.
+     * @param poolSize the size of the buffer pool
+     * @param diskManager the disk manager
+     * @param offHeap true if all the frames should be backed by one off-heap arena instead of a byte[] per page
+     * @see FrameArena
+     */
+    public BufferPoolManager(int poolSize, DiskManager diskManager, boolean offHeap) {
+        this(poolSize, diskManager, offHeap, new LRUKReplacer(poolSize, DBConfig.LRUK_REPLACER_K));
+    }
+
+    /**
+     * @brief Creates a new BufferPoolManager.
+     * @param poolSize the size of the buffer pool
+     * @param diskManager the disk manager
+     * @param offHeap true if all the frames should be backed by one off-heap arena instead of a byte[] per page
+     * @param replacer the replacement policy, e.g. {@link LRUKReplacer}, {@link ARCReplacer},
+     *                 {@link ClockReplacer} or {@link LRUReplacer}, which must be able to
+     *                 track frame ids in [0, poolSize)
+     */
+    public BufferPoolManager(int poolSize, DiskManager diskManager, boolean offHeap, Replacer replacer) {
+        this(poolSize, diskManager, offHeap, replacer, null);
+    }
+
+    /**
+     * @brief Creates a new BufferPoolManager whose background threads are created by the factory.
+     * <p>
+     * 传入virtual thread的factory（{@link util.ThreadUtils#virtualThreadFactory(String)}）时，DiskScheduler的worker、
+     * 后台写线程以及异步fetch的回调都运行在virtual thread上。缓冲池中的阻塞点（全局锁、stripe锁、replacer、page latch、
+     * I/O的Future）使用的是 java.util.concurrent 的锁或者park/unpark，而不是synchronized。
+     * 注意：这种模式还没有在JDK 21上运行过（包括 -Djdk.tracePinnedThreads=full 的检查），不能认为它是virtual thread安全的，
+     * 目前只是实验性的；另外FileChannel的读写本身就会占用carrier线程
+     * </p>
+     * @param threadFactory the factory of the background threads, or null to use platform threads
+     */
+    public BufferPoolManager(int poolSize, DiskManager diskManager, boolean offHeap, Replacer replacer,
+                             ThreadFactory threadFactory) {
         this.poolSize = poolSize;
         this.pages = new Page[poolSize];
-        this.diskScheduler = new DiskScheduler(diskManager);
-        this.pageTable = new HashMap<>();
-        this.replacer = new LRUReplacer(poolSize);
+        this.nextPageId = new AtomicInteger(diskManager.getNumPages());
+        this.diskScheduler = Objects.isNull(threadFactory)
+                ? new DiskScheduler(diskManager)
+                : new DiskScheduler(diskManager, DBConfig.DISK_SCHEDULER_NUM_WORKERS, threadFactory);
+        // 每个回调一个线程只适用于virtual thread，platform thread使用公共的线程池
+        this.asyncExecutor = Objects.isNull(threadFactory)
+                ? ForkJoinPool.commonPool()
+                : task -> threadFactory.newThread(task).start();
+        this.pageTable = new StripedPageTable();
+        this.replacer = Objects.requireNonNull(replacer);
+        this.ringOwners = new BufferAccessStrategy[poolSize];
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        CompletableFuture<Boolean>[] pendingReads = new CompletableFuture[poolSize];
+        this.pendingReads = pendingReads;
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        CompletableFuture<Boolean>[] pendingWrites = new CompletableFuture[poolSize];
+        this.pendingWrites = pendingWrites;
         this.freeList = new ArrayDeque<>();
-        this.lock = new ReentrantLock(); // TODO
+        this.lock = new ReentrantLock();
 
 //        for (Page page : pages) {
 //            page = new Page();
 //        }
+        FrameArena arena = offHeap ? new FrameArena(poolSize) : null;
         for (int i = 0; i < pages.length; i++) {
-            pages[i] = new Page();
+            pages[i] = offHeap ? new Page(arena.frame(i)) : new Page();
         }
         for (int i = 0; i < poolSize; i++) { //将所有空的frame_id号填入freelist
             freeList.addLast(i);
         }
+        if (DBConfig.PAGE_GUARD_LEAK_DETECTION)
+            this.guardLeakDetector = new GuardLeakDetector();
+        this.backgroundWriter = new BackgroundWriter(this, DBConfig.BG_WRITER_CLEAN_FRACTION,
+                Objects.isNull(threadFactory) ? Thread::new : threadFactory);
+        backgroundWriter.start();
+    }
+
+    /**
+     * 关闭buffer pool所使用的后台线程，调用者应当在此之前flushAllPages()
+     */
+    public void shutDown() {
+        GuardLeakDetector leakDetector = guardLeakDetector;
+        if (Objects.nonNull(leakDetector))
+            leakDetector.reportLeaks();
+        backgroundWriter.shutDown();
+        diskScheduler.shutDown();
+    }
+
+    /**
+     * 开启或关闭guard泄漏的检测。开启之后创建的guard才会被记录，关闭时丢弃所有的记录
+     * @see GuardLeakDetector
+     */
+    public void setGuardLeakDetection(boolean enabled) {
+        if (enabled == Objects.nonNull(guardLeakDetector))
+            return;
+        guardLeakDetector = enabled ? new GuardLeakDetector() : null;
+    }
+
+    /**
+     * @return the leak detector of the guards of this buffer pool, or null if the detection is disabled
+     */
+    public GuardLeakDetector getGuardLeakDetector() {
+        return guardLeakDetector;
+    }
+
+    /**
+     * @param cleanFraction 后台写线程需要保持干净的evictable frame的比例，0表示关闭后台写
+     */
+    public void setBackgroundWriterCleanFraction(double cleanFraction) {
+        backgroundWriter.setCleanFraction(cleanFraction);
+    }
+
+    /**
+     * @param enabled 是否对没有使用SEQUENTIAL strategy的fetch也进行read-ahead，默认为 {@link DBConfig#READ_AHEAD_ALL_FETCHES}。
+     *                显式的 {@link #prefetch(int, int)} 不受影响
+     */
+    public void setReadAheadAllFetches(boolean enabled) {
+        readAheadAllFetches = enabled;
+    }
+
+    /**
+     * @return the number of times a fetch or newPage had to wait for a dirty victim to be written back
+     */
+    public long getNumEvictionWrites() {
+        return numEvictionWrites.get();
+    }
+
+    /**
+     * Creates a private ring of frames for a scan or a bulk write, see {@link BufferAccessStrategy}.
+     * ring的大小不会超过缓冲池的1/8
+     * @param accessType the access pattern of the caller
+     * @return the strategy, or null for {@link AccessType#NORMAL}, i.e. use the main replacer
+     */
+    public BufferAccessStrategy getAccessStrategy(AccessType accessType) {
+        int ringPages;
+        switch (accessType) {
+            case SEQUENTIAL:
+                ringPages = DBConfig.BUFFER_RING_SEQUENTIAL_PAGES;
+                break;
+            case BULK_WRITE:
+                ringPages = DBConfig.BUFFER_RING_BULK_WRITE_PAGES;
+                break;
+            default:
+                return null;
+        }
+        return new BufferAccessStrategy(accessType, Math.max(1, Math.min(ringPages, poolSize / 8)));
+    }
+
+    /**
+     * 将ring中的frame交还给主replacer，之后strategy不能再被使用
+     * @param strategy the strategy returned by {@link #getAccessStrategy(AccessType)}, may be null
+     */
+    public void freeAccessStrategy(BufferAccessStrategy strategy) {
+        if (Objects.isNull(strategy)) {
+            return;
+        }
+        for (int frameId : strategy.frames()) {
+            if (frameId != BufferAccessStrategy.EMPTY_SLOT) {
+                releaseFromRing(frameId, strategy);
+            }
+        }
     }
 
     /** @brief Return the size (number of frames) of the buffer pool. */
@@ -85,30 +316,37 @@ public class BufferPoolManager {
      * @return nullptr if no new pages could be created, otherwise pointer to new page
      */
     public Page newPage() {
-        Integer availableFrameId;
-        // 先检查freeList是否可用
-        if (freeList.size() > 0) {
-            availableFrameId = freeList.getFirst();
-            freeList.removeFirst();
-        } else {        // 如果不可用，则replace一个
-            Optional<Integer> optional = replacer.victim();
-            if (optional.isEmpty())
-                return null; //all frames are currently in use and not evictable
-            Integer frameIdOfVictimer = optional.get();
-            Page page = pages[frameIdOfVictimer]; // 需要被替换的页
-            if (page.isDirty()) { //需要写回
-                flushPage(page.getPageId());
+        return newPage(null);
+    }
+
+    /**
+     * Same as {@link #newPage()}, but the frame comes from the ring of the strategy (e.g. {@link AccessType#BULK_WRITE}).
+     * @param strategy the ring to use, or null to use the main replacer
+     */
+    public Page newPage(BufferAccessStrategy strategy) {
+        while (true) {
+            CompletableFuture<Boolean> io;
+            lock.lock();
+            try {
+                int availableFrameId = acquireFrame(strategy);
+                if (availableFrameId != NO_FRAME) {
+                    int newPageId = allocatePage();
+                    // 此时frame既不在page table中，也不在replacer和freeList中，只属于当前线程。
+                    // 在释放全局锁之前加入page table，否则prefetch可能会为同一个page_id读入另一个frame
+                    Page availablePage = pages[availableFrameId];
+                    availablePage.reset(newPageId);
+                    installAndPin(newPageId, availableFrameId, strategy); //"Pin" the frame, 因为Page被返回了，说明其被其他线程使用中
+                    return availablePage;
+                }
+                io = victimIo;
+                if (Objects.isNull(io))
+                    return null; //all frames are currently in use and not evictable
+            } finally {
+                lock.unlock();
             }
-            pageTable.remove(page.getPageId()); //需要移除
-            availableFrameId = frameIdOfVictimer;
+            if (!awaitVictimIo(io))
+                return null;
         }
-        replacer.pin(availableFrameId); //"Pin" the frame, 因为Page被返回了，说明其被其他线程使用中
-        Page availablePage = pages[availableFrameId];
-        int newPageId = allocatePage();
-        availablePage.reset(newPageId);
-        pageTable.put(newPageId, availableFrameId);
-        availablePage.incrPinCount(); //
-        return availablePage;
     }
 
     /**
@@ -148,52 +386,573 @@ public class BufferPoolManager {
      * @return nullptr if page_id cannot be fetched, otherwise pointer to the requested page
      */
     public Page fetchPage(int page_id)  {
-        if (pageTable.containsKey(page_id)) {
-            Integer frameId = pageTable.get(page_id);
-            return pages[frameId];
-        }
-
-        Integer availableFrameId;
-        // 先检查freeList是否可用
-        if (freeList.size() > 0) {
-            availableFrameId = freeList.getFirst();
-            freeList.removeFirst();
-        } else {        // 如果不可用，则replace一个
-            Optional<Integer> optional = replacer.victim();
-            if (optional.isEmpty())
-                return null; //all frames are currently in use and not evictable
-            Integer frameIdOfVictimer = optional.get();
-            Page page = pages[frameIdOfVictimer]; // 需要被替换的页
+        return fetchPage(page_id, null);
+    }
+
+    /**
+     * Same as {@link #fetchPage(int)}, with an access strategy hint.
+     * 若page不在缓冲池中，则使用strategy的ring中的frame读入，而不是从主replacer中替换；
+     * 若page已经在缓冲池中，则直接使用它
+     * @param page_id id of page to be fetched
+     * @param strategy the ring to use for a miss, or null to use the main replacer
+     * @see #getAccessStrategy(AccessType)
+     */
+    public Page fetchPage(int page_id, BufferAccessStrategy strategy)  {
+        readAhead(page_id, strategy);
+        int frameId = pinOrStartRead(page_id, strategy);
+        if (frameId == NO_FRAME)
+            return null; //all frames are currently in use and not evictable
+        // page可能还在被（预）读
+        if (!awaitPendingRead(page_id, frameId)) {
+            unpinPage(page_id, false);
+            return null;
+        }
+        return pages[frameId];
+    }
+
+    /**
+     * Non-blocking version of {@link #fetchPage(int)}: the returned future is completed when the page has been read,
+     * instead of blocking the calling thread on the disk read. 未命中时，读请求交给DiskScheduler之后立即返回，
+     * 读完成后的处理在 {@link ForkJoinPool#commonPool()}（或者构造时传入的ThreadFactory所创建的线程）中进行。
+     * 注意：若victim是脏页，仍然需要等待其写回（通常已经被后台写线程写回了）
+     * @param page_id id of page to be fetched
+     * @return a future of the guard of the pinned page, completed with null if the page cannot be fetched. The future
+     * must not be cancelled, otherwise the page stays pinned
+     */
+    public CompletableFuture<BasicPageGuard> fetchPageAsync(int page_id) {
+        return fetchPageAsync(page_id, asyncExecutor);
+    }
+
+    /**
+     * Same as {@link #fetchPageAsync(int)}, the completion of the read is handled by the executor.
+     * 读完成的回调不会在DiskScheduler的工作线程中获取缓冲池的锁，否则在请求队列满时可能死锁
+     */
+    public CompletableFuture<BasicPageGuard> fetchPageAsync(int page_id, Executor executor) {
+        return fetchPageAsync(page_id, null, executor)
+                .thenApply(page -> Objects.isNull(page) ? null : new BasicPageGuard(this, page));
+    }
+
+    /**
+     * Async version of {@link #FetchPageRead(int)}, the read latch is acquired in the executor, so an executor of
+     * virtual threads (or a large pool) should be used if the page may be write latched for long.
+     */
+    public CompletableFuture<BasicPageGuard.ReadPageGuard> FetchPageReadAsync(int page_id, Executor executor) {
+        return fetchPageAsync(page_id, null, executor).thenApplyAsync(page -> {
+            if (Objects.isNull(page))
+                return null;
+            long latchStamp = page.rLatch(); //获取读锁
+            return new BasicPageGuard.ReadPageGuard(this, page, latchStamp);
+        }, executor);
+    }
+
+    public CompletableFuture<BasicPageGuard.ReadPageGuard> FetchPageReadAsync(int page_id) {
+        return FetchPageReadAsync(page_id, asyncExecutor);
+    }
+
+    /**
+     * Async version of {@link #FetchPageWrite(int)}, the write latch is acquired in the executor.
+     * @see #FetchPageReadAsync(int, Executor)
+     */
+    public CompletableFuture<BasicPageGuard.WritePageGuard> FetchPageWriteAsync(int page_id, Executor executor) {
+        return fetchPageAsync(page_id, null, executor).thenApplyAsync(page -> {
+            if (Objects.isNull(page))
+                return null;
+            page.wLatch(); //获取写锁
+            return new BasicPageGuard.WritePageGuard(this, page);
+        }, executor);
+    }
+
+    public CompletableFuture<BasicPageGuard.WritePageGuard> FetchPageWriteAsync(int page_id) {
+        return FetchPageWriteAsync(page_id, asyncExecutor);
+    }
+
+    /**
+     * 与 {@link #fetchPage(int, BufferAccessStrategy)} 相同，但是不在调用者的线程中等待读完成
+     */
+    private CompletableFuture<Page> fetchPageAsync(int page_id, BufferAccessStrategy strategy, Executor executor) {
+        readAhead(page_id, strategy);
+        int frameId = pinOrStartRead(page_id, strategy);
+        if (frameId == NO_FRAME)
+            return CompletableFuture.completedFuture(null); //all frames are currently in use and not evictable
+        return awaitPendingReadAsync(page_id, frameId, executor, false);
+    }
+
+    /**
+     * Pin the page if it is resident (or being read), otherwise start reading it into a frame and pin that frame.
+     * 未命中时，page以pending的状态（I/O in progress）加入page table之后立即释放全局锁，读在锁外完成。
+     * 同时fetch此page的其他线程会命中这个placeholder并等待同一个读（single-flight），而不会重复读入；
+     * 其他page的miss也不需要等待这次I/O
+     * @return the frame of the pinned page, whose read may still be pending, or {@link #NO_FRAME} if all frames are
+     * pinned
+     */
+    private int pinOrStartRead(int page_id, BufferAccessStrategy strategy) {
+        int frameId = tryPinResident(page_id, strategy); // fast path，只需要获取一个stripe的锁
+        if (frameId != StripedPageTable.NOT_FOUND) {
+            return frameId;
+        }
+        while (true) {
+            CompletableFuture<Boolean> io;
+            lock.lock();
+            try {
+                // 在等待全局锁的过程中，其他线程可能已经将此page读入了缓冲池（或者正在读入）
+                frameId = tryPinResident(page_id, strategy);
+                if (frameId != StripedPageTable.NOT_FOUND) {
+                    return frameId;
+                }
+                frameId = acquireFrame(strategy);
+                if (frameId != NO_FRAME) {
+                    startRead(page_id, frameId, strategy, true);
+                    return frameId;
+                }
+                io = victimIo;
+                if (Objects.isNull(io))
+                    return NO_FRAME;
+            } finally {
+                lock.unlock();
+            }
+            if (!awaitVictimIo(io))
+                return NO_FRAME;
+        }
+    }
+
+    /**
+     * Async version of {@link #awaitPendingRead(int, int)}. Caller must hold a pin on the page, 若读失败则unpin
+     * @return a future of the page, completed with null if the page could not be read
+     */
+    private CompletableFuture<Page> awaitPendingReadAsync(int pageId, int frameId, Executor executor, boolean retried) {
+        CompletableFuture<Boolean> pending;
+        boolean failed = false;
+        Lock stripeLock = pageTable.lockOf(pageId);
+        stripeLock.lock();
+        try {
+            pending = pendingReads[frameId];
+            if (Objects.isNull(pending)) {
+                return CompletableFuture.completedFuture(pages[frameId]);
+            }
+            if (pending.isCompletedExceptionally()) {
+                if (retried) {
+                    failed = true;
+                } else {
+                    retried = true;
+                    pending = new CompletableFuture<>();
+                    pendingReads[frameId] = pending;
+                    diskScheduler.schedule(new DiskScheduler.DiskRequest(false, pages[frameId].getBuffer(), pageId, pending));
+                }
+            } else if (pending.isDone()) {
+                pendingReads[frameId] = null;
+                return CompletableFuture.completedFuture(pages[frameId]);
+            }
+        } finally {
+            stripeLock.unlock();
+        }
+        if (failed) {
+            unpinPage(pageId, false);
+            return CompletableFuture.completedFuture(null);
+        }
+        final boolean retriedRead = retried;
+        // handle在DiskScheduler的工作线程中执行，不做任何事情；之后的检查在executor中进行
+        return pending.handle((ok, e) -> ok)
+                .thenComposeAsync(ok -> awaitPendingReadAsync(pageId, frameId, executor, retriedRead), executor);
+    }
+
+    /**
+     * 如果page已经在缓冲池中，则pin此page。
+     * 普通的访问命中了ring中的page时，说明其不只是被scan使用，将其交还给主replacer
+     * @return the frame of the pinned page, or {@link StripedPageTable#NOT_FOUND} if the page is not in the buffer pool
+     */
+    private int tryPinResident(int pageId, BufferAccessStrategy strategy) {
+        Lock stripeLock = pageTable.lockOf(pageId);
+        stripeLock.lock();
+        try {
+            int frameId = pageTable.get(pageId);
+            if (frameId == StripedPageTable.NOT_FOUND) {
+                return StripedPageTable.NOT_FOUND;
+            }
+            pages[frameId].incrPinCount();
+            if (Objects.isNull(strategy)) {
+                ringOwners[frameId] = null;
+            }
+            if (Objects.isNull(ringOwners[frameId])) {
+                if (Objects.isNull(pendingReads[frameId])) // 否则是第一次使用预读的页面，预读时已经记录过
+                    replacer.recordAccess(frameId, pageId);
+                replacer.pin(frameId);
+            }
+            return frameId;
+        } finally {
+            stripeLock.unlock();
+        }
+    }
+
+    /**
+     * 将page加入page table，并pin其所在的frame。ring中的frame不会进入主replacer
+     */
+    private void installAndPin(int pageId, int frameId, BufferAccessStrategy strategy) {
+        Lock stripeLock = pageTable.lockOf(pageId);
+        stripeLock.lock();
+        try {
+            pageTable.put(pageId, frameId);
+            pages[frameId].incrPinCount();
+            ringOwners[frameId] = strategy;
+            if (Objects.isNull(strategy)) {
+                replacer.recordAccess(frameId, pageId);
+                replacer.pin(frameId);
+            }
+        } finally {
+            stripeLock.unlock();
+        }
+    }
+
+    /**
+     * 若使用strategy，则先尝试复用ring中的下一个frame；若其不能复用（例如被pin了），则将其交还给主replacer，
+     * 并从主缓冲池中获取一个frame放入ring中。Caller must hold {@link #lock}.
+     * @return a frame which is owned by the caller, or {@link #NO_FRAME} if all frames are pinned, or the frames which
+     * could be used are busy with I/O. 后者的情况下 {@link #victimIo} 不为null，调用者应当在释放全局锁之后等待它，然后重试
+     */
+    private int acquireFrame(BufferAccessStrategy strategy) {
+        victimIo = null;
+        if (Objects.isNull(strategy)) {
+            return acquireFrame();
+        }
+        int ringFrameId = strategy.advance();
+        if (ringFrameId != BufferAccessStrategy.EMPTY_SLOT) {
+            int result = evict(ringFrameId, strategy);
+            if (result == EVICTED) {
+                return ringFrameId;
+            }
+            if (result == BUSY || result == READING) {
+                // 等待ring中的frame上的I/O，而不是占用主缓冲池的frame；重试时仍然使用这个slot
+                strategy.retreat();
+                return NO_FRAME;
+            }
+            releaseFromRing(ringFrameId, strategy);
+        }
+        int frameId = acquireFrame();
+        strategy.setCurrent(frameId == NO_FRAME ? BufferAccessStrategy.EMPTY_SLOT : frameId);
+        return frameId;
+    }
+
+    /**
+     * 将ring中的frame交还给主replacer；若frame已经不属于此ring（例如page被删除了，或被普通的访问命中了），则什么都不做
+     */
+    private void releaseFromRing(int frameId, BufferAccessStrategy strategy) {
+        int pageId = pages[frameId].getPageId();
+        Lock stripeLock = pageTable.lockOf(pageId);
+        stripeLock.lock();
+        try {
+            if (ringOwners[frameId] != strategy || pageTable.get(pageId) != frameId) {
+                return;
+            }
+            ringOwners[frameId] = null;
+            if (pages[frameId].getPinCount() == 0)
+                replacer.unpin(frameId);
+        } finally {
+            stripeLock.unlock();
+        }
+    }
+
+    /**
+     * 先检查freeList是否可用，如果不可用，则从主replacer中replace一个。Caller must hold {@link #lock}.
+     * 脏的victim开始写回之后进入 {@link #writingVictims}，写回完成之后按照被选中的顺序优先被替换；
+     * 正在被预读的victim会被跳过，之后重新放回replacer，而不是在持有全局锁时反复选中它
+     * @return a frame which is owned by the caller, or {@link #NO_FRAME} if all frames are pinned or busy with I/O
+     */
+    private int acquireFrame() {
+        Integer freeFrameId = freeList.pollFirst();
+        if (Objects.nonNull(freeFrameId)) {
+            return freeFrameId;
+        }
+        Iterator<Integer> writing = writingVictims.iterator();
+        while (writing.hasNext()) {
+            int frameId = writing.next();
+            int result = evict(frameId, null);
+            if (result == BUSY)
+                continue;
+            writing.remove();
+            if (result == EVICTED) {
+                replacer.pin(frameId); // 在等待写回的过程中可能被命中并unpin，重新进入了replacer
+                return frameId;
+            }
+            // 在等待写回的过程中被pin了，unpin时会重新进入replacer
+        }
+        int frameIdOfVictim;
+        List<Integer> readingFrames = null;
+        while (true) {
+            frameIdOfVictim = replacer.victimFrame();
+            if (frameIdOfVictim == Replacer.NO_VICTIM)
+                break;
+            int result = evict(frameIdOfVictim, null);
+            if (result == EVICTED)
+                break;
+            if (result == BUSY) { // 调用者在全局锁之外等待写回，之后重试
+                writingVictims.addLast(frameIdOfVictim);
+                frameIdOfVictim = Replacer.NO_VICTIM;
+                break;
+            }
+            if (result == READING) {
+                if (Objects.isNull(readingFrames))
+                    readingFrames = new ArrayList<>();
+                readingFrames.add(frameIdOfVictim);
+            }
+            // 被选为victim之后，此frame又被其他线程pin了，或者正在被预读，选择下一个victim
+        }
+        if (Objects.nonNull(readingFrames)) {
+            readingFrames.forEach(this::returnToReplacer);
+        }
+        return frameIdOfVictim == Replacer.NO_VICTIM ? NO_FRAME : frameIdOfVictim;
+    }
+
+    /**
+     * 将frame中的page从page table中移除。Caller must hold {@link #lock}.
+     * 脏页不会在这里同步等待写回：evict开始写回page的副本之后返回 {@link #BUSY}，page在写成功之前仍然在page table中，
+     * 并且写失败时重新变为脏页，所以不会丢失修改；之后再次evict此frame时，写已经完成，page才被移除。
+     * 对写的等待由调用者在全局锁之外进行，不会阻塞其他线程的miss
+     * @param owner the ring which the frame is expected to belong to, null for the main replacer
+     * @return {@link #EVICTED}, {@link #SKIPPED} if the page in the frame has been pinned again after it was chosen as
+     * the victim, or the frame no longer belongs to the owner, {@link #BUSY} if the page is being written back,
+     * {@link #READING} if the page is being read
+     */
+    private int evict(int frameId, BufferAccessStrategy owner) {
+        Page page = pages[frameId]; // 需要被替换的页
+        int oldPageId = page.getPageId();
+        Lock stripeLock = pageTable.lockOf(oldPageId);
+        stripeLock.lock();
+        try {
+            if (pageTable.get(oldPageId) != frameId || page.getPinCount() > 0 || ringOwners[frameId] != owner) {
+                return SKIPPED;
+            }
+            CompletableFuture<Boolean> pending = pendingReads[frameId];
+            if (Objects.nonNull(pending)) {
+                if (!pending.isDone()) { // 预读还没有完成，不能替换
+                    recordVictimIo(pending.exceptionally(e -> false)); // 即使读失败了，之后也可以替换，所以只等待其结束
+                    return READING;
+                }
+                pendingReads[frameId] = null; // 即使预读失败了，page也不是脏页，可以直接丢弃
+            }
+            if (!settlePendingWrite(frameId)) { // 后台写线程（或者之前的evict）正在写此page
+                recordVictimIo(pendingWrites[frameId]);
+                return BUSY;
+            }
             if (page.isDirty()) { //需要写回
-                flushPage(page.getPageId());
-            }
-            pageTable.remove(page.getPageId());
-            availableFrameId = frameIdOfVictimer;
-        }
-        replacer.pin(availableFrameId); //TODO 其顺序先后，是否会存在并发异常
-        // 除了构造函数中使用new Page()，其他地方均只是修改Page，而不能重新赋值
-        Page availablePage = pages[availableFrameId];
-        availablePage.reset(page_id); // 必须在前，否则后续的getData()会被覆盖
-        // 从disk中read数据到buffer中
-//        char[] data = new char[DBConfig.BUSTUB_PAGE_SIZE];
-        Future<Boolean> future = DiskScheduler.createFuture();
-        /**
-         * @see DiskScheduler#processRequest(Optional) 
-         */
-        diskScheduler.schedule(new DiskScheduler.DiskRequest(false, availablePage.getData(), page_id, future));
+                numEvictionWrites.incrementAndGet();
+                backgroundWriter.wakeUp(); // 后台写得不够快
+                // 在持有stripe锁时schedule写请求，之后再fetch此page所产生的读请求一定排在它之后
+                recordVictimIo(startWriteBack(oldPageId, frameId));
+                return BUSY;
+            }
+            pageTable.remove(oldPageId);
+            return EVICTED;
+        } finally {
+            stripeLock.unlock();
+        }
+    }
+
+    /**
+     * 记录victim上正在进行的I/O，供没有可用frame的调用者等待。Caller must hold {@link #lock}.
+     */
+    private void recordVictimIo(CompletableFuture<Boolean> io) {
+        if (Objects.isNull(victimIo))
+            victimIo = io;
+    }
+
+    /**
+     * 在全局锁之外等待被跳过的victim上的I/O，之后调用者重新选择victim
+     * @return false if the I/O failed, 此时page仍然是脏页，不会被替换
+     */
+    private static boolean awaitVictimIo(CompletableFuture<Boolean> io) {
         try {
-            future.get() ;
-        } catch (InterruptedException e) { //异常在此层捕获即可，因为该方法的返回值标识了是否成功执行，传播出去也没有什么作用
-            e.printStackTrace();
-            return null;
-        } catch (ExecutionException e) {
+            io.join();
+            return true;
+        } catch (CompletionException e) {
             e.printStackTrace();
-            return null;
+            return false;
+        }
+    }
+
+    /**
+     * 将被跳过的（正在被预读的）victim重新放回主replacer；若其在此期间被pin了，或者已经不在缓冲池中，则什么都不做。
+     * 被选为victim时replacer已经丢弃了frame的访问历史，所以与 {@link #startRead} 相同，重新记录一次访问，
+     * 否则它会在读完成之后、被第一次fetch之前首先被替换
+     */
+    private void returnToReplacer(int frameId) {
+        int pageId = pages[frameId].getPageId();
+        Lock stripeLock = pageTable.lockOf(pageId);
+        stripeLock.lock();
+        try {
+            if (pageTable.get(pageId) == frameId && pages[frameId].getPinCount() == 0
+                    && Objects.isNull(ringOwners[frameId])) {
+                replacer.recordAccess(frameId, pageId);
+                replacer.unpin(frameId);
+            }
+        } finally {
+            stripeLock.unlock();
+        }
+    }
+
+    /**
+     * 等待frame中正在进行的预读。若预读失败了，则重新读一次。Caller must hold a pin on the page.
+     * @return false if the page could not be read
+     */
+    private boolean awaitPendingRead(int pageId, int frameId) {
+        boolean retried = false;
+        while (true) {
+            CompletableFuture<Boolean> pending;
+            Lock stripeLock = pageTable.lockOf(pageId);
+            stripeLock.lock();
+            try {
+                pending = pendingReads[frameId];
+                if (Objects.isNull(pending)) {
+                    return true;
+                }
+                if (pending.isCompletedExceptionally()) {
+                    if (retried) {
+                        return false;
+                    }
+                    retried = true;
+                    pending = new CompletableFuture<>();
+                    pendingReads[frameId] = pending;
+                    diskScheduler.schedule(new DiskScheduler.DiskRequest(false, pages[frameId].getBuffer(), pageId, pending));
+                } else if (pending.isDone()) {
+                    pendingReads[frameId] = null;
+                    return true;
+                }
+            } finally {
+                stripeLock.unlock();
+            }
+            try {
+                pending.join();
+            } catch (CompletionException e) {
+                e.printStackTrace(); // 下一次循环中重试
+            }
+        }
+    }
+
+    /**
+     * Read pages [from, from + count) into the buffer pool asynchronously, so that they are already resident when they
+     * are fetched. 已经在缓冲池中的页面会被跳过；预读的页面不会被pin，预读与之后的第一次fetch一起算作一次访问。
+     * 预读最多使用缓冲池的1/4，没有可用的frame时停止
+     * @param from id of the first page
+     * @param count the number of pages
+     * @return the number of reads issued
+     */
+    public int prefetch(int from, int count) {
+        return prefetch(from, count, null);
+    }
+
+    /**
+     * Same as {@link #prefetch(int, int)}, but the frames come from the ring of the strategy, 最多使用ring的一半
+     */
+    public int prefetch(int from, int count, BufferAccessStrategy strategy) {
+        count = Math.min(count, prefetchLimit(strategy));
+        int issued = 0;
+        int pageId = from;
+        while (pageId < from + count) {
+            CompletableFuture<Boolean> io = null;
+            lock.lock();
+            try {
+                for (; pageId < from + count; pageId++) {
+                    if (pageId < 0 || pageId >= nextPageId.get()) // 还没有被分配的页面，allocatePage也需要获取全局锁
+                        return issued;
+                    if (isResident(pageId))
+                        continue; // 只有持有全局锁时才会加入新的page，所以之后不会有其他线程将其读入
+                    int frameId = acquireFrame(strategy);
+                    if (frameId == NO_FRAME) {
+                        io = victimIo;
+                        break;
+                    }
+                    startRead(pageId, frameId, strategy, false);
+                    issued++;
+                }
+            } finally {
+                lock.unlock();
+            }
+            // victim正在写回时，在全局锁之外等待，然后继续
+            if (Objects.isNull(io) || !awaitVictimIo(io))
+                break;
+        }
+        return issued;
+    }
+
+    /**
+     * 将page加入page table，并开始异步地读入frame，page在读完成之前是pending的（{@link #pendingReads}）。
+     * 在此期间fetch此page的线程会等待同一个读，而不会重复读入。Caller must hold {@link #lock}.
+     * @param pin true to pin the page for the caller, false to make it evictable (prefetch)
+     */
+    private void startRead(int pageId, int frameId, BufferAccessStrategy strategy, boolean pin) {
+        Page page = pages[frameId];
+        page.reset(pageId);
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        Lock stripeLock = pageTable.lockOf(pageId);
+        stripeLock.lock();
+        try {
+            pageTable.put(pageId, frameId);
+            pendingReads[frameId] = future;
+            ringOwners[frameId] = strategy;
+            if (pin) {
+                page.incrPinCount();
+            }
+            if (Objects.isNull(strategy)) {
+                // 记录一次访问，否则之后的预读会首先替换掉它；第一次fetch命中时不再重复记录
+                replacer.recordAccess(frameId, pageId);
+                if (!pin)
+                    replacer.unpin(frameId); // evictable，但是在读完成之前acquireFrame会跳过它
+            }
+        } finally {
+            stripeLock.unlock();
+        }
+        // 连续的页面会被DiskScheduler合并为一次vectored read
+        diskScheduler.schedule(new DiskScheduler.DiskRequest(false, page.getBuffer(), pageId, future));
+    }
+
+    private int prefetchLimit(BufferAccessStrategy strategy) {
+        int limit = Objects.isNull(strategy) ? poolSize / 4 : strategy.getRingSize() / 2;
+        return Math.max(1, limit);
+    }
+
+    private boolean isResident(int pageId) {
+        Lock stripeLock = pageTable.lockOf(pageId);
+        stripeLock.lock();
+        try {
+            return pageTable.get(pageId) != StripedPageTable.NOT_FOUND;
+        } finally {
+            stripeLock.unlock();
         }
-//        availablePage.setData(data); //在request中直接复制
-        pageTable.put(page_id, availableFrameId);
-        availablePage.incrPinCount();
-        return availablePage;
+    }
+
+    /**
+     * 检测当前线程是否在按照page_id升序访问，若连续访问的页面数达到 {@link DBConfig#READ_AHEAD_TRIGGER}，
+     * 则预读之后的 {@link DBConfig#READ_AHEAD_PAGES} 个页面（不超过prefetch的限制）；当访问到预读窗口的一半时，预读下一个窗口。
+     * 只检测使用SEQUENTIAL strategy的fetch，除非开启了 {@link #setReadAheadAllFetches(boolean)}
+     */
+    private void readAhead(int pageId, BufferAccessStrategy strategy) {
+        boolean sequential = Objects.nonNull(strategy) && strategy.getAccessType() == AccessType.SEQUENTIAL;
+        if (!sequential && !readAheadAllFetches) {
+            return;
+        }
+        ReadAheadStream stream = readAheadStreams.get();
+        if (pageId == stream.lastPageId + 1) {
+            stream.runLength++;
+        } else {
+            stream.runLength = 1;
+            stream.prefetchedUpTo = pageId + 1;
+        }
+        stream.lastPageId = pageId;
+        int window = Math.min(DBConfig.READ_AHEAD_PAGES, prefetchLimit(strategy));
+        if (stream.runLength < DBConfig.READ_AHEAD_TRIGGER || stream.prefetchedUpTo - pageId > window / 2) {
+            return;
+        }
+        int from = Math.max(stream.prefetchedUpTo, pageId + 1);
+        prefetch(from, window, strategy);
+        stream.prefetchedUpTo = from + window;
+    }
+
+    /**
+     * 一个调用者的顺序访问状态
+     */
+    private static final class ReadAheadStream {
+        int lastPageId = Page.INVALID_PAGE_ID;
+        int runLength;
+        /** 已经预读到的位置（不包括） */
+        int prefetchedUpTo;
     }
 
     /**
@@ -209,21 +968,33 @@ public class BufferPoolManager {
      * @param page_id, the id of the page to fetch
      * @return PageGuard holding the fetched page
      */
-    BasicPageGuard fetchPageBasic(int page_id)  {
-        Page page = fetchPage(page_id);
+    public BasicPageGuard fetchPageBasic(int page_id)  {
+        return fetchPageBasic(page_id, null);
+    }
+    public BasicPageGuard fetchPageBasic(int page_id, BufferAccessStrategy strategy)  {
+        Page page = fetchPage(page_id, strategy);
         if (Objects.isNull(page))
             return null;
         return new BasicPageGuard(this, page);
     }
-    BasicPageGuard.ReadPageGuard FetchPageRead(int page_id) {
-        Page page = fetchPage(page_id);
+    public BasicPageGuard.ReadPageGuard FetchPageRead(int page_id) {
+        return FetchPageRead(page_id, null);
+    }
+    public BasicPageGuard.ReadPageGuard FetchPageRead(int page_id, BufferAccessStrategy strategy) {
+        Page page = fetchPage(page_id, strategy);
         if (Objects.isNull(page))
             return null;
-        page.rLatch(); //获取读锁
-        return new BasicPageGuard.ReadPageGuard(this, page);
+        long latchStamp = page.rLatch(); //获取读锁
+        return new BasicPageGuard.ReadPageGuard(this, page, latchStamp);
+    }
+    public BasicPageGuard.WritePageGuard FetchPageWrite(int page_id)  {
+        return FetchPageWrite(page_id, null);
     }
-    BasicPageGuard.WritePageGuard FetchPageWrite(int page_id)  {
-        Page page = fetchPage(page_id);
+    /**
+     * 例如VACUUM或者批量导入等改写大量已有页面的操作，使用 {@link AccessType#BULK_WRITE} 的strategy，只在其ring中替换
+     */
+    public BasicPageGuard.WritePageGuard FetchPageWrite(int page_id, BufferAccessStrategy strategy)  {
+        Page page = fetchPage(page_id, strategy);
         if (Objects.isNull(page))
             return null;
         page.wLatch(); //获取写锁
@@ -245,26 +1016,25 @@ public class BufferPoolManager {
      * @return false if the page is not in the page table or its pin count is <= 0 before this call, true otherwise
      */
     public boolean unpinPage(int page_id, boolean is_dirty) {
-        if (checkIfPageNotExist(page_id))
-            return false;
-        Page page = getPage(page_id);
-        page.rLatch();
-        {
+        Lock stripeLock = pageTable.lockOf(page_id);
+        stripeLock.lock();
+        try {
+            int frameId = pageTable.get(page_id);
+            if (frameId == StripedPageTable.NOT_FOUND)
+                return false;
+            Page page = pages[frameId];
             if (page.getPinCount() <= 0) {
                 return false;
             }
-        }
-        page.rUnLatch();
-        page.wLatch();
-        {
             if (is_dirty)
                 page.setDirty(true);
             page.decrPinCount();
-            if (page.getPinCount() == 0)
-                replacer.unpin(pageTable.get(page_id)); //If the pin count reaches 0, the frame should be evictable by the replacer.
+            if (page.getPinCount() == 0 && Objects.isNull(ringOwners[frameId]))
+                replacer.unpin(frameId); //If the pin count reaches 0, the frame should be evictable by the replacer.
+            return true;
+        } finally {
+            stripeLock.unlock();
         }
-        page.wUnLatch();
-        return true;
     }
 
     /**
@@ -275,62 +1045,223 @@ public class BufferPoolManager {
      * Use the DiskManager::WritePage() method to flush a page to disk, REGARDLESS of the dirty flag.
      * Unset the dirty flag of the page after flushing.
      *
+     * 写入的过程中会获取页面的读锁，而latch是不可重入的，所以调用者不能持有这个页面的guard（否则会死锁），
+     * 持有guard的调用者应当使用 {@link BasicPageGuard.ReadPageGuard#Flush()} 或者 {@link BasicPageGuard.WritePageGuard#Flush()}
+     *
      * @param page_id id of page to be flushed, cannot be INVALID_PAGE_ID
      * @return false if the page could not be found in the page table, true otherwise
      */
     public boolean flushPage(int pageId) {
-        if (checkIfPageNotExist(pageId))
+        return flushPage(pageId, false);
+    }
+
+    /**
+     * @param latched 调用者是否已经持有页面的latch（读锁或者写锁），此时直接在调用者的latch下写入，不再获取读锁
+     * @see #flushPage(int)
+     */
+    public boolean flushPage(int pageId, boolean latched) {
+        int frameId = holdForIo(pageId);
+        if (frameId == StripedPageTable.NOT_FOUND)
             return false;
-        Page page = getPage(pageId);
-        Future<Boolean> future = DiskScheduler.createFuture();
-        page.rLatch();
-        DiskScheduler.DiskRequest request = new DiskScheduler.DiskRequest(true, page.getData(), pageId, future);
-        page.rUnLatch();
-        diskScheduler.schedule(request);
-        try {
-            future.get();
-        } catch (InterruptedException e) { //本层捕获即可，返回值表示是否成功执行
-            e.printStackTrace();
+        Page page = pages[frameId];
+        if (!awaitPendingRead(pageId, frameId)) { // 不能写出一个没有读完的页面
+            releaseFromIo(pageId, frameId);
             return false;
-        } catch (ExecutionException e) {
+        }
+        try {
+            Future<Boolean> future = DiskScheduler.createFuture();
+            // 写入的过程中持有读锁，避免写出一个只修改了一半的页面
+            if (!latched)
+                page.rLatch();
+            try {
+                diskScheduler.schedule(new DiskScheduler.DiskRequest(true, page.getBuffer(), pageId, future));
+                future.get();
+                page.setDirty(false); //Unset the dirty flag
+            } finally {
+                if (!latched)
+                    page.rUnLatch();
+            }
+        } catch (InterruptedException | ExecutionException e) { //本层捕获即可，返回值表示是否成功执行
             e.printStackTrace();
             return false;
+        } finally {
+            releaseFromIo(pageId, frameId);
         }
-        page.wLatch();
-        page.setDirty(false); //Unset the dirty flag
-        page.wUnLatch();
         return true;
     }
 
     /**
-     * 通过pageId找到frameId，从而找到Page
-     * @param pageId 必须提供存在的pageId
-     * @return 从pages数组中根据对应的frameId提取出Page
+     * 增加page的pinCount，使其在I/O的过程中不会被evict，但是不改变其在replacer中的位置
+     * @return the frame of the page, or {@link StripedPageTable#NOT_FOUND}
+     */
+    private int holdForIo(int pageId) {
+        Lock stripeLock = pageTable.lockOf(pageId);
+        stripeLock.lock();
+        try {
+            int frameId = pageTable.get(pageId);
+            if (frameId != StripedPageTable.NOT_FOUND) {
+                pages[frameId].incrPinCount();
+            }
+            return frameId;
+        } finally {
+            stripeLock.unlock();
+        }
+    }
+
+    /**
+     * @see #holdForIo(int)
+     */
+    private void releaseFromIo(int pageId, int frameId) {
+        Lock stripeLock = pageTable.lockOf(pageId);
+        stripeLock.lock();
+        try {
+            Page page = pages[frameId];
+            page.decrPinCount();
+            if (page.getPinCount() == 0 && Objects.isNull(ringOwners[frameId]))
+                replacer.unpin(frameId); // 若其在此期间被选为victim（但没有被evict），则重新加入replacer
+        } finally {
+            stripeLock.unlock();
+        }
+    }
+
+    /**
+     * 将replacer中最先会被替换的 cleanFraction 的evictable frame中的脏页写回，供 {@link BackgroundWriter} 调用。
+     * 所有写请求先全部交给DiskScheduler（相邻的页面会被合并），再一起等待完成。正在被使用（pin）的页面会被跳过。
+     * 写的是page在读锁下的副本，写的过程中page不会被pin，也不会被替换（{@link #pendingWrites}）
+     * @param cleanFraction fraction of the evictable frames which should be clean
+     * @return the number of pages written
+     */
+    int writeEvictionCandidates(double cleanFraction) {
+        int target = Math.min(DBConfig.BG_WRITER_MAX_PAGES, (int) Math.ceil(cleanFraction * replacer.getSize()));
+        if (target <= 0) {
+            return 0;
+        }
+        int[] candidates = replacer.evictionCandidates(target);
+        int[] pageIds = new int[candidates.length];
+        int[] frameIds = new int[candidates.length];
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        CompletableFuture<Boolean>[] writes = new CompletableFuture[candidates.length];
+        int n = 0;
+        for (int frameId : candidates) {
+            int pageId = pages[frameId].getPageId();
+            CompletableFuture<Boolean> write = startBackgroundWrite(pageId, frameId);
+            if (Objects.nonNull(write)) {
+                pageIds[n] = pageId;
+                frameIds[n] = frameId;
+                writes[n] = write;
+                n++;
+            }
+        }
+        int written = 0;
+        for (int i = 0; i < n; i++) {
+            try {
+                writes[i].join();
+                written++;
+            } catch (CompletionException e) {
+                e.printStackTrace();
+            }
+            finishBackgroundWrite(pageIds[i], frameIds[i], writes[i]);
+        }
+        return written;
+    }
+
+    /**
+     * 若page是没有被使用（没有被pin，不在ring中，也没有正在进行的I/O）的脏页，则开始写回
+     * @return the write, or null if the page is not written
+     */
+    private CompletableFuture<Boolean> startBackgroundWrite(int pageId, int frameId) {
+        Lock stripeLock = pageTable.lockOf(pageId);
+        stripeLock.lock();
+        try {
+            Page page = pages[frameId];
+            if (pageTable.get(pageId) != frameId || page.getPinCount() > 0
+                    || Objects.nonNull(ringOwners[frameId]) || Objects.nonNull(pendingReads[frameId])) {
+                return null;
+            }
+            if (!settlePendingWrite(frameId) || !page.isDirty()) {
+                return null;
+            }
+            return startWriteBack(pageId, frameId);
+        } finally {
+            stripeLock.unlock();
+        }
+    }
+
+    /**
+     * 开始写回page的副本，写完成之前 {@link #pendingWrites} 记录这次写。
+     * Caller must hold the stripe lock of the page, and the page must not be pinned
      */
-    private Page getPage(int pageId) {
-        Integer frameId = pageTable.get(pageId);
+    private CompletableFuture<Boolean> startWriteBack(int pageId, int frameId) {
         Page page = pages[frameId];
-        return page;
+        // 在复制之前清除，从而复制之后（page被重新pin之后）的修改不会丢失dirty标记
+        page.setDirty(false);
+        CompletableFuture<Boolean> write = new CompletableFuture<>();
+        pendingWrites[frameId] = write;
+        diskScheduler.schedule(new DiskScheduler.DiskRequest(true, snapshot(page), pageId, write));
+        return write;
     }
 
-    private boolean checkIfPageNotExist(int pageId) {
-        return !pageTable.containsKey(pageId);
+    /**
+     * 若frame中的写回已经完成，则清除 {@link #pendingWrites}；写失败时page重新变为脏页。
+     * Caller must hold the stripe lock of the page
+     * @return false if the write is still in progress
+     */
+    private boolean settlePendingWrite(int frameId) {
+        CompletableFuture<Boolean> write = pendingWrites[frameId];
+        if (Objects.isNull(write)) {
+            return true;
+        }
+        if (!write.isDone()) {
+            return false;
+        }
+        pendingWrites[frameId] = null;
+        if (write.isCompletedExceptionally())
+            pages[frameId].setDirty(true);
+        return true;
+    }
+
+    /**
+     * 在读锁下将page复制到写请求私有的buffer中：写的过程中page没有被pin，可能被重新fetch并修改，
+     * 直接写frame的buffer可能会写出一个只修改了一半的页面。
+     * Caller must hold the stripe lock of the page, and the page must not be pinned, 所以没有线程持有它的latch，获取读锁不会阻塞
+     */
+    private static ByteBuffer snapshot(Page page) {
+        ByteBuffer copy = ByteBuffer.allocate(DBConfig.BUSTUB_PAGE_SIZE);
+        page.rLatch();
+        try {
+            copy.put(0, page.getBuffer(), 0, DBConfig.BUSTUB_PAGE_SIZE);
+        } finally {
+            page.rUnLatch();
+        }
+        return copy;
+    }
+
+    /**
+     * 若写的结果还没有被evict处理，则清除pendingWrites；写失败时page重新变为脏页
+     */
+    private void finishBackgroundWrite(int pageId, int frameId, CompletableFuture<Boolean> write) {
+        Lock stripeLock = pageTable.lockOf(pageId);
+        stripeLock.lock();
+        try {
+            if (pendingWrites[frameId] == write) {
+                settlePendingWrite(frameId);
+            }
+        } finally {
+            stripeLock.unlock();
+        }
     }
 
     /**
      * TODO(P1): Add implementation
      *
      * @brief Flush all the pages in the buffer pool to disk.
+     *
+     * 与 {@link #flushPage(int)} 相同，调用者不能持有任何页面的guard
      */
     public void flushAllPages() {
-        lock.lock(); //TODO 是否可以切换为pageTable的monitor锁
-        try {
-            //pageTable不是线程安全的
-            for (Integer pageId : pageTable.keySet()) {
-                flushPage(pageId);
-            }
-        } finally {
-            lock.unlock();
+        // 不需要获取全局锁，flushPage会跳过在此期间被evict的page
+        for (Integer pageId : pageTable.pageIds()) {
+            flushPage(pageId);
         }
     }
 
@@ -348,21 +1279,39 @@ public class BufferPoolManager {
      * @return false if the page exists but could not be deleted, true if the page didn't exist or deletion succeeded
      */
     public boolean deletePage(int page_id) {
-        if (checkIfPageNotExist(page_id)) {
-            return true;
+        int frameId;
+        Lock stripeLock = pageTable.lockOf(page_id);
+        stripeLock.lock();
+        try {
+            frameId = pageTable.get(page_id);
+            if (frameId == StripedPageTable.NOT_FOUND)
+                return true;
+            if (pages[frameId].getPinCount() > 0)
+                return false;
+            if (Objects.nonNull(pendingReads[frameId]) && !pendingReads[frameId].isDone())
+                return false; // 正在被预读，与被pin相同
+            if (Objects.nonNull(pendingWrites[frameId]) && !pendingWrites[frameId].isDone())
+                return false; // 正在被后台写线程写回
+            pendingReads[frameId] = null;
+            pendingWrites[frameId] = null;
+            // delete the page
+            pageTable.remove(page_id);
+            replacer.remove(frameId); // delete from replacer
+            ringOwners[frameId] = null;
+        } finally {
+            stripeLock.unlock();
         }
-        Integer frameId = pageTable.get(page_id);
-        if (pages[frameId].getPinCount() > 0)
-            return false;
-        // delete the page
-        pageTable.remove(page_id); //TODO 是否有并发风险
-        replacer.pin(frameId); // delete from replacer
-        freeList.addLast(frameId);  //TODO 是否有并发风险
         // reset the page
         Page page = pages[frameId];
         page.wLatch();
         page.reset();
         page.wUnLatch();
+        lock.lock();
+        try {
+            freeList.addLast(frameId);
+        } finally {
+            lock.unlock();
+        }
         deallocatePage(page_id);
         return true;
     }
@@ -371,13 +1320,8 @@ public class BufferPoolManager {
      * @brief Allocate a page on disk. Caller should acquire the latch before calling this function.
      * @return the id of the allocated page
      */
-    private int allocatePage() { //TODO
-        lock.lock();
-        try {
-            return nextPageId.getAndIncrement();
-        } finally {
-            lock.unlock();
-        }
+    private int allocatePage() {
+        return nextPageId.getAndIncrement();
     }
 
     /**
@@ -0,0 +1,165 @@
+package buffer;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * ClockReplacer implements the clock (second chance) replacement policy, which approximates the Least Recently Used
+ * policy.
+ * <p>
+ * 每个frame的状态（是否evictable、reference bit）保存在一个以frame_id为下标的 {@link AtomicIntegerArray} 中，
+ * pin/unpin/recordAccess只是一次CAS，victim移动时钟指针，清除经过的frame的reference bit，
+ * 直到找到一个evictable且reference bit为0的frame。所有操作都不需要获取monitor，也不会分配对象
+ * （{@link #victim()} 除外，它需要返回Optional，BufferPoolManager使用的是 {@link #victimFrame()}）。
+ * </p>
+ */
+public class ClockReplacer implements Replacer {
+    private static final int EVICTABLE = 1;
+    private static final int REFERENCED = 1 << 1;
+
+    private final int numFrames;
+    private final AtomicIntegerArray states;
+    /** the clock hand，取模之后即当前指向的frame */
+    private final AtomicInteger hand = new AtomicInteger(0);
+    /** the number of evictable frames */
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    /**
+     * @param num_pages the maximum number of frames the replacer will be required to store
+     */
+    public ClockReplacer(int numFrames) {
+        this.numFrames = numFrames;
+        this.states = new AtomicIntegerArray(numFrames);
+    }
+
+    @Override
+    public Optional<Integer> victim() {
+        int frameId = victimFrame();
+        return frameId == NO_VICTIM ? Optional.empty() : Optional.of(frameId);
+    }
+
+    /**
+     * 转动时钟指针：evictable且reference bit为1的frame获得第二次机会（清除其reference bit），
+     * 遇到的第一个evictable且reference bit为0的frame即为victim
+     */
+    @Override
+    public int victimFrame() {
+        while (size.get() > 0) {
+            // 转动两圈一定可以找到victim，除非其他线程在此期间pin了这些frame，此时重新检查size
+            for (int step = 0; step < 2 * numFrames; step++) {
+                int frameId = Math.floorMod(hand.getAndIncrement(), numFrames);
+                int state = states.get(frameId);
+                if ((state & EVICTABLE) == 0) {
+                    continue;
+                }
+                if ((state & REFERENCED) != 0) {
+                    states.compareAndSet(frameId, state, state & ~REFERENCED); // second chance
+                } else if (states.compareAndSet(frameId, state, 0)) {
+                    size.decrementAndGet();
+                    return frameId;
+                }
+            }
+        }
+        return NO_VICTIM;
+    }
+
+    /**
+     * 从时钟指针开始，reference bit为0的evictable frame会在这一圈被替换，其余的evictable frame在下一圈
+     */
+    @Override
+    public int[] evictionCandidates(int n) {
+        int[] candidates = new int[Math.min(n, size.get())];
+        int count = 0;
+        int start = Math.floorMod(hand.get(), numFrames);
+        for (int pass = 0; pass < 2 && count < candidates.length; pass++) {
+            int wanted = pass == 0 ? EVICTABLE : EVICTABLE | REFERENCED;
+            for (int step = 0; step < numFrames && count < candidates.length; step++) {
+                int frameId = (start + step) % numFrames;
+                if (states.get(frameId) == wanted) {
+                    candidates[count++] = frameId;
+                }
+            }
+        }
+        return count == candidates.length ? candidates : Arrays.copyOf(candidates, count);
+    }
+
+    @Override
+    public void pin(int frame_id) {
+        if (isInvalid(frame_id)) {
+            return;
+        }
+        if (clearBits(frame_id, EVICTABLE)) {
+            size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Unpins a frame. 同时设置reference bit，即刚被使用过的frame不会在时钟指针第一次经过时就被替换
+     */
+    @Override
+    public void unpin(int frame_id) {
+        if (isInvalid(frame_id)) {
+            return;
+        }
+        if (setBits(frame_id, EVICTABLE | REFERENCED)) {
+            size.incrementAndGet();
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return size.get();
+    }
+
+    @Override
+    public void recordAccess(int frame_id) {
+        if (isInvalid(frame_id)) {
+            return;
+        }
+        setBits(frame_id, REFERENCED);
+    }
+
+    @Override
+    public void remove(int frame_id) {
+        if (isInvalid(frame_id)) {
+            return;
+        }
+        if (clearBits(frame_id, EVICTABLE | REFERENCED)) {
+            size.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return true if the frame was not evictable before
+     */
+    private boolean setBits(int frameId, int bits) {
+        int state;
+        do {
+            state = states.get(frameId);
+            if ((state & bits) == bits) {
+                return false;
+            }
+        } while (!states.compareAndSet(frameId, state, state | bits));
+        return (bits & EVICTABLE) != 0 && (state & EVICTABLE) == 0;
+    }
+
+    /**
+     * @return true if the frame was evictable before
+     */
+    private boolean clearBits(int frameId, int bits) {
+        int state;
+        do {
+            state = states.get(frameId);
+            if ((state & bits) == 0) {
+                return false;
+            }
+        } while (!states.compareAndSet(frameId, state, state & ~bits));
+        return (bits & EVICTABLE) != 0 && (state & EVICTABLE) != 0;
+    }
+
+    private boolean isInvalid(int frameId) {
+        return frameId < 0 || frameId >= numFrames;
+    }
+}
@@ -0,0 +1,52 @@
+package buffer;
+
+import config.DBConfig;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FrameArena backs all the frames of a buffer pool with off-heap memory.
+ * <p>
+ * 所有frame共享少数几块 direct buffer（每一块不超过 {@link #MAX_CHUNK_SIZE}，因为ByteBuffer的容量是int），
+ * 每个frame是其中的一个slice。这样buffer pool中的数据不在java堆中，不会增加GC（尤其是old gen）的压力；
+ * 同时FileChannel对direct buffer进行I/O时，也不需要JDK内部再复制到一个临时的native buffer中。
+ * </p>
+ */
+public class FrameArena {
+    /** 每一块direct buffer的最大大小，必须是页面大小的整数倍 */
+    static final int MAX_CHUNK_SIZE = 1 << 30;
+    private static final int FRAMES_PER_CHUNK = MAX_CHUNK_SIZE / DBConfig.BUSTUB_PAGE_SIZE;
+
+    private final int numFrames;
+    private final ByteBuffer[] chunks;
+
+    /**
+     * @param numFrames the number of frames in the arena
+     */
+    public FrameArena(int numFrames) {
+        assert numFrames > 0;
+        this.numFrames = numFrames;
+        int numChunks = (numFrames + FRAMES_PER_CHUNK - 1) / FRAMES_PER_CHUNK;
+        this.chunks = new ByteBuffer[numChunks];
+        for (int i = 0; i < numChunks; i++) {
+            int framesInChunk = Math.min(FRAMES_PER_CHUNK, numFrames - i * FRAMES_PER_CHUNK);
+            chunks[i] = ByteBuffer.allocateDirect(framesInChunk * DBConfig.BUSTUB_PAGE_SIZE);
+        }
+    }
+
+    /**
+     * @param frameId the id of the frame
+     * @return a view of exactly BUSTUB_PAGE_SIZE bytes over the memory of the frame
+     */
+    public ByteBuffer frame(int frameId) {
+        if (frameId < 0 || frameId >= numFrames) {
+            throw new IndexOutOfBoundsException("frameId: " + frameId);
+        }
+        ByteBuffer chunk = chunks[frameId / FRAMES_PER_CHUNK];
+        return chunk.slice((frameId % FRAMES_PER_CHUNK) * DBConfig.BUSTUB_PAGE_SIZE, DBConfig.BUSTUB_PAGE_SIZE);
+    }
+
+    public int getNumFrames() {
+        return numFrames;
+    }
+}
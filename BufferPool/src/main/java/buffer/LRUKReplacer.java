@@ -1,33 +1,374 @@
 package buffer;
 
+import java.util.Arrays;
 import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * LRUKReplacer implements the LRU-k replacement policy.
+ * <p>
+ * The LRU-k algorithm evicts a frame whose backward k-distance is maximum of all frames. Backward k-distance is computed
+ * as the difference in time between current timestamp and the timestamp of kth previous access.
+ * A frame with less than k historical references is given +inf as its backward k-distance. When multiple frames have
+ * +inf backward k-distance, classical LRU algorithm is used to choose victim.
+ * </p>
+ * <p>
+ * Correlated references (O'Neil et al.)：在一次引用之后的 correlated reference period 之内，对同一个frame的再次访问
+ * 被视为同一次引用（例如一次scan中对同一页面的多次fetch），只更新LAST而不会加入历史；下一次不相关的访问到来时，
+ * 整个历史会被平移这段相关访问所持续的时间，从而相关的访问不会让一个页面看起来比实际更"热"。
+ * 处于 correlated reference period 中的frame不会被优先选为victim。
+ * </p>
+ * 时间戳是逻辑时间，即每次 {@link #recordAccess(int)} 加一，所以correlated reference period的单位是访问次数。
+ * <p>
+ * evictable的frame保存在一个按照（+inf优先，时间戳，frame id）排序的indexed binary heap中，选择victim时不需要扫描
+ * 所有的frame：只需要从堆顶开始跳过处于correlated reference period中的frame，而这样的frame最多有 period + 1 个
+ * （它们的LAST各不相同，且都在最近 period 次访问之内）。pin/unpin/recordAccess都是O(log numFrames)，且不分配内存
+ * </p>
+ */
 public class LRUKReplacer implements Replacer{
+    private final int numFrames;
+    private final int k;
+    private final long correlatedReferencePeriod;
+    /** HIST(p, i)：frame p第i次（1 <= i <= k，从最近开始）不相关的访问，存放在 history[p * k + i - 1] */
+    private final long[] history;
+    /** frame 已记录的不相关访问次数，最多为k */
+    private final int[] historySize;
+    /** LAST(p)：frame p最近一次的访问（包括相关的访问） */
+    private final long[] last;
+    private final boolean[] evictable;
+    private int size;
+    /** evictable的frame组成的最小堆，堆顶是下一个victim（不考虑correlated reference period） */
+    private final int[] heap;
+    private int heapSize;
+    /** frame在heap中的下标，不在heap中时为-1 */
+    private final int[] heapIndex;
+    /** 选择victim时暂时从heap中取出的frame */
+    private final int[] polled;
+    /** {@link #victimFrame()} 选择的victim，避免每次分配数组 */
+    private final int[] selected = new int[1];
+    private long currentTimestamp;
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * @param num_frames the maximum number of frames the replacer will be required to store
+     * @param k the LookBack constant
+     */
+    public LRUKReplacer(int numFrames, int k) {
+        this(numFrames, k, 0);
+    }
+
+    /**
+     * @param numFrames the maximum number of frames the replacer will be required to store
+     * @param k the LookBack constant
+     * @param correlatedReferencePeriod 两次访问间隔不超过此值（访问次数）时，被视为相关的访问，0表示禁用
+     */
+    public LRUKReplacer(int numFrames, int k, long correlatedReferencePeriod) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        if (correlatedReferencePeriod < 0) {
+            throw new IllegalArgumentException("correlatedReferencePeriod must not be negative: " + correlatedReferencePeriod);
+        }
+        this.numFrames = numFrames;
+        this.k = k;
+        this.correlatedReferencePeriod = correlatedReferencePeriod;
+        this.history = new long[numFrames * k];
+        this.historySize = new int[numFrames];
+        this.last = new long[numFrames];
+        this.evictable = new boolean[numFrames];
+        this.heap = new int[numFrames];
+        this.heapIndex = new int[numFrames];
+        Arrays.fill(heapIndex, -1);
+        this.polled = new int[numFrames];
+    }
+
+    /**
+     * Find the frame with largest backward k-distance and evict that frame. Only frames that are marked as 'evictable'
+     * are candidates for eviction. 若所有evictable的frame都处于correlated reference period中，则忽略此限制。
+     * Successful eviction of a frame decrements the size of replacer and removes the frame's access history.
+     */
     @Override
     public Optional<Integer> victim() {
-        return Optional.empty();
+        int victim = victimFrame();
+        return victim == NO_VICTIM ? Optional.empty() : Optional.of(victim);
     }
 
     @Override
-    public void pin(int frame_id) {
+    public int victimFrame() {
+        lock.lock();
+        try {
+            if (selectCandidates(1, selected) == 0) {
+                return NO_VICTIM;
+            }
+            int victim = selected[0];
+            remove(victim);
+            return victim;
+        } finally {
+            lock.unlock();
+        }
+    }
 
+    /**
+     * 依次模拟n次 {@link #victim()} 的选择：从堆顶开始取出frame，直到找到n个不处于correlated reference period中的frame；
+     * 若不够n个（此时堆已经被取空了），再按照顺序补上处于period中的frame。取出的frame最后都被放回堆中，
+     * 所以是O((n + period) * log numFrames)
+     * @param out the candidates, in the order they would be victimized
+     * @return the number of candidates
+     */
+    private int selectCandidates(int n, int[] out) {
+        int numPolled = 0;
+        int count = 0;
+        while (count < n && heapSize > 0) {
+            int frameId = heapPoll();
+            polled[numPolled++] = frameId;
+            if (!isCorrelated(frameId)) {
+                out[count++] = frameId;
+            }
+        }
+        for (int i = 0; i < numPolled && count < n; i++) {
+            if (isCorrelated(polled[i])) {
+                out[count++] = polled[i];
+            }
+        }
+        for (int i = 0; i < numPolled; i++) {
+            heapAdd(polled[i]);
+        }
+        return count;
     }
 
+    /**
+     * 与 {@link #victim()} 相同的顺序，但是不会改变replacer的状态，见 {@link #selectCandidates(int, int[])}
+     */
     @Override
-    public void unpin(int frame_id) {
+    public int[] evictionCandidates(int n) {
+        lock.lock();
+        try {
+            int[] candidates = new int[Math.min(n, size)];
+            int count = selectCandidates(candidates.length, candidates);
+            assert count == candidates.length;
+            return candidates;
+        } finally {
+            lock.unlock();
+        }
+    }
 
+    /**
+     * Pins a frame, 即标记为不可evict，但是保留其访问历史
+     */
+    @Override
+    public void pin(int frame_id) {
+        lock.lock();
+        try {
+            if (isInvalid(frame_id) || !evictable[frame_id]) {
+                return;
+            }
+            evictable[frame_id] = false;
+            size--;
+            heapDelete(frame_id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Unpins a frame, 即标记为可evict。与LRUReplacer不同，unpin不算作一次访问，访问需要通过 {@link #recordAccess(int)} 记录
+     */
+    @Override
+    public void unpin(int frame_id) {
+        lock.lock();
+        try {
+            if (isInvalid(frame_id) || evictable[frame_id]) {
+                return;
+            }
+            evictable[frame_id] = true;
+            size++;
+            heapAdd(frame_id);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public int getSize() {
-        return 0;
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Record the event that the given frame id is accessed at current timestamp.
+     * Create a new entry for access history if frame id has not been seen before.
+     */
+    @Override
+    public void recordAccess(int frame_id) {
+        lock.lock();
+        try {
+            if (isInvalid(frame_id)) {
+                return;
+            }
+            long now = ++currentTimestamp;
+            int n = historySize[frame_id];
+            if (n == 0) {
+                history[frame_id * k] = now;
+                historySize[frame_id] = 1;
+                heapUpdate(frame_id);
+            } else if (now - last[frame_id] > correlatedReferencePeriod) { // a new, uncorrelated reference
+                // 将之前的历史平移相关访问所持续的时间
+                long correlatedPeriodOfFrame = last[frame_id] - historyOf(frame_id, 1);
+                int base = frame_id * k;
+                int newSize = Math.min(n + 1, k);
+                for (int i = newSize - 1; i > 0; i--) {
+                    history[base + i] = history[base + i - 1] + correlatedPeriodOfFrame;
+                }
+                history[base] = now;
+                historySize[frame_id] = newSize;
+                heapUpdate(frame_id);
+            }
+            last[frame_id] = now;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove an evictable frame from replacer, along with its access history.
+     */
+    @Override
+    public void remove(int frame_id) {
+        lock.lock();
+        try {
+            if (isInvalid(frame_id)) {
+                return;
+            }
+            if (evictable[frame_id]) {
+                evictable[frame_id] = false;
+                size--;
+                heapDelete(frame_id);
+            }
+            historySize[frame_id] = 0;
+            last[frame_id] = 0;
+            Arrays.fill(history, frame_id * k, frame_id * k + k, 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return whether the frame is still inside its correlated reference period, 禁用时（period为0）总是false
+     */
+    private boolean isCorrelated(int frameId) {
+        return correlatedReferencePeriod > 0 && historySize[frameId] > 0
+                && currentTimestamp - last[frameId] <= correlatedReferencePeriod;
+    }
+
+    /**
+     * @return HIST(p, i)
+     */
+    private long historyOf(int frameId, int i) {
+        return history[frameId * k + i - 1];
     }
 
     /**
-     * TODO 可以使用动态代理来修改 BufferPoolManager的行为，来进行对于页面访问的记录，同时不影响Replacer
-     * @param frameId
+     * 堆的顺序：+inf的backward k-distance优先，它们之间按照最近一次（不相关的）访问的LRU；否则HIST(p, k)最早的优先，
+     * 即k-distance最大；相同时frame id小的优先
+     * @return whether frame a would be victimized before frame b
      */
-    public void recordAccess(int frameId) {
+    private boolean before(int a, int b) {
+        boolean aInfinite = historySize[a] < k;
+        boolean bInfinite = historySize[b] < k;
+        if (aInfinite != bInfinite) {
+            return aInfinite;
+        }
+        long aTimestamp = aInfinite ? historyOf(a, 1) : historyOf(a, k);
+        long bTimestamp = bInfinite ? historyOf(b, 1) : historyOf(b, k);
+        if (aTimestamp != bTimestamp) {
+            return aTimestamp < bTimestamp;
+        }
+        return a < b;
+    }
+
+    private void heapAdd(int frameId) {
+        int i = heapSize++;
+        heap[i] = frameId;
+        heapIndex[frameId] = i;
+        siftUp(i);
+    }
+
+    private int heapPoll() {
+        int top = heap[0];
+        heapDelete(top);
+        return top;
+    }
+
+    private void heapDelete(int frameId) {
+        int i = heapIndex[frameId];
+        if (i < 0) {
+            return;
+        }
+        int lastIdx = --heapSize;
+        heapIndex[frameId] = -1;
+        if (i != lastIdx) {
+            int moved = heap[lastIdx];
+            heap[i] = moved;
+            heapIndex[moved] = i;
+            siftDown(i);
+            siftUp(heapIndex[moved]);
+        }
+    }
+
+    /**
+     * frame的访问历史改变之后，恢复它在堆中的位置
+     */
+    private void heapUpdate(int frameId) {
+        int i = heapIndex[frameId];
+        if (i >= 0) {
+            siftDown(i);
+            siftUp(heapIndex[frameId]);
+        }
+    }
+
+    private void siftUp(int i) {
+        int frameId = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(frameId, heap[parent])) {
+                break;
+            }
+            heap[i] = heap[parent];
+            heapIndex[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = frameId;
+        heapIndex[frameId] = i;
+    }
+
+    private void siftDown(int i) {
+        int frameId = heap[i];
+        int n = heapSize;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= n) {
+                break;
+            }
+            if (child + 1 < n && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], frameId)) {
+                break;
+            }
+            heap[i] = heap[child];
+            heapIndex[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = frameId;
+        heapIndex[frameId] = i;
+    }
 
+    private boolean isInvalid(int frameId) {
+        return frameId < 0 || frameId >= numFrames;
     }
 }
@@ -5,6 +5,8 @@ import com.sun.tools.javac.Main;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -16,6 +18,8 @@ import java.util.logging.Logger;
 // TODO 修改为细粒度的锁
 public class LRUReplacer implements Replacer{
     private final Logger logger = Logger.getLogger(LRUReplacer.class.getName());
+    /** 使用Lock而不是synchronized，避免virtual thread在等待时占用carrier线程 */
+    private final Lock lock = new ReentrantLock();
     private int size;
     private final int capacity;
 
@@ -91,43 +95,74 @@ public class LRUReplacer implements Replacer{
 
     // 返回frame_id
     @Override
-    public synchronized Optional<Integer> victim() {
-        Optional<LinkedDeque<Integer>.Node> last = victimList.getLast();
-        if (last.isPresent()) {
-            cache.remove(last.get().item);
-            victimList.remove(last.get());
-            size --;
+    public Optional<Integer> victim() {
+        lock.lock();
+        try {
+            Optional<LinkedDeque<Integer>.Node> last = victimList.getLast();
+            if (last.isPresent()) {
+                cache.remove(last.get().item);
+                victimList.remove(last.get());
+                size --;
+            }
+            return last.map(node -> node.item); //if node null, return null Optional. Otherwise, return Optional<frameId>
+        } finally {
+            lock.unlock();
         }
-        return last.map(node -> node.item); //if node null, return null Optional. Otherwise, return Optional<frameId>
     }
 
     // 删除frame_id
     @Override
-    public synchronized void pin(int frame_id) {
-        if (cache.containsKey(frame_id)) {
-            LinkedDeque<Integer>.Node nodeTobeRemove = cache.get(frame_id);
-            victimList.remove(nodeTobeRemove);
-            cache.remove(frame_id); // node can be garbage collect
-            size --;
+    public void pin(int frame_id) {
+        lock.lock();
+        try {
+            if (cache.containsKey(frame_id)) {
+                LinkedDeque<Integer>.Node nodeTobeRemove = cache.get(frame_id);
+                victimList.remove(nodeTobeRemove);
+                cache.remove(frame_id); // node can be garbage collect
+                size --;
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
     // 如果一个页被重新fetch的话（在BufferManage中），那么其一定会被pin，所以当其不被使用后，其就会重新unpin，这样就可以更新其在lru中的位置
     @Override
-    public synchronized void unpin(int frame_id) {
-        if (frame_id < 0) return;
-        if (cache.containsKey(frame_id)) {
-            return;
+    public void unpin(int frame_id) {
+        lock.lock();
+        try {
+            if (frame_id < 0) return;
+            if (cache.containsKey(frame_id)) {
+                return;
+            }
+            // 检查是否超出容量限制
+            if (capacity == getSize()) {
+                logger.log(Level.WARNING, "超出cache的容量限制");
+                return;
+            }
+            LinkedDeque<Integer>.Node nodeTobeAdd = victimList.new Node(frame_id, null, null);
+            cache.put(frame_id, nodeTobeAdd);
+            victimList.addFirst(nodeTobeAdd);
+            size ++;
+        } finally {
+            lock.unlock();
         }
-        // 检查是否超出容量限制
-        if (capacity == getSize()) {
-            logger.log(Level.WARNING, "超出cache的容量限制");
-            return;
+    }
+
+    // 从链表尾部（最久没有被使用）开始
+    @Override
+    public int[] evictionCandidates(int n) {
+        lock.lock();
+        try {
+            int[] candidates = new int[Math.min(n, size)];
+            LinkedDeque<Integer>.Node node = victimList.dummy.prev;
+            for (int i = 0; i < candidates.length; i++, node = node.prev) {
+                candidates[i] = node.item;
+            }
+            return candidates;
+        } finally {
+            lock.unlock();
         }
-        LinkedDeque<Integer>.Node nodeTobeAdd = victimList.new Node(frame_id, null, null);
-        cache.put(frame_id, nodeTobeAdd);
-        victimList.addFirst(nodeTobeAdd);
-        size ++;
     }
 
     @Override
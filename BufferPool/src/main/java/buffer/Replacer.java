@@ -5,6 +5,8 @@ import jdk.jfr.Unsigned;
 import java.util.Optional;
 
 public interface Replacer {
+    /** {@link #victimFrame()} 没有找到victim时的返回值 */
+    int NO_VICTIM = -1;
 
     /**
      * Remove the victim frame as defined by the replacement policy.
@@ -13,6 +15,14 @@ public interface Replacer {
      */
     Optional<Integer> victim();
 
+    /**
+     * Same as {@link #victim()}, but without boxing the frame id.
+     * @return id of frame that was removed, or {@link #NO_VICTIM} if no victim was found
+     */
+    default int victimFrame() {
+        return victim().orElse(NO_VICTIM);
+    }
+
     /**
      * Pins a frame, indicating that it should not be victimized until it is unpinned.
      * @param frame_id the id of the frame to pin
@@ -27,4 +37,41 @@ public interface Replacer {
 
     /** @return the number of elements in the replacer that can be victimized */
     int getSize();
+
+    /**
+     * Record that the frame is accessed, BufferPoolManager calls it every time a page is fetched or created.
+     * 默认不做任何事情，例如LRUReplacer只根据unpin的顺序排序
+     * @param frame_id the id of the frame that is accessed
+     */
+    default void recordAccess(int frame_id) {
+    }
+
+    /**
+     * Same as {@link #recordAccess(int)}, and also tells the replacer which page the frame holds, so that policies which
+     * remember evicted pages (e.g. the ghost lists of {@link ARCReplacer}) can recognize them when they come back.
+     * @param frame_id the id of the frame that is accessed
+     * @param page_id the id of the page in the frame
+     */
+    default void recordAccess(int frame_id, int page_id) {
+        recordAccess(frame_id);
+    }
+
+    /**
+     * Peek at the frames that would be victimized next, in the order they would be chosen, without changing the state of
+     * the replacer. 后台写线程据此提前写回这些frame中的脏页，返回的结果只是一个近似，并发的pin/unpin可能改变实际的顺序。
+     * 默认返回空数组，即不支持预测
+     * @param n the maximum number of frames to return
+     * @return at most n evictable frames
+     */
+    default int[] evictionCandidates(int n) {
+        return new int[0];
+    }
+
+    /**
+     * Stop tracking the frame, e.g. because its page has been deleted. 与pin不同，frame的访问历史也会被清除
+     * @param frame_id the id of the frame to remove
+     */
+    default void remove(int frame_id) {
+        pin(frame_id);
+    }
 }
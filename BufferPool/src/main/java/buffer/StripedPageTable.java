@@ -0,0 +1,96 @@
+package buffer;
+
+import config.DBConfig;
+import impletation.IntIntHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The page table of the buffer pool, i.e. Map&lt;page_id, frame_id&gt;, partitioned into stripes.
+ * <p>
+ * 每个stripe拥有自己的锁和自己的map，page_id通过hash被分配到某一个stripe中。
+ * 访问不同stripe的线程之间不会互相阻塞，所以命中缓冲池的fetch不需要获取任何全局锁。
+ * </p>
+ * 除了 {@link #pageIds()}，其余方法都要求调用者已经持有 {@link #lockOf(int)} 返回的锁。
+ */
+final class StripedPageTable {
+    public static final int NOT_FOUND = -1;
+
+    private static final class Stripe {
+        final Lock lock = new ReentrantLock();
+        final IntIntHashMap map = new IntIntHashMap(16, NOT_FOUND); // Map<page_id, frame_id>，没有装箱
+    }
+
+    private final Stripe[] stripes;
+    private final int shift;
+
+    StripedPageTable() {
+        this(DBConfig.BUFFER_POOL_PAGE_TABLE_STRIPES);
+    }
+
+    /**
+     * @param numStripes the number of stripes, must be a power of 2
+     */
+    StripedPageTable(int numStripes) {
+        if (numStripes <= 0 || Integer.bitCount(numStripes) != 1) {
+            throw new IllegalArgumentException("numStripes must be a power of 2: " + numStripes);
+        }
+        this.stripes = new Stripe[numStripes];
+        for (int i = 0; i < numStripes; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.shift = Integer.SIZE - Integer.numberOfTrailingZeros(numStripes);
+    }
+
+    /**
+     * @return the lock which protects the entry of the page
+     */
+    Lock lockOf(int pageId) {
+        return stripeOf(pageId).lock;
+    }
+
+    /**
+     * @return the frame id of the page, or {@link #NOT_FOUND}
+     */
+    int get(int pageId) {
+        return stripeOf(pageId).map.get(pageId);
+    }
+
+    void put(int pageId, int frameId) {
+        stripeOf(pageId).map.put(pageId, frameId);
+    }
+
+    void remove(int pageId) {
+        stripeOf(pageId).map.remove(pageId);
+    }
+
+    /**
+     * 依次获取每个stripe的锁，返回当前所有page_id的快照
+     * @return the ids of the pages in the table
+     */
+    List<Integer> pageIds() {
+        List<Integer> pageIds = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                for (int pageId : stripe.map.keys()) {
+                    pageIds.add(pageId);
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return pageIds;
+    }
+
+    private Stripe stripeOf(int pageId) {
+        if (shift == Integer.SIZE) { // only one stripe
+            return stripes[0];
+        }
+        // 使用乘法hash打散连续的page_id
+        return stripes[(pageId * 0x9E3779B9) >>> shift];
+    }
+}
@@ -0,0 +1,389 @@
+package container.hash;
+
+import buffer.BufferPoolManager;
+import storage.page.BasicPageGuard;
+import storage.page.BasicPageGuard.ReadPageGuard;
+import storage.page.BasicPageGuard.WritePageGuard;
+import storage.page.ExtendibleHTableBucketPageView;
+import storage.page.ExtendibleHTableDirectoryPageView;
+import storage.page.ExtendibleHTableHeaderPageView;
+import storage.page.PageCodec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+import java.util.logging.Logger;
+
+import static storage.page.Page.INVALID_PAGE_ID;
+
+/**
+ * Implementation of extendible hash table that is backed by a buffer pool manager. Non-unique keys are not supported.
+ * <p>
+ * 三层页面：header page（取hash的高 headerMaxDepth 位）-> directory page（取hash的低 globalDepth 位）-> bucket page，
+ * 都通过 {@link storage.page.PageView} 直接读写缓冲池中的frame。key的相等由keyCodec的编码决定（见 {@link PageCodec}）
+ * </p>
+ * <p>
+ * 并发控制使用latch crabbing：沿着 header -> directory -> bucket 的顺序获取latch，获取下一层之后才释放上一层。
+ * GetValue只获取读锁；Insert和Remove先乐观地对directory获取读锁、对bucket获取写锁，所以对不同bucket的操作可以并行；
+ * 只有bucket需要分裂（已满）或者合并（变为空）时，才重新从header开始并对directory获取写锁。
+ * 持有bucket latch而不持有directory latch的线程不会再等待其他latch，只有持有directory写锁的线程会同时latch两个bucket，
+ * 所以不会死锁。directory page一旦创建就不会被删除
+ * </p>
+ */
+public class DiskExtendibleHashTable<K, V> {
+    private static final Logger logger = Logger.getLogger(DiskExtendibleHashTable.class.getName());
+    private static final int HTABLE_HEADER_MAX_DEPTH = 9;
+    private static final int HTABLE_DIRECTORY_MAX_DEPTH = 9;
+
+    private final String indexName;
+    private final BufferPoolManager bpm;
+    private final ToIntFunction<K> hashFn;
+    private final Function<ByteBuffer, ExtendibleHTableBucketPageView<K, V>> bucketView;
+    private final int directoryMaxDepth;
+    private final int bucketMaxSize;
+    private final int headerPageId;
+
+    /**
+     * Creates a new DiskExtendibleHashTable with the max depths and the max bucket size which fit into a page
+     */
+    public DiskExtendibleHashTable(String name, BufferPoolManager bpm, PageCodec<K> keyCodec, PageCodec<V> valueCodec,
+                                   ToIntFunction<K> hashFn) {
+        this(name, bpm, keyCodec, valueCodec, hashFn, HTABLE_HEADER_MAX_DEPTH, HTABLE_DIRECTORY_MAX_DEPTH,
+                ExtendibleHTableBucketPageView.HTableBucketArraySize(keyCodec.width() + valueCodec.width()));
+    }
+
+    /**
+     * @param name the name of the index, only used in logs
+     * @param hashFn the hash function, 高位决定directory，低位决定bucket，所以应当是充分混合的
+     * @param headerMaxDepth the max depth allowed for the header page
+     * @param directoryMaxDepth the max depth allowed for the directory page
+     * @param bucketMaxSize the max number of entries allowed for the bucket page
+     */
+    public DiskExtendibleHashTable(String name, BufferPoolManager bpm, PageCodec<K> keyCodec, PageCodec<V> valueCodec,
+                                   ToIntFunction<K> hashFn, int headerMaxDepth, int directoryMaxDepth, int bucketMaxSize) {
+        this(name, bpm, newHeaderPage(name, bpm, headerMaxDepth), keyCodec, valueCodec, hashFn, directoryMaxDepth,
+                bucketMaxSize);
+    }
+
+    /**
+     * Reopens the table whose header page is headerPageId, e.g. after the buffer pool has been restarted on the same
+     * db file, with the max depths and the max bucket size which fit into a page
+     */
+    public DiskExtendibleHashTable(String name, BufferPoolManager bpm, int headerPageId, PageCodec<K> keyCodec,
+                                   PageCodec<V> valueCodec, ToIntFunction<K> hashFn) {
+        this(name, bpm, headerPageId, keyCodec, valueCodec, hashFn, HTABLE_DIRECTORY_MAX_DEPTH,
+                ExtendibleHTableBucketPageView.HTableBucketArraySize(keyCodec.width() + valueCodec.width()));
+    }
+
+    /**
+     * Reopens an existing table. The header page records its own max depth, and every existing directory and bucket
+     * page records its own max depth/size, so directoryMaxDepth and bucketMaxSize only apply to the pages created
+     * from now on. codec和hashFn必须与创建时相同，否则已有的entry无法被找到
+     * @param headerPageId the header page of the table, i.e. {@link #GetHeaderPageId()} of the table when it was created
+     */
+    public DiskExtendibleHashTable(String name, BufferPoolManager bpm, int headerPageId, PageCodec<K> keyCodec,
+                                   PageCodec<V> valueCodec, ToIntFunction<K> hashFn, int directoryMaxDepth,
+                                   int bucketMaxSize) {
+        if (headerPageId == INVALID_PAGE_ID) {
+            throw new IllegalArgumentException(name + ": invalid header page id");
+        }
+        this.indexName = name;
+        this.bpm = bpm;
+        this.hashFn = hashFn;
+        this.bucketView = ExtendibleHTableBucketPageView.of(keyCodec, valueCodec);
+        this.directoryMaxDepth = directoryMaxDepth;
+        this.bucketMaxSize = bucketMaxSize;
+        this.headerPageId = headerPageId;
+    }
+
+    private static int newHeaderPage(String name, BufferPoolManager bpm, int headerMaxDepth) {
+        try (BasicPageGuard headerGuard = newPage(name, bpm)) {
+            headerGuard.AsViewMut(ExtendibleHTableHeaderPageView::new).init(headerMaxDepth);
+            return headerGuard.getPageId();
+        }
+    }
+
+    /**
+     * Get the value associated with a given key in the hash table.
+     * @return the value, or empty if the key is not found
+     */
+    public Optional<V> GetValue(K key) {
+        final int hash = Hash(key);
+        ReadPageGuard directoryGuard = crabToDirectory(hash, this::fetchRead);
+        if (Objects.isNull(directoryGuard)) {
+            return Optional.empty();
+        }
+        try (ReadPageGuard bucketGuard = crabToBucket(directoryGuard, hash, this::fetchRead)) {
+            return bucketGuard.AsView(bucketView).lookup(key);
+        }
+    }
+
+    /**
+     * Inserts a key-value pair into the hash table.
+     * @return true if inserted, false if the key already exists or the bucket cannot be split any more
+     */
+    public boolean Insert(K key, V value) {
+        final int hash = Hash(key);
+        ReadPageGuard existing = crabToDirectory(hash, this::fetchRead);
+        ReadPageGuard directoryGuard = Objects.nonNull(existing) ? existing : createDirectory(hash);
+        try (WritePageGuard bucketGuard = crabToBucket(directoryGuard, hash, this::fetchWrite)) {
+            var bucket = bucketGuard.AsView(bucketView);
+            if (bucket.IndexOf(key) != -1) {
+                return false;
+            }
+            if (!bucket.IsFull()) {
+                return bucketGuard.AsViewMut(bucketView).Insert(key, value);
+            }
+        }
+        return SplitInsert(hash, key, value); // bucket已满，需要修改directory
+    }
+
+    /**
+     * 持有directory的写锁，分裂bucket直到key所在的bucket有空间
+     */
+    private boolean SplitInsert(int hash, K key, V value) {
+        try (WritePageGuard directoryGuard = crabToDirectory(hash, this::fetchWrite)) {
+            var directory = directoryGuard.AsViewMut(ExtendibleHTableDirectoryPageView::new);
+            while (true) {
+                int bucketIdx = directory.HashToBucketIndex(hash);
+                try (WritePageGuard bucketGuard = fetchWrite(directory.GetBucketPageId(bucketIdx))) {
+                    var bucket = bucketGuard.AsViewMut(bucketView);
+                    if (bucket.IndexOf(key) != -1) {
+                        return false;
+                    }
+                    if (!bucket.IsFull()) {
+                        return bucket.Insert(key, value);
+                    }
+                    if (!SplitBucket(directory, bucketIdx, bucket)) {
+                        logger.info(indexName + ": cannot insert, the directory has reached its max depth " + directory.GetMaxDepth());
+                        return false;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 将bucketIdx所指向的bucket分裂为两个：原来指向它的表项中，第 localDepth 位（从0开始）为1的指向新的bucket，
+     * 对应的entry也移动到新的bucket中。新的bucket在directory的写锁被释放之前不会被其他线程访问，所以不需要latch
+     * @return false if the directory cannot grow any more
+     */
+    private boolean SplitBucket(ExtendibleHTableDirectoryPageView directory, int bucketIdx,
+                                ExtendibleHTableBucketPageView<K, V> bucket) {
+        final int localDepth = directory.GetLocalDepth(bucketIdx);
+        if (localDepth == directory.GetGlobalDepth()) {
+            if (directory.GetGlobalDepth() >= directory.GetMaxDepth()) {
+                return false;
+            }
+            directory.IncrGlobalDepth();
+        }
+        try (BasicPageGuard imageGuard = newPage()) {
+            var image = imageGuard.AsViewMut(bucketView);
+            image.init(bucketMaxSize);
+            final int highBit = 1 << localDepth;
+            for (int i = bucketIdx & (highBit - 1); i < directory.Size(); i += highBit) {
+                directory.SetLocalDepth(i, localDepth + 1);
+                if ((i & highBit) != 0) {
+                    directory.SetBucketPageId(i, imageGuard.getPageId());
+                }
+            }
+            // 从后往前遍历，RemoveAt会将最后一个（已经检查过的）entry移动到当前位置
+            for (int i = bucket.Size() - 1; i >= 0; i--) {
+                K key = bucket.KeyAt(i);
+                if ((Hash(key) & highBit) != 0) {
+                    image.Insert(key, bucket.ValueAt(i));
+                    bucket.RemoveAt(i);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes a key-value pair from the hash table, 若bucket变为空，则与其split image合并，并尽可能地缩小directory
+     * @return true if removed, false if not found
+     */
+    public boolean Remove(K key) {
+        final int hash = Hash(key);
+        ReadPageGuard directoryGuard = crabToDirectory(hash, this::fetchRead);
+        if (Objects.isNull(directoryGuard)) {
+            return false;
+        }
+        boolean mergeable;
+        WritePageGuard bucketGuard;
+        try (directoryGuard) { // 获取bucket的写锁之后才释放directory
+            var directory = directoryGuard.AsView(ExtendibleHTableDirectoryPageView::new);
+            int bucketIdx = directory.HashToBucketIndex(hash);
+            mergeable = directory.GetLocalDepth(bucketIdx) > 0;
+            bucketGuard = fetchWrite(directory.GetBucketPageId(bucketIdx));
+        }
+        try (bucketGuard) {
+            int idx = bucketGuard.AsView(bucketView).IndexOf(key);
+            if (idx == -1) {
+                return false;
+            }
+            var bucket = bucketGuard.AsViewMut(bucketView);
+            bucket.RemoveAt(idx);
+            mergeable &= bucket.IsEmpty();
+        }
+        if (mergeable) {
+            Merge(hash);
+        }
+        return true;
+    }
+
+    /**
+     * 持有directory的写锁，只要hash所在的bucket与其split image（local depth相同）有一个为空，就将两者合并
+     */
+    private void Merge(int hash) {
+        List<Integer> freedPageIds = new ArrayList<>();
+        try (WritePageGuard directoryGuard = crabToDirectory(hash, this::fetchWrite)) {
+            var directory = directoryGuard.AsViewMut(ExtendibleHTableDirectoryPageView::new);
+            while (true) {
+                int bucketIdx = directory.HashToBucketIndex(hash);
+                int localDepth = directory.GetLocalDepth(bucketIdx);
+                if (localDepth == 0) {
+                    break;
+                }
+                int imageIdx = directory.GetSplitImageIndex(bucketIdx);
+                if (directory.GetLocalDepth(imageIdx) != localDepth) {
+                    break; // split image已经被进一步分裂了
+                }
+                int bucketPageId = directory.GetBucketPageId(bucketIdx);
+                int imagePageId = directory.GetBucketPageId(imageIdx);
+                int survivorPageId;
+                try (WritePageGuard bucketGuard = fetchWrite(bucketPageId);
+                     WritePageGuard imageGuard = fetchWrite(imagePageId)) {
+                    boolean bucketEmpty = bucketGuard.AsView(bucketView).IsEmpty();
+                    if (!bucketEmpty && !imageGuard.AsView(bucketView).IsEmpty()) {
+                        break;
+                    }
+                    survivorPageId = bucketEmpty ? imagePageId : bucketPageId;
+                    freedPageIds.add(bucketEmpty ? bucketPageId : imagePageId);
+                }
+                final int lowBits = 1 << (localDepth - 1);
+                for (int i = bucketIdx & (lowBits - 1); i < directory.Size(); i += lowBits) {
+                    directory.SetBucketPageId(i, survivorPageId);
+                    directory.SetLocalDepth(i, localDepth - 1);
+                }
+                while (directory.CanShrink()) {
+                    directory.DecrGlobalDepth();
+                }
+            }
+        }
+        // 被合并的bucket已经不能通过directory访问到了；若仍然被pin（例如其他线程刚释放latch还没有unpin），则删除失败，
+        // 页面只是不会被回收
+        for (int pageId : freedPageIds) {
+            bpm.deletePage(pageId);
+        }
+    }
+
+    /**
+     * Verify the integrity of every directory of the table
+     * @throws RuntimeException if any of them is broken
+     */
+    public void VerifyIntegrity() {
+        try (ReadPageGuard headerGuard = fetchRead(headerPageId)) {
+            var header = headerGuard.AsView(ExtendibleHTableHeaderPageView::new);
+            for (int i = 0; i < header.maxSize(); i++) {
+                int directoryPageId = header.getDirectoryPageId(i);
+                if (directoryPageId == INVALID_PAGE_ID) {
+                    continue;
+                }
+                try (ReadPageGuard directoryGuard = fetchRead(directoryPageId)) {
+                    directoryGuard.AsView(ExtendibleHTableDirectoryPageView::new).VerifyIntegrity();
+                }
+            }
+        }
+    }
+
+    public int GetHeaderPageId() {
+        return headerPageId;
+    }
+
+    private int Hash(K key) {
+        return hashFn.applyAsInt(key);
+    }
+
+    /**
+     * 从header开始crabbing：持有header的读锁，获取hash所在directory的latch之后才释放header
+     * @param latchDirectory fetch and latch the directory page
+     * @return the guard of the directory, or null if the directory has not been created
+     */
+    private <G> G crabToDirectory(int hash, IntFunction<G> latchDirectory) {
+        try (ReadPageGuard headerGuard = fetchRead(headerPageId)) {
+            var header = headerGuard.AsView(ExtendibleHTableHeaderPageView::new);
+            int directoryPageId = header.getDirectoryPageId(header.hashToDirectoryIndex(hash));
+            return directoryPageId == INVALID_PAGE_ID ? null : latchDirectory.apply(directoryPageId);
+        }
+    }
+
+    /**
+     * 持有directory的读锁，获取hash所在bucket的latch之后才释放directory（即使获取失败，directory也会被释放）
+     * @param directoryGuard the guard of the directory, which is dropped by this method
+     * @param latchBucket fetch and latch the bucket page
+     * @return the guard of the bucket
+     */
+    private <G> G crabToBucket(ReadPageGuard directoryGuard, int hash, IntFunction<G> latchBucket) {
+        try (directoryGuard) {
+            var directory = directoryGuard.AsView(ExtendibleHTableDirectoryPageView::new);
+            return latchBucket.apply(directory.GetBucketPageId(directory.HashToBucketIndex(hash)));
+        }
+    }
+
+    /**
+     * 持有header的写锁，创建hash所在的directory（以及它的第一个bucket）
+     * @return the read guard of the directory
+     */
+    private ReadPageGuard createDirectory(int hash) {
+        try (WritePageGuard headerGuard = fetchWrite(headerPageId)) {
+            var header = headerGuard.AsView(ExtendibleHTableHeaderPageView::new);
+            int directoryIdx = header.hashToDirectoryIndex(hash);
+            int directoryPageId = header.getDirectoryPageId(directoryIdx);
+            if (directoryPageId == INVALID_PAGE_ID) { // 其他线程可能在等待写锁的过程中已经创建了
+                try (BasicPageGuard directoryGuard = newPage(); BasicPageGuard bucketGuard = newPage()) {
+                    bucketGuard.AsViewMut(bucketView).init(bucketMaxSize);
+                    var directory = directoryGuard.AsViewMut(ExtendibleHTableDirectoryPageView::new);
+                    directory.init(directoryMaxDepth);
+                    directory.SetBucketPageId(0, bucketGuard.getPageId());
+                    directoryPageId = directoryGuard.getPageId();
+                }
+                headerGuard.AsViewMut(ExtendibleHTableHeaderPageView::new).setDirectoryPageId(directoryIdx, directoryPageId);
+            }
+            return fetchRead(directoryPageId);
+        }
+    }
+
+    private ReadPageGuard fetchRead(int pageId) {
+        ReadPageGuard guard = bpm.FetchPageRead(pageId);
+        if (Objects.isNull(guard)) {
+            throw new RuntimeException(indexName + ": all frames are pinned, cannot fetch page " + pageId);
+        }
+        return guard;
+    }
+
+    private WritePageGuard fetchWrite(int pageId) {
+        WritePageGuard guard = bpm.FetchPageWrite(pageId);
+        if (Objects.isNull(guard)) {
+            throw new RuntimeException(indexName + ": all frames are pinned, cannot fetch page " + pageId);
+        }
+        return guard;
+    }
+
+    private BasicPageGuard newPage() {
+        return newPage(indexName, bpm);
+    }
+
+    private static BasicPageGuard newPage(String indexName, BufferPoolManager bpm) {
+        BasicPageGuard guard = bpm.newPageGuarded();
+        if (Objects.isNull(guard)) {
+            throw new RuntimeException(indexName + ": all frames are pinned, cannot allocate a new page");
+        }
+        return guard;
+    }
+}
@@ -2,29 +2,45 @@ package storage.disk;
 
 import config.DBConfig;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.nio.channels.SeekableByteChannel;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.util.Arrays;
 import java.util.Objects;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
-public class DiskManager { //TODO 待实现
+/**
+ * DiskManager takes care of the allocation and deallocation of pages within a database. It performs the reading and
+ * writing of pages to and from disk, providing a logical file layer within the context of a database management system.
+ * <p>
+ * 页面的读写均使用 FileChannel 的 positional read/write，即 {@code pageId * BUSTUB_PAGE_SIZE} 处的一次系统调用，
+ * 不需要移动channel的position，所以多个线程可以并发的读写不同的页面。
+ * </p>
+ */
+public class DiskManager {
+    /** 增长文件时每次写入的0的大小 */
+    private static final int PREALLOCATE_CHUNK_SIZE = DBConfig.BUSTUB_PAGE_SIZE * 64;
     private String logName;
     private String fileName;
     private final Path logPath;
     private final Path filePath;
-    private final SeekableByteChannel logChannel;
-    private final SeekableByteChannel fileChannel;
-    private int numFlushes;
-    private int numWrites;
-    private boolean flushLog;
+    private final FileChannel logChannel;
+    private final FileChannel fileChannel;
+    private final AtomicInteger numFlushes = new AtomicInteger(0);
+    private final AtomicInteger numWrites = new AtomicInteger(0);
+    private volatile boolean flushLog;
     private Future<Void> flushLogFuture; //TODO
+    /**
+     * 已经为db文件分配的大小（字节），文件总是按照 {@link DBConfig#DISK_EXTENT_SIZE} 整块增长，
+     * 只有在增长文件时才需要获取 {@link #dbIOLock}
+     */
+    private volatile long allocatedSize;
+    /** Protects the growth of the db file and the position of the channel used by vectored I/O. */
     private final Lock dbIOLock = new ReentrantLock();
     private final Logger logger = Logger.getLogger(getClass().getName());
     /**
@@ -33,13 +49,21 @@ public class DiskManager { //TODO 待实现
      */
     public DiskManager(String dbFileName) {
         this.fileName = dbFileName;
-        this.logName = "test.log";
+        int n = fileName.lastIndexOf('.');
+        if (n == -1) {
+            throw new RuntimeException("wrong file format: " + fileName);
+        }
+        this.logName = fileName.substring(0, n) + ".log";
         filePath = Paths.get(fileName);
         logPath = Paths.get(logName);
 
-            logChannel = null;
-            fileChannel = null;
-
+        try {
+            logChannel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            fileChannel = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            allocatedSize = fileChannel.size();
+        } catch (IOException e) {
+            throw new RuntimeException("can't open db file " + fileName, e);
+        }
     }
 
     /**
@@ -48,25 +72,209 @@ public class DiskManager { //TODO 待实现
      * @param page_data raw page data
      */
     public void writePage(int page_id, byte[] page_data) {
+        assert page_data.length >= DBConfig.BUSTUB_PAGE_SIZE;
+        writePage(page_id, ByteBuffer.wrap(page_data, 0, DBConfig.BUSTUB_PAGE_SIZE));
+    }
 
+    /**
+     * Write a page to the database file.
+     * buffer的position和limit会被重置，所以同一个buffer不能被多个线程同时用于I/O
+     * @param page_id id of the page
+     * @param page_data raw page data, e.g. the buffer which wraps the frame
+     */
+    public void writePage(int page_id, ByteBuffer page_data) {
+        assert page_data.capacity() >= DBConfig.BUSTUB_PAGE_SIZE;
+        long offset = pageOffset(page_id);
+        ensureAllocated(offset + DBConfig.BUSTUB_PAGE_SIZE);
+        page_data.clear().limit(DBConfig.BUSTUB_PAGE_SIZE);
+        try {
+            while (page_data.hasRemaining()) { // 通常一次write即可写完
+                fileChannel.write(page_data, offset + page_data.position());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("I/O error while writing page " + page_id, e);
+        } finally {
+            page_data.clear();
+        }
+        numWrites.incrementAndGet();
     }
 
     /**
      * Read a page from the database file.
+     * 直接读取到调用者提供的buffer中，而不是每次都分配一个新的数组
      * @param page_id id of the page
      * @param[out] page_data output buffer
-     * @return the data be read from disk
      */
-    public byte[] readPage(int page_id) {
-        byte[] ret = new byte[DBConfig.BUSTUB_PAGE_SIZE];
-        byte[] src = "A test string.".getBytes();
-        System.arraycopy(src, 0, ret, 0, src.length);
-        return ret;
+    public void readPage(int page_id, byte[] page_data) {
+        assert page_data.length >= DBConfig.BUSTUB_PAGE_SIZE;
+        readPage(page_id, ByteBuffer.wrap(page_data, 0, DBConfig.BUSTUB_PAGE_SIZE));
+    }
+
+    /**
+     * Read a page from the database file into the buffer in place.
+     * buffer的position和limit会被重置，所以同一个buffer不能被多个线程同时用于I/O
+     * @param page_id id of the page
+     * @param[out] page_data output buffer, e.g. the buffer which wraps the frame
+     */
+    public void readPage(int page_id, ByteBuffer page_data) {
+        assert page_data.capacity() >= DBConfig.BUSTUB_PAGE_SIZE;
+        long offset = pageOffset(page_id);
+        page_data.clear().limit(DBConfig.BUSTUB_PAGE_SIZE);
+        try {
+            while (page_data.hasRemaining()) {
+                int n = fileChannel.read(page_data, offset + page_data.position());
+                if (n == -1) { // 读取到了文件的末尾，剩余部分为空
+                    logger.fine("read less than a page, page_id = " + page_id);
+                    while (page_data.hasRemaining()) {
+                        page_data.put((byte) 0);
+                    }
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("I/O error while reading page " + page_id, e);
+        } finally {
+            page_data.clear();
+        }
     }
+
+    /**
+     * Write pages [first_page_id, first_page_id + pages.length) with one gather write.
+     * buffer的position和limit会被重置，所以同一个buffer不能被多个线程同时用于I/O
+     * @param first_page_id id of the first page
+     * @param pages raw data of the contiguous pages
+     */
+    public void writePages(int first_page_id, ByteBuffer[] pages) {
+        long offset = pageOffset(first_page_id);
+        long length = (long) pages.length * DBConfig.BUSTUB_PAGE_SIZE;
+        ensureAllocated(offset + length);
+        for (ByteBuffer page : pages) {
+            page.clear().limit(DBConfig.BUSTUB_PAGE_SIZE);
+        }
+        // vectored I/O依赖于channel的position，所以需要加锁；单个页面的positional I/O则不受影响
+        dbIOLock.lock();
+        try {
+            fileChannel.position(offset);
+            long written = 0;
+            while (written < length) {
+                written += fileChannel.write(pages);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("I/O error while writing pages from " + first_page_id, e);
+        } finally {
+            dbIOLock.unlock();
+            for (ByteBuffer page : pages) {
+                page.clear();
+            }
+        }
+        numWrites.addAndGet(pages.length);
+    }
+
+    /**
+     * Read pages [first_page_id, first_page_id + pages.length) with one scatter read, in place.
+     * buffer的position和limit会被重置，所以同一个buffer不能被多个线程同时用于I/O
+     * @param first_page_id id of the first page
+     * @param[out] pages output buffers of the contiguous pages
+     */
+    public void readPages(int first_page_id, ByteBuffer[] pages) {
+        long offset = pageOffset(first_page_id);
+        long length = (long) pages.length * DBConfig.BUSTUB_PAGE_SIZE;
+        for (ByteBuffer page : pages) {
+            page.clear().limit(DBConfig.BUSTUB_PAGE_SIZE);
+        }
+        dbIOLock.lock();
+        try {
+            fileChannel.position(offset);
+            long read = 0;
+            while (read < length) {
+                long n = fileChannel.read(pages);
+                if (n == -1) { // 读取到了文件的末尾，剩余部分为空
+                    logger.fine("read less than " + pages.length + " pages, first_page_id = " + first_page_id);
+                    for (ByteBuffer page : pages) {
+                        while (page.hasRemaining()) {
+                            page.put((byte) 0);
+                        }
+                    }
+                    break;
+                }
+                read += n;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("I/O error while reading pages from " + first_page_id, e);
+        } finally {
+            dbIOLock.unlock();
+            for (ByteBuffer page : pages) {
+                page.clear();
+            }
+        }
+    }
+
+    /**
+     * 文件按照extent整块增长，所以其中可能包括最后一个extent中还没有被使用的页面。重新打开数据库时，
+     * BufferPoolManager从这里开始分配新的page_id，从而不会覆盖已有的页面（代价是最多跳过一个extent）
+     * @return the number of pages which the db file has room for
+     */
+    public int getNumPages() {
+        return (int) (allocatedSize / DBConfig.BUSTUB_PAGE_SIZE);
+    }
+
     /**
      * Shut down the disk manager and close all the file resources.
      */
-    public void shutDown() { //TODO 待实现
+    public void shutDown() {
+        try {
+            if (fileChannel.isOpen()) {
+                fileChannel.force(false);
+                numFlushes.incrementAndGet();
+                fileChannel.close();
+            }
+            if (logChannel.isOpen()) {
+                logChannel.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("I/O error while closing db file " + fileName, e);
+        }
+    }
+
+    /**
+     * @return the byte offset of the page in the db file
+     */
+    private static long pageOffset(int page_id) {
+        if (page_id < 0) {
+            throw new IllegalArgumentException("invalid page_id: " + page_id);
+        }
+        return (long) page_id * DBConfig.BUSTUB_PAGE_SIZE;
+    }
+
+    /**
+     * 保证文件至少有 requiredSize 的大小。文件按照extent整块增长，从而避免每写一个新页面都要改变文件大小（元数据的更新）
+     * @param requiredSize 需要的最小文件大小
+     */
+    private void ensureAllocated(long requiredSize) {
+        if (requiredSize <= allocatedSize) { // fast path，不需要加锁
+            return;
+        }
+        dbIOLock.lock();
+        try {
+            if (requiredSize <= allocatedSize) {
+                return;
+            }
+            long extent = DBConfig.DISK_EXTENT_SIZE;
+            long newSize = (requiredSize + extent - 1) / extent * extent;
+            // 写入整个新extent的0，而不是只在新的末尾写入一个字节：后者只会产生一个稀疏文件，
+            // 磁盘空间要等到之后写页面时才真正分配（并且可能在那时才发现空间不足）
+            ByteBuffer zeros = ByteBuffer.allocate((int) Math.min(extent, PREALLOCATE_CHUNK_SIZE));
+            long position = allocatedSize;
+            while (position < newSize) {
+                zeros.clear().limit((int) Math.min(zeros.capacity(), newSize - position));
+                position += fileChannel.write(zeros, position);
+            }
+            allocatedSize = newSize;
+        } catch (IOException e) {
+            throw new RuntimeException("I/O error while growing db file " + fileName, e);
+        } finally {
+            dbIOLock.unlock();
+        }
     }
 
 
@@ -76,7 +284,23 @@ public class DiskManager { //TODO 待实现
      * @param size size of log entry
      */
     void WriteLog(byte[] log_data, int size) {
-
+        if (size == 0) { // no effect on num_flushes_ if log buffer is empty
+            return;
+        }
+        flushLog = true;
+        try {
+            ByteBuffer src = ByteBuffer.wrap(log_data, 0, size);
+            long offset = logChannel.size();
+            while (src.hasRemaining()) {
+                logChannel.write(src, offset + src.position());
+            }
+            logChannel.force(false);
+            numFlushes.incrementAndGet();
+        } catch (IOException e) {
+            throw new RuntimeException("I/O error while writing log", e);
+        } finally {
+            flushLog = false;
+        }
     }
 
     /**
@@ -87,22 +311,36 @@ public class DiskManager { //TODO 待实现
      * @return true if the read was successful, false otherwise
      */
     boolean ReadLog(byte[] log_data, int size, int offset) {
-        return false;
+        try {
+            if (offset >= logChannel.size()) {
+                return false;
+            }
+            ByteBuffer dst = ByteBuffer.wrap(log_data, 0, size);
+            while (dst.hasRemaining()) {
+                if (logChannel.read(dst, offset + dst.position()) == -1) {
+                    Arrays.fill(log_data, dst.position(), size, (byte) 0);
+                    break;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException("I/O error while reading log", e);
+        }
     }
 
     /** @return the number of disk flushes */
     int GetNumFlushes() {
-        return 0;
+        return numFlushes.get();
     }
 
     /** @return true iff the in-memory content has not been flushed yet */
     boolean GetFlushState() {
-        return false;
+        return flushLog;
     }
 
     /** @return the number of disk writes */
     int GetNumWrites() {
-        return 0;
+        return numWrites.get();
     }
 
     /**
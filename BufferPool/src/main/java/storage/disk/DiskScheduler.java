@@ -1,19 +1,30 @@
 package storage.disk;
 
+import config.DBConfig;
 import impletation.CustomChannel;
 import impletation.CustomChannelImpl;
+import impletation.MpscRingChannel;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 
 /**
  * @brief The DiskScheduler schedules disk read and write operations.
  *
  * A request is scheduled by calling DiskScheduler::Schedule() with an appropriate DiskRequest object.
- * The scheduler maintains a background worker thread that processes the scheduled requests using the disk manager.
- * The background thread is created in the DiskScheduler constructor and joined in its destructor.
+ * The scheduler maintains background worker threads that process the scheduled requests using the disk manager.
+ * Each worker drains its own queue, and a request is routed to a queue by its page id, so the requests of one page
+ * are processed in the order they are scheduled while requests of different pages are processed in parallel.
+ * A worker takes all the requests waiting in its queue at once, and merges the reads (or writes) of contiguous pages
+ * into one vectored I/O, which turns checkpoint flushes and range scans into large sequential I/O.
+ * The background threads are created in the DiskScheduler constructor and joined in its destructor.
  * 由于java中的线程，即使在其创建线程结束时，其也会继续执行，所以无需担心destructor的问题（不同于c++）
  */
 public class DiskScheduler {
@@ -31,13 +42,21 @@ public class DiskScheduler {
          *   1. being read into from disk (on a read).
          *   2. being written out to disk (on a write).
          */
-        byte[] data;
+        ByteBuffer data;
         /** ID of the page being read from / written to disk. */
         int pageId;
         /** Callback used to signal to the request issuer when the request has been completed. */
         Future<Boolean> callback;
 
         public DiskRequest(boolean isWrite, byte[] data, int pageId, Future<Boolean> callback) {
+            this(isWrite, ByteBuffer.wrap(data), pageId, callback);
+        }
+
+        /**
+         * 使用frame的buffer（例如{@link storage.page.Page#getBuffer()}）来创建请求，读请求会直接读入到此buffer中，
+         * 整个过程中不需要分配或者复制页面大小的数组
+         */
+        public DiskRequest(boolean isWrite, ByteBuffer data, int pageId, Future<Boolean> callback) {
             this.isWrite = isWrite;
             this.data = data;
             this.pageId = pageId;
@@ -45,16 +64,69 @@ public class DiskScheduler {
         }
     }
 
-    private final CustomChannel<Optional<DiskRequest>> requestQueue;
-    private final Optional<Thread> backgroundThread;
+    /**
+     * 每个worker拥有一个自己的队列，请求按照pageId路由到队列中，所以同一个page的请求总是按照schedule的顺序被处理
+     */
+    private final CustomChannel<Optional<DiskRequest>>[] requestQueues;
+    private final Thread[] backgroundThreads;
     private final DiskManager diskManager;
 
     public DiskScheduler(DiskManager diskManager) {
+        this(diskManager, DBConfig.DISK_SCHEDULER_NUM_WORKERS);
+    }
+
+    /**
+     * @param diskManager the disk manager
+     * @param numWorkers the number of background worker threads, i.e. the max number of in-flight I/O requests
+     */
+    public DiskScheduler(DiskManager diskManager, int numWorkers) {
+        this(diskManager, numWorkers, Thread::new);
+    }
+
+    /**
+     * @param diskManager the disk manager
+     * @param numWorkers the number of background worker threads, i.e. the max number of in-flight I/O requests
+     * @param threadFactory creates the worker threads. 队列和请求的Future只使用park/unpark等待，不过使用virtual
+     *                      thread的factory还没有在JDK 21上验证过（见 {@link buffer.BufferPoolManager} 的对应构造函数）
+     */
+    public DiskScheduler(DiskManager diskManager, int numWorkers, ThreadFactory threadFactory) {
+        this(diskManager, numWorkers, threadFactory, DBConfig.DISK_SCHEDULER_LOCK_FREE_QUEUES);
+    }
+
+    /**
+     * @param lockFreeQueues 使用有界的lock-free {@link MpscRingChannel} 代替默认的 {@link CustomChannelImpl} 作为请求队列，
+     *                       队列满时schedule会等待
+     * @see DBConfig#DISK_SCHEDULER_LOCK_FREE_QUEUES
+     */
+    public DiskScheduler(DiskManager diskManager, int numWorkers, ThreadFactory threadFactory, boolean lockFreeQueues) {
+        if (numWorkers <= 0) {
+            throw new IllegalArgumentException("numWorkers must be positive: " + numWorkers);
+        }
         this.diskManager = diskManager;
-        this.requestQueue = new CustomChannelImpl<>(); // TODO 设计一个实现类
-        Runnable taskOfWorker = this::startWorkerThread;
-        backgroundThread = Optional.of(new Thread(taskOfWorker));
-        backgroundThread.get().start();    // 启动background线程
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        CustomChannel<Optional<DiskRequest>>[] queues = new CustomChannel[numWorkers];
+        this.requestQueues = queues;
+        this.backgroundThreads = new Thread[numWorkers];
+        for (int i = 0; i < numWorkers; i++) {
+            // 每个队列只有一个消费者（worker），所以也可以使用lock-free的MPSC队列
+            requestQueues[i] = lockFreeQueues
+                    ? new MpscRingChannel<>(DBConfig.DISK_SCHEDULER_QUEUE_CAPACITY)
+                    : new CustomChannelImpl<>();
+        }
+        for (int i = 0; i < numWorkers; i++) {
+            final int workerId = i;
+            Runnable taskOfWorker = () -> startWorkerThread(workerId);
+            backgroundThreads[i] = threadFactory.newThread(taskOfWorker);
+            backgroundThreads[i].setName("disk-scheduler-worker-" + i);
+            backgroundThreads[i].start();    // 启动background线程
+        }
+    }
+
+    /**
+     * @return the number of background worker threads
+     */
+    public int getNumWorkers() {
+        return backgroundThreads.length;
     }
 
     // 该方法被BufferManager所调用，从而获取数据
@@ -65,13 +137,22 @@ public class DiskScheduler {
      */
     public void schedule(DiskRequest req) {
         try {
-            requestQueue.put(Optional.of(req));
+            queueOf(req.pageId).put(Optional.of(req));
         } catch (InterruptedException e) {
             logger.info("schedule方法被终止");
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * 同一个page的请求总是路由到同一个队列（同一个worker），从而保证其顺序
+     */
+    private CustomChannel<Optional<DiskRequest>> queueOf(int pageId) {
+        // 相邻的页面（同一个stripe）路由到同一个worker，从而可以被合并
+        int stripe = Math.floorDiv(pageId, DBConfig.DISK_SCHEDULER_STRIPE_PAGES);
+        return requestQueues[Math.floorMod(stripe, requestQueues.length)];
+    }
+
     //  TODO 缺少一个退出的机制,
     /**
      * 如果直接使用Interrupt的话，会导致Queue中的请求并未处理完，而被shutDown，即使
@@ -86,18 +167,19 @@ public class DiskScheduler {
      * </code>
      * </pre>
      * 当再一次get时，就会判断中断标志，而被中断，所以这种方法是不可行的
+     * @param workerId 当前worker的编号，其只处理自己的队列
      */
-    public void startWorkerThread() {
+    public void startWorkerThread(int workerId) {
+        CustomChannel<Optional<DiskRequest>> requestQueue = requestQueues[workerId];
+        List<Optional<DiskRequest>> batch = new ArrayList<>(DBConfig.DISK_SCHEDULER_MAX_BATCH);
         Optional<DiskRequest> req;
         try {
             while ((req = requestQueue.get()).isPresent()) { // 获取新的请求，若队列为空，则阻塞
-                processRequest(req);
-                // 下面代码与catch和finally的作用相重合
-//                if (requestQueue.size() == 0) { //若队列不为空，则不响应Interrupt
-//                    if (Thread.interrupted()) {
-//                        return;
-//                    }
-//                }
+                // 再取出队列中已经在等待的请求，一起处理
+                batch.add(req);
+                requestQueue.drainTo(batch, DBConfig.DISK_SCHEDULER_MAX_BATCH - 1);
+                processBatch(batch);
+                batch.clear();
             }
         } catch (InterruptedException e) {
             logger.info("WorkerThread被ShutDown，队列中剩余："+requestQueue.size());
@@ -109,23 +191,92 @@ public class DiskScheduler {
                     throw new RuntimeException(e);
                 }
             }
-            System.out.println( ("finally执行完毕，队列中剩余："+requestQueue.size()) );
             logger.info("finally执行完毕，队列中剩余："+requestQueue.size()); //TODO 无法输出，在其之后的sout语句也无法输出
         }
     }
 
-    private void processRequest(Optional<DiskRequest> req) {
-        DiskRequest request = req.get();
+    /**
+     * 将一批请求按照pageId排序（稳定排序，同一个page的请求保持原有的顺序），并将连续页面上的读（或写）请求
+     * 合并为一次scatter/gather I/O，之后再分别complete每个请求的Future
+     * @param batch 从队列中取出的请求
+     */
+    private void processBatch(List<Optional<DiskRequest>> batch) {
+        if (batch.size() == 1) {
+            processRequest(batch.get(0));
+            return;
+        }
+        List<DiskRequest> requests = new ArrayList<>(batch.size());
+        for (Optional<DiskRequest> req : batch) {
+            req.ifPresent(requests::add);
+        }
+        requests.sort(Comparator.comparingInt(request -> request.pageId));
+        int start = 0;
+        while (start < requests.size()) {
+            int end = start + 1; // [start, end) 是一段连续的同类请求
+            while (end < requests.size()
+                    && requests.get(end).isWrite == requests.get(start).isWrite
+                    && requests.get(end).pageId == requests.get(end - 1).pageId + 1) {
+                end++;
+            }
+            if (end - start == 1) {
+                processRequest(requests.get(start));
+            } else {
+                processRun(requests.subList(start, end));
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * @param run 连续页面上的同类请求
+     */
+    private void processRun(List<DiskRequest> run) {
+        DiskRequest first = run.get(0);
+        ByteBuffer[] buffers = new ByteBuffer[run.size()];
+        for (int i = 0; i < buffers.length; i++) {
+            checkCallback(run.get(i));
+            buffers[i] = run.get(i).data;
+        }
+        try {
+            if (first.isWrite) {
+                diskManager.writePages(first.pageId, buffers);
+            } else {
+                diskManager.readPages(first.pageId, buffers);
+            }
+        } catch (RuntimeException e) {
+            for (DiskRequest request : run) {
+                ((CompletableFuture<Boolean>) request.callback).completeExceptionally(e);
+            }
+            return;
+        }
+        for (DiskRequest request : run) {
+            ((CompletableFuture<Boolean>) request.callback).complete(true);
+        }
+    }
+
+    private static void checkCallback(DiskRequest request) {
         if ( !(request.callback instanceof CompletableFuture<Boolean>) ) {
             throw new RuntimeException("请检查Future的类型，使用工厂方法来进行获取");
         }
+    }
+
+    private void processRequest(Optional<DiskRequest> req) {
+        processRequest(req.get());
+    }
+
+    private void processRequest(DiskRequest request) {
+        checkCallback(request);
         // 判断是读请求 还是 写请求
-        if (request.isWrite) {
-            diskManager.writePage(request.pageId, request.data);
-        } else {
-            byte[] page = diskManager.readPage(request.pageId);
-            // 不能直接替换request的data为page 而应该复制
-            System.arraycopy(page, 0, request.data, 0, request.data.length);
+        try {
+            if (request.isWrite) {
+                diskManager.writePage(request.pageId, request.data);
+            } else {
+                // 直接读取到request的data中，无需再复制
+                diskManager.readPage(request.pageId, request.data);
+            }
+        } catch (RuntimeException e) { // 将I/O异常传递给调用者，Future#get会抛出ExecutionException
+            ((CompletableFuture<Boolean>) request.callback).completeExceptionally(e);
+            return;
         }
         // 设置此次操作的返回值，因为外部线程会调用Future#get从而阻塞
         ((CompletableFuture<Boolean>) request.callback).complete(true);
@@ -136,10 +287,8 @@ public class DiskScheduler {
      * 在原C++中的实现，是通过传入一个<i>NUllOpt</i>来终止
      */
     public void shutDown() {
-        if (backgroundThread.isPresent()) {
-            backgroundThread.get().interrupt();
-        } else {
-            logger.info("无法shutDown,Thread为空");
+        for (Thread backgroundThread : backgroundThreads) {
+            backgroundThread.interrupt();
         }
     }
 
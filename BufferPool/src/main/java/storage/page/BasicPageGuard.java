@@ -1,6 +1,7 @@
 package storage.page;
 
 import buffer.BufferPoolManager;
+import config.DBConfig;
 import serialization.MyOIS;
 import util.SerializeUtils;
 
@@ -8,13 +9,19 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Objects;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
 /**
  * 是否需要在此类的方法中 pin一个Page，不需要，因为在fetch和new一个新的page的时候就已经pin了
+ * <p>
+ * guard都是AutoCloseable，应当在try-with-resources中使用，close是幂等的；若BufferPoolManager开启了
+ * {@link GuardLeakDetector}，没有被drop的guard会在shutDown时连同其获取的位置一起被报告
+ * </p>
  */
-public class BasicPageGuard{
+public class BasicPageGuard implements AutoCloseable {
     private BufferPoolManager bufferPoolManager;
     private Page page;
     private boolean isDirty = false;
@@ -23,12 +30,27 @@ public class BasicPageGuard{
     public BasicPageGuard(BufferPoolManager poolManager, Page page) {
         this.bufferPoolManager = poolManager;
         this.page = page;
+        GuardLeakDetector leakDetector = leakDetectorOf(poolManager);
+        if (Objects.nonNull(leakDetector) && Objects.nonNull(page)) {
+            leakDetector.track(this, page.getPageId());
+        }
     }
 
     //TODO 对c++中移动构造函数的模拟 是否有用？
     public BasicPageGuard(BasicPageGuard pageGuard) {
-        this(pageGuard.bufferPoolManager, pageGuard.page);
+        this.bufferPoolManager = pageGuard.bufferPoolManager;
+        this.page = pageGuard.page;
+        this.isDirty = pageGuard.isDirty;
+        GuardLeakDetector leakDetector = leakDetectorOf(bufferPoolManager);
+        if (Objects.nonNull(leakDetector)) {
+            leakDetector.moved(pageGuard, this);
+        }
         pageGuard.page = null;
+        pageGuard.bufferPoolManager = null;
+    }
+
+    private static GuardLeakDetector leakDetectorOf(BufferPoolManager poolManager) {
+        return Objects.isNull(poolManager) ? null : poolManager.getGuardLeakDetector();
     }
 
     /** TODO(P1): Add implementation
@@ -43,6 +65,28 @@ public class BasicPageGuard{
      */
     void drop() {
         checkIfBasicPageGuardValid();
+        release();
+    }
+
+    /**
+     * Drop the guard if it has not been dropped (or moved) yet, so that it can be used in try-with-resources.
+     */
+    @Override
+    public void close() {
+        if (isValid()) {
+            release();
+        }
+    }
+
+    private boolean isValid() {
+        return Objects.nonNull(bufferPoolManager) && Objects.nonNull(page);
+    }
+
+    private void release() {
+        GuardLeakDetector leakDetector = bufferPoolManager.getGuardLeakDetector();
+        if (Objects.nonNull(leakDetector)) {
+            leakDetector.release(this);
+        }
         bufferPoolManager.unpinPage(page.getPageId(), isDirty);
         this.page = null;
         this.bufferPoolManager = null;
@@ -55,15 +99,13 @@ public class BasicPageGuard{
             try {
                 byte[] updatedData = SerializeUtils.deserialize(outerPage);
                 // invariants: mayUpdatedData.length <= basicPageGuard.page.length(which equal DBConfig.PAGE_SIZE)
-                System.arraycopy(updatedData, 0, this.page.getData(), 0, updatedData.length);
+                this.page.getBuffer().put(0, updatedData);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         }
 
-        bufferPoolManager.unpinPage(page.getPageId(), isDirty);
-        this.page = null;
-        this.bufferPoolManager = null;
+        release();
     }
 
     private void checkIfBasicPageGuardValid() {
@@ -78,21 +120,22 @@ public class BasicPageGuard{
         }
     }
 
-    /** TODO(P1): Add implementation
-     *
+    /**
      * @brief Upgrade a BasicPageGuard to a ReadPageGuard
      *
      * The protected page is not evicted from the buffer pool during the upgrade,
      * and the basic page guard should be made invalid after calling this function.
+     * pin直接转移给新的guard，不需要unpin之后再fetch（不需要查page table，也不会经过replacer）
      *
      * @return an upgraded ReadPageGuard
      */
-    ReadPageGuard UpgradeRead() {
-        return null;
+    public ReadPageGuard UpgradeRead() {
+        checkIfBasicPageGuardValid();
+        long latchStamp = page.rLatch();
+        return new ReadPageGuard(new BasicPageGuard(this), latchStamp);
     }
 
-    /** TODO(P1): Add implementation
-     *
+    /**
      * @brief Upgrade a BasicPageGuard to a WritePageGuard
      *
      * The protected page is not evicted from the buffer pool during the upgrade,
@@ -100,8 +143,10 @@ public class BasicPageGuard{
      *
      * @return an upgraded WritePageGuard
      */
-    WritePageGuard UpgradeWrite() {
-        return null;
+    public WritePageGuard UpgradeWrite() {
+        checkIfBasicPageGuardValid();
+        page.wLatch();
+        return new WritePageGuard(new BasicPageGuard(this));
     }
 
     public int getPageId() { return page.getPageId(); }
@@ -110,8 +155,54 @@ public class BasicPageGuard{
      * 返回一个不可更改的数组，目前通过clone实现
      * @return
      */
-    public byte[] getData() { return page.getData().clone(); } //TODO 对于Clone方法的讨论
+    public byte[] getData() { //TODO 对于Clone方法的讨论
+        byte[] copy = new byte[DBConfig.BUSTUB_PAGE_SIZE];
+        page.getBuffer().get(0, copy);
+        return copy;
+    }
+
 
+    /**
+     * Optimistic read of the page: 不获取读锁，读完之后验证期间没有写者（持有写锁的线程）修改过页面，否则重读；
+     * 连续失败 {@link DBConfig#PAGE_OPTIMISTIC_READ_RETRIES} 次之后获取读锁再读。
+     * 适用于被频繁读的热点页面（例如hash table的header page），读者之间不会争抢latch的cache line。
+     * 注意：只有持有写锁的修改才能被检测到，通过BasicPageGuard（没有latch）的修改对乐观读是不可见的
+     * @param reader 从只读的buffer中（只能使用absolute get）读取并复制出需要的内容。它可能读到不一致的数据，
+     *               此时它抛出的任何Throwable（例如被撕裂的长度字段导致的IndexOutOfBoundsException，甚至是过大的分配
+     *               导致的OutOfMemoryError）在验证失败之后都会被忽略；它也可能被执行多次，所以不能有副作用。
+     *               reader不能循环读取页面中的数据直到满足某个条件（例如沿着页面中的"next"下标遍历），也不能让循环的
+     *               次数或者分配的大小直接取决于页面中的值，而应当用常量（例如页面大小）限制它们：验证只在reader返回之后
+     *               进行，对于不一致的数据，一个不会结束的循环永远不会被发现
+     * @return the result of the reader on a consistent page
+     */
+    public <R> R readOptimistic(Function<ByteBuffer, R> reader) {
+        checkIfBasicPageGuardValid();
+        for (int i = 0; i < DBConfig.PAGE_OPTIMISTIC_READ_RETRIES; i++) {
+            long stamp = page.tryOptimisticRead();
+            if (stamp == 0) { // 正在被写
+                Thread.onSpinWait();
+                continue;
+            }
+            R result;
+            try {
+                result = reader.apply(page.getReadOnlyBuffer());
+            } catch (Throwable e) {
+                if (page.validate(stamp)) {
+                    throw e; // 数据是一致的，说明不是由于并发的修改
+                }
+                continue;
+            }
+            if (page.validate(stamp)) {
+                return result;
+            }
+        }
+        page.rLatch();
+        try {
+            return reader.apply(page.getReadOnlyBuffer());
+        } finally {
+            page.rUnLatch();
+        }
+    }
 
     public <T> T As(T mock, Class<T> cl) {
         byte[] data = getData();
@@ -122,30 +213,110 @@ public class BasicPageGuard{
         }
     }
 
+    /**
+     * @throws UnsupportedOperationException if the page is backed by off-heap memory, use {@link #GetBufferMut()} instead
+     */
     public byte[] GetDataMut() {
         isDirty = true;
         return page.getData();
     }
 
+    /**
+     * 返回page的buffer，无论page是否在堆中，均可以直接修改
+     * @return the buffer of the page
+     */
+    public ByteBuffer GetBufferMut() {
+        isDirty = true;
+        return page.getBuffer();
+    }
+
     public <T> T AsMut(T mock, Class<T> cl) {
-        byte[] data = GetDataMut();
+        isDirty = true;
+        byte[] data = getData(); // 修改后的内容在drop时写回page
         try {
             return SerializeUtils.serialize(mock, cl, data);
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
     }
-    public static class ReadPageGuard {
+
+    /**
+     * 以只读的方式将页面看作一个 {@link PageView}，没有反序列化和复制，例如
+     * {@code guard.AsView(ExtendibleHTableDirectoryPageView::new)}
+     * @param view the constructor of the view
+     */
+    public <V extends PageView> V AsView(Function<ByteBuffer, V> view) {
+        return view.apply(page.getReadOnlyBuffer());
+    }
+
+    /**
+     * 与 {@link #AsView(Function)} 相同，但是通过view的修改直接写入页面，所以drop时不需要写回
+     */
+    public <V extends PageView> V AsViewMut(Function<ByteBuffer, V> view) {
+        isDirty = true;
+        return view.apply(page.getBuffer());
+    }
+    public static class ReadPageGuard implements AutoCloseable {
         private BasicPageGuard basicPageGuard;
+        /** 获取读锁时的stamp，用于升级为写锁，0表示未知（不能原子地升级） */
+        private long latchStamp;
 
         public ReadPageGuard(BufferPoolManager poolManager, Page page) {
-            this.basicPageGuard = new BasicPageGuard(poolManager, page);
+            this(poolManager, page, 0);
+        }
+
+        /**
+         * @param latchStamp the stamp returned by {@link Page#rLatch()} when the caller latched the page
+         */
+        public ReadPageGuard(BufferPoolManager poolManager, Page page, long latchStamp) {
+            this(new BasicPageGuard(poolManager, page), latchStamp);
+        }
+
+        private ReadPageGuard(BasicPageGuard basicPageGuard, long latchStamp) {
+            this.basicPageGuard = basicPageGuard;
+            this.latchStamp = latchStamp;
         }
+
         //移动构造函数
         public ReadPageGuard(ReadPageGuard readPageGuard) {
             this.basicPageGuard = readPageGuard.basicPageGuard;
+            this.latchStamp = readPageGuard.latchStamp;
             readPageGuard.basicPageGuard = null;
         }
+
+        /**
+         * Try to upgrade the read latch to the write latch without waiting, e.g. for latch crabbing in an index.
+         * 只有当前guard是page唯一的读者时才会成功，此时页面在升级的前后不可能被其他写者修改；pin直接转移给新的guard，
+         * 当前guard不能再被使用。失败时当前guard保持不变（仍然持有读锁）
+         * @return the upgraded WritePageGuard, or null if other readers hold the page
+         */
+        public WritePageGuard tryUpgradeWrite() {
+            checkIfBasicPageGuardValid(basicPageGuard);
+            if (latchStamp == 0 || !basicPageGuard.page.tryUpgradeLatch(latchStamp)) {
+                return null;
+            }
+            WritePageGuard writePageGuard = new WritePageGuard(basicPageGuard);
+            basicPageGuard = null;
+            return writePageGuard;
+        }
+
+        /**
+         * Upgrade the read latch to the write latch, 先尝试 {@link #tryUpgradeWrite()}，若不能立即升级，则释放读锁
+         * 之后再等待写锁（pin一直被持有，page不会被替换）。注意：此时在两者之间页面可能已经被其他写者修改了，
+         * 需要原子性的调用者应当使用 {@link #tryUpgradeWrite()}
+         * @return the upgraded WritePageGuard, 当前guard不能再被使用
+         */
+        public WritePageGuard UpgradeWrite() {
+            WritePageGuard writePageGuard = tryUpgradeWrite();
+            if (Objects.nonNull(writePageGuard)) {
+                return writePageGuard;
+            }
+            basicPageGuard.page.rUnLatch();
+            basicPageGuard.page.wLatch();
+            writePageGuard = new WritePageGuard(basicPageGuard);
+            basicPageGuard = null;
+            return writePageGuard;
+        }
         /** TODO(P1): Add implementation
          *
          * @brief Drop a ReadPageGuard
@@ -161,6 +332,27 @@ public class BasicPageGuard{
             basicPageGuard.page.rUnLatch(); //TODO 内部类可以直接访问外部类的private属性
             // 接着清理basicPageGuard
             basicPageGuard.drop();
+            basicPageGuard = null;
+        }
+
+        /**
+         * Same as {@link #drop()}, but does nothing if the guard has been dropped or upgraded.
+         */
+        @Override
+        public void close() {
+            if (Objects.nonNull(basicPageGuard) && basicPageGuard.isValid()) {
+                drop();
+            }
+        }
+
+        /**
+         * Flush the page to disk under the read latch held by this guard, 不能使用
+         * {@link BufferPoolManager#flushPage(int)}，因为latch不可重入
+         * @return false if the page could not be written
+         */
+        public boolean Flush() {
+            checkIfBasicPageGuardValid(basicPageGuard);
+            return basicPageGuard.bufferPoolManager.flushPage(basicPageGuard.getPageId(), true);
         }
 
         int PageId()  { return basicPageGuard.getPageId(); }
@@ -170,13 +362,21 @@ public class BasicPageGuard{
         public <T> T As(T mock, Class<T> cl) {
             return basicPageGuard.As(mock, cl);
         }
+
+        public <V extends PageView> V AsView(Function<ByteBuffer, V> view) {
+            return basicPageGuard.AsView(view);
+        }
     }
 
-    public static class WritePageGuard {
+    public static class WritePageGuard implements AutoCloseable {
         private BasicPageGuard basicPageGuard;
 
         public WritePageGuard(BufferPoolManager poolManager, Page page) {
-            this.basicPageGuard = new BasicPageGuard(poolManager, page);
+            this(new BasicPageGuard(poolManager, page));
+        }
+
+        private WritePageGuard(BasicPageGuard basicPageGuard) {
+            this.basicPageGuard = basicPageGuard;
         }
         //移动构造函数
         public WritePageGuard(WritePageGuard writePageGuard) {
@@ -198,7 +398,7 @@ public class BasicPageGuard{
                 try {
                     byte[] updatedData = SerializeUtils.deserialize(outerPage);
                     // invariants: mayUpdatedData.length <= basicPageGuard.page.length(which equal DBConfig.PAGE_SIZE)
-                    System.arraycopy(updatedData, 0, basicPageGuard.page.getData(), 0, updatedData.length);
+                    basicPageGuard.page.getBuffer().put(0, updatedData);
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
@@ -206,12 +406,39 @@ public class BasicPageGuard{
             // 必须先释放写锁，再drop，因为basicPageGuard drop之后，会删除page的引用
             basicPageGuard.page.wUnLatch();
             basicPageGuard.drop();
+            basicPageGuard = null;
+        }
+
+        /**
+         * Drop the guard if it has not been dropped yet. 与 {@link #drop(SerializablePageData)} 不同，
+         * 不会写回反序列化出来的页面对象，即只适用于通过 {@link #GetBufferMut()} 或者 {@link #AsViewMut} 直接修改页面的情况
+         */
+        @Override
+        public void close() {
+            if (Objects.isNull(basicPageGuard) || !basicPageGuard.isValid()) {
+                return;
+            }
+            basicPageGuard.page.wUnLatch();
+            basicPageGuard.release();
+            basicPageGuard = null;
+        }
+
+        /**
+         * Flush the page to disk under the write latch held by this guard, 写出的是页面buffer当前的内容，
+         * 通过 {@link #drop(SerializablePageData)} 才写回的修改不包含在内
+         * @return false if the page could not be written
+         */
+        public boolean Flush() {
+            checkIfBasicPageGuardValid(basicPageGuard);
+            return basicPageGuard.bufferPoolManager.flushPage(basicPageGuard.getPageId(), true);
         }
 
         int PageId()  { return basicPageGuard.getPageId(); }
 
         byte[] GetDataMut() { return basicPageGuard.GetDataMut(); }
 
+        public ByteBuffer GetBufferMut() { return basicPageGuard.GetBufferMut(); }
+
         public <T> T As(T mock, Class<T> cl) {
             return basicPageGuard.As(mock, cl);
         }
@@ -220,6 +447,14 @@ public class BasicPageGuard{
             return basicPageGuard.AsMut(mock, cl);
         }
 
+        public <V extends PageView> V AsView(Function<ByteBuffer, V> view) {
+            return basicPageGuard.AsView(view);
+        }
+
+        public <V extends PageView> V AsViewMut(Function<ByteBuffer, V> view) {
+            return basicPageGuard.AsViewMut(view);
+        }
+
 
     }
 
@@ -4,26 +4,31 @@ import annotation.UnsignedInt;
 import impletation.Pair;
 import lombok.val;
 import serialization.ArrayNullElement;
+import util.BitUtils;
 import util.TypeUtils;
 
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.ToIntFunction;
 
 import static config.DBConfig.BUSTUB_PAGE_SIZE;
 
 /**
  * Bucket page for extendible hash table.
+ * 序列化时会写入泛型的类名，需要预留 extraSerializeSpace()，
+ * 紧凑的二进制格式见 {@link ExtendibleHTableBucketPageView}
  */
 public class ExtendibleHTableBucketPage<KeyType, ValueType> implements SerializablePageData , ArrayNullElement {
     private static final @UnsignedInt int HTABLE_BUCKET_PAGE_METADATA_SIZE = Integer.BYTES * 2;
     private static @UnsignedInt int HTableBucketArraySize(@UnsignedInt int mapping_type_size) {
-        return (BUSTUB_PAGE_SIZE - HTABLE_BUCKET_PAGE_METADATA_SIZE - extraSerializeSpace() - 50/*余量*/) / mapping_type_size;
+        return (BUSTUB_PAGE_SIZE - HTABLE_BUCKET_PAGE_METADATA_SIZE - extraSerializeSpace() - 50/*余量*/) / (mapping_type_size + 1/*fingerprint*/);
     }
     private static @UnsignedInt int extraSerializeSpace() {
-        return 4/*数组size integer存储*/ +
+        return 4/*数组size integer存储*/ + 4/*fingerprints数组size*/ +
                 /*泛型*/("java.lang.Integer".length() * 2/*utf-8 2byte存储*/  + 2/*short存储长度*/) * /*个数*/2;
     }
 
@@ -35,6 +40,20 @@ public class ExtendibleHTableBucketPage<KeyType, ValueType> implements Serializa
      * The maximum number of key-value pairs the bucket can handle
      */
     private @UnsignedInt int maxSize;
+    /**
+     * 1表示entry按照key有序（由init指定），此时lookup使用二分查找；0表示按照插入的顺序。
+     * 使用int而不是boolean，因为序列化只支持int和short类型的字段
+     */
+    private int sorted;
+    /**
+     * fingerprints是否由hash计算：{@link #FINGERPRINT_UNDECIDED} 表示还没有插入过entry，由init之后的第一次Insert决定。
+     * 之后所有的操作都必须与之一致（都提供hash或者都不提供），否则提供了hash的查找会跳过没有hash时插入的（fingerprint为0的）
+     * entry而静默地找不到它们，所以不一致时抛出异常
+     */
+    private int fingerprintMode;
+    private static final int FINGERPRINT_UNDECIDED = 0;
+    private static final int FINGERPRINT_HASHED = 1;
+    private static final int FINGERPRINT_NONE = 2;
     /**
         MappingType array_[HTableBucketArraySize(sizeof(MappingType))];
         #define MappingType std::pair<KeyType, ValueType>
@@ -43,6 +62,12 @@ public class ExtendibleHTableBucketPage<KeyType, ValueType> implements Serializa
     private int sizeOfPair; //TODO 不应该有该变量，其会占据空间，从而导致ArraySize的大小计算错误
 
     private final Pair<KeyType, ValueType>[] array /* = new Pair[sizeOfPair]*/; //TODO 注意类的加载顺序
+    /**
+     * fingerprints[i] 是 array[i] 的key的hash的8位（见 {@link BitUtils#fingerprint}），hash由调用者与comparator一起提供，
+     * comparator认为相等的key必须有相同的hash。无序的bucket查找时先在这个连续的byte数组中比较fingerprint，
+     * 只对fingerprint相同的entry调用comparator；没有提供hash时为0，查找只使用comparator
+     */
+    private final byte[] fingerprints;
 
 
     public static void main(String[] args) {
@@ -58,6 +83,7 @@ public class ExtendibleHTableBucketPage<KeyType, ValueType> implements Serializa
     public ExtendibleHTableBucketPage(int sizeOfKeyType, int sizeOfValueType){
         this.sizeOfPair = sizeOfKeyType + sizeOfValueType;
         array = new Pair[HTableBucketArraySize( sizeOfPair )];
+        fingerprints = new byte[array.length];
     } // = delete();
 
     /**
@@ -75,18 +101,97 @@ public class ExtendibleHTableBucketPage<KeyType, ValueType> implements Serializa
         }
         this.maxSize = max_size;
         this.size = 0;
+        this.sorted = 0;
+        this.fingerprintMode = FINGERPRINT_UNDECIDED;
         assert maxSize <= HTableBucketArraySize( this.sizeOfPair ); // 保证其大小在一个page内
     }
     public void init(/*int max_size = HTableBucketArraySize(sizeof(MappingType))*/int sizeOfKeyType, int sizeOfValueType) {
         this.init(HTableBucketArraySize( this.sizeOfPair ), sizeOfKeyType, sizeOfValueType);
     }
     public void init(@UnsignedInt int max_size, int sizeOfKeyType, int sizeOfValueType) {
+        this.init(max_size, sizeOfKeyType, sizeOfValueType, false);
+    }
+
+    /**
+     * @param sorted 是否按照key保持有序：查找为二分查找（O(log n)次比较），代价是插入和删除时需要移动之后的entry。
+     *               同一个bucket的所有操作必须使用相同的comparator
+     */
+    public void init(@UnsignedInt int max_size, int sizeOfKeyType, int sizeOfValueType, boolean sorted) {
         this.sizeOfPair = sizeOfKeyType + sizeOfValueType;
         this.maxSize = max_size;
         this.size = 0;
+        this.sorted = sorted ? 1 : 0;
+        this.fingerprintMode = FINGERPRINT_UNDECIDED;
         assert maxSize <= HTableBucketArraySize( this.sizeOfPair ); // 保证其大小在一个page内
     }
 
+    /**
+     * @return whether the entries are ordered by key
+     */
+    public boolean IsSorted() {
+        return sorted != 0;
+    }
+
+    private static <KeyType> byte Fingerprint(KeyType key, ToIntFunction<KeyType> hash) {
+        return Objects.isNull(hash) ? 0 : BitUtils.fingerprint(hash.applyAsInt(key));
+    }
+
+    private static int FingerprintModeOf(ToIntFunction<?> hash) {
+        return Objects.isNull(hash) ? FINGERPRINT_NONE : FINGERPRINT_HASHED;
+    }
+
+    /**
+     * @throws RuntimeException if the bucket has entries inserted with(out) a hash function, but hash is the opposite
+     */
+    private void CheckFingerprintMode(ToIntFunction<KeyType> hash) {
+        if (fingerprintMode != FINGERPRINT_UNDECIDED && fingerprintMode != FingerprintModeOf(hash)) {
+            throw new RuntimeException(fingerprintMode == FINGERPRINT_HASHED
+                    ? "bucket中的entry是使用hash插入的，查找和删除也必须提供同一个hash函数"
+                    : "bucket中的entry是没有hash插入的，查找和删除也不能提供hash函数");
+        }
+    }
+
+    /**
+     * 与 {@link Arrays#binarySearch} 的返回值相同
+     * @param hash the hash function which agrees with cmp, or null to compare every entry (e.g. for byte[] keys,
+     *             whose hashCode is not based on the content)
+     * @return the index of the key if found, otherwise (-(insertion point) - 1). 无序时insertion point为size
+     */
+    private int IndexOf(KeyType key, Comparator<KeyType> cmp, ToIntFunction<KeyType> hash) {
+        CheckFingerprintMode(hash);
+        if (IsSorted()) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int result = cmp.compare(array[mid].first, key);
+                if (result < 0) {
+                    low = mid + 1;
+                } else if (result > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+        if (Objects.isNull(hash)) {
+            for (int i = 0; i < size; i++) {
+                if (cmp.compare(array[i].first, key) == 0) {
+                    return i;
+                }
+            }
+            return -(size + 1);
+        }
+        final byte fingerprint = Fingerprint(key, hash);
+        for (int i = 0; i < size; i++) {
+            if (fingerprints[i] == fingerprint && cmp.compare(array[i].first, key) == 0) {
+                return i;
+            }
+        }
+        return -(size + 1);
+    }
+
     /**
      * Lookup a key
      *
@@ -96,13 +201,19 @@ public class ExtendibleHTableBucketPage<KeyType, ValueType> implements Serializa
      * @return null 表示没有找到 <del>true if the key and value are present, false if not found.</del> 
      */
     public Optional<ValueType> lookup(/*const*/ KeyType key, /*ValueType value,*/ /*const KeyComparator*/ Comparator<KeyType> cmp) /*const*/ {
-        for (int i = 0; i < size; i++) {
-            Pair<KeyType, ValueType> pair = array[i];
-            KeyType currentKey = pair.first;
-            int result = cmp.compare(currentKey, key);
-            if (result == 0) {
-                return Optional.of(pair.second); //返回找到的value
-            }
+        return lookup(key, cmp, null);
+    }
+
+    /**
+     * Same as {@link #lookup(Object, Comparator)}, 无序的bucket先比较key的fingerprint。
+     * 同一个bucket的所有操作必须使用相同的hash函数
+     * @param hash the hash function of the keys, which must agree with cmp
+     * @throws RuntimeException if the entries of the bucket were inserted without a hash function
+     */
+    public Optional<ValueType> lookup(KeyType key, Comparator<KeyType> cmp, ToIntFunction<KeyType> hash) {
+        int idx = IndexOf(key, cmp, hash);
+        if (idx >= 0) {
+            return Optional.of(array[idx].second); //返回找到的value
         }
         return Optional.empty(); //表示没有找到
     }
@@ -116,13 +227,26 @@ public class ExtendibleHTableBucketPage<KeyType, ValueType> implements Serializa
      * @return true if inserted, false if bucket is full or the same key is already present
      */
     public boolean Insert(/*const*/ KeyType key, /*const*/ ValueType value, /*const*/ Comparator<KeyType> cmp) {
+        return Insert(key, value, cmp, null);
+    }
+
+    /**
+     * Same as {@link #Insert(Object, Object, Comparator)}, 同时记录key的fingerprint
+     * @param hash the hash function of the keys, which must agree with cmp
+     */
+    public boolean Insert(KeyType key, ValueType value, Comparator<KeyType> cmp, ToIntFunction<KeyType> hash) {
         if (size >= maxSize) //full
             return false;
-        Optional<ValueType> optionalValue = lookup(key, cmp);
-        if (optionalValue.isPresent()) { //表示已经存在
+        int idx = IndexOf(key, cmp, hash); // 只查找一次：找不到时同时得到插入的位置
+        if (idx >= 0) { //表示已经存在
             return false;
         }
-        array[size] = new Pair<KeyType, ValueType>(key, value);
+        int insertionPoint = -(idx + 1);
+        System.arraycopy(array, insertionPoint, array, insertionPoint + 1, size - insertionPoint);
+        System.arraycopy(fingerprints, insertionPoint, fingerprints, insertionPoint + 1, size - insertionPoint);
+        array[insertionPoint] = new Pair<KeyType, ValueType>(key, value);
+        fingerprints[insertionPoint] = Fingerprint(key, hash);
+        fingerprintMode = FingerprintModeOf(hash);
         ++ size;
         return true;
     }
@@ -133,27 +257,25 @@ public class ExtendibleHTableBucketPage<KeyType, ValueType> implements Serializa
      * @return true if removed, false if not found
      */
     public boolean Remove(/*const*/ KeyType key, /*const*/ Comparator<KeyType> cmp) {
-        int bucketIdx = -1;
-        for (int i = 0; i < size; i++) {
-            Pair<KeyType, ValueType> pair = array[i];
-            KeyType currentKey = pair.first;
-            int result = cmp.compare(currentKey, key);
-            if (result == 0) {
-                bucketIdx = i;
-                break;
-            }
-        }
-        if (bucketIdx != -1) {
+        return Remove(key, cmp, null);
+    }
+
+    /**
+     * Same as {@link #Remove(Object, Comparator)}
+     * @param hash the hash function of the keys, which must agree with cmp
+     */
+    public boolean Remove(KeyType key, Comparator<KeyType> cmp, ToIntFunction<KeyType> hash) {
+        int bucketIdx = IndexOf(key, cmp, hash);
+        if (bucketIdx >= 0) {
             RemoveAt(bucketIdx);
             return true;
         }
         return false;
     }
 
-    public void RemoveAt(@UnsignedInt int bucket_idx) { //TODO 可以优化
-        for (int idx = bucket_idx; idx < size - 1 ; idx++) {
-            array[idx] = array[idx + 1];
-        }
+    public void RemoveAt(@UnsignedInt int bucket_idx) {
+        System.arraycopy(array, bucket_idx + 1, array, bucket_idx, size - bucket_idx - 1); // 保持entry的顺序
+        System.arraycopy(fingerprints, bucket_idx + 1, fingerprints, bucket_idx, size - bucket_idx - 1);
         size --;
     }
 
@@ -0,0 +1,203 @@
+package storage.page;
+
+import annotation.UnsignedInt;
+import impletation.Pair;
+import util.BitUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Optional;
+import java.util.function.Function;
+
+import static config.DBConfig.BUSTUB_PAGE_SIZE;
+
+/**
+ * Zero-copy view of a bucket page in a compact binary format:
+ *  ------------------------------------------------------------------------------------
+ * | Size (4) | MaxSize (4) | Fingerprints (1 * N) | (Key, Value) * N | Free
+ *  ------------------------------------------------------------------------------------
+ * 每个entry占用 keyCodec.width() + valueCodec.width() 字节，紧密排列，没有类名等序列化的元数据；
+ * N = (BUSTUB_PAGE_SIZE - 8) / (entrySize + 1) 是一个bucket最多可以容纳的entry个数（例如int -> int为454个）。
+ * <p>
+ * 与SwissTable相同，每个entry在页面前部的连续区域中有一个1 byte的fingerprint（key的hash的8位）。
+ * 查找时先用 {@link BitUtils#matchBytes} 一次比较8个fingerprint，只有fingerprint相同的entry才比较key的编码
+ * （{@link PageCodec#equalsAt}），只有命中的value才会被解码。
+ * </p>
+ *
+ * @see ExtendibleHTableBucketPage
+ */
+public class ExtendibleHTableBucketPageView<KeyType, ValueType> extends PageView {
+    private static final @UnsignedInt int HTABLE_BUCKET_PAGE_METADATA_SIZE = Integer.BYTES * 2;
+    private static final int OFFSET_SIZE = 0;
+    private static final int OFFSET_MAX_SIZE = OFFSET_SIZE + Integer.BYTES;
+    private static final int OFFSET_FINGERPRINTS = HTABLE_BUCKET_PAGE_METADATA_SIZE;
+
+    private final PageCodec<KeyType> keyCodec;
+    private final PageCodec<ValueType> valueCodec;
+    private final int entrySize;
+    /** entry区域的起始位置，fingerprint区域按照最大的容量N预留，所以与init时的max_size无关 */
+    private final int entriesOffset;
+
+    public ExtendibleHTableBucketPageView(ByteBuffer buffer, PageCodec<KeyType> keyCodec, PageCodec<ValueType> valueCodec) {
+        super(buffer);
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.entrySize = keyCodec.width() + valueCodec.width();
+        assert HTableBucketArraySize(entrySize) > 0;
+        this.entriesOffset = OFFSET_FINGERPRINTS + HTableBucketArraySize(entrySize);
+    }
+
+    /**
+     * @return the constructor of the view for {@link BasicPageGuard#AsView}, e.g.
+     * {@code guard.AsViewMut(ExtendibleHTableBucketPageView.of(PageCodec.INT, PageCodec.INT))}
+     */
+    public static <K, V> Function<ByteBuffer, ExtendibleHTableBucketPageView<K, V>> of(PageCodec<K> keyCodec, PageCodec<V> valueCodec) {
+        return buffer -> new ExtendibleHTableBucketPageView<>(buffer, keyCodec, valueCodec);
+    }
+
+    /**
+     * @return the max number of entries of the given size (and their fingerprints) which fit into a bucket page
+     */
+    public static @UnsignedInt int HTableBucketArraySize(@UnsignedInt int entrySize) {
+        return (BUSTUB_PAGE_SIZE - HTABLE_BUCKET_PAGE_METADATA_SIZE) / (entrySize + 1);
+    }
+
+    /**
+     * After creating a new bucket page from buffer pool, must call initialize
+     * method to set default values
+     */
+    public void init() {
+        init(HTableBucketArraySize(entrySize));
+    }
+
+    public void init(@UnsignedInt int max_size) {
+        assert max_size > 0 && max_size <= HTableBucketArraySize(entrySize); // 保证其大小在一个page内
+        buffer.putInt(OFFSET_SIZE, 0);
+        buffer.putInt(OFFSET_MAX_SIZE, max_size);
+    }
+
+    private int entryOffset(int bucket_idx) {
+        return entriesOffset + bucket_idx * entrySize;
+    }
+
+    private byte Fingerprint(KeyType key) {
+        return BitUtils.fingerprint(keyCodec.hash(key));
+    }
+
+    private void setSize(int size) {
+        buffer.putInt(OFFSET_SIZE, size);
+    }
+
+    /**
+     * @return the index of the key in the bucket, or -1 if not found
+     */
+    public int IndexOf(KeyType key) {
+        final int size = Size();
+        final byte fingerprint = Fingerprint(key);
+        final boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        int i = 0;
+        for (; i + Long.BYTES <= size; i += Long.BYTES) {
+            long matches = BitUtils.matchBytes(buffer.getLong(OFFSET_FINGERPRINTS + i), fingerprint);
+            while (matches != 0) {
+                int shift = Long.numberOfTrailingZeros(matches) >>> 3; // 从最低的byte开始
+                int idx = i + (bigEndian ? Long.BYTES - 1 - shift : shift);
+                if (keyCodec.equalsAt(buffer, entryOffset(idx), key)) {
+                    return idx;
+                }
+                matches &= matches - 1;
+            }
+        }
+        for (; i < size; i++) {
+            if (buffer.get(OFFSET_FINGERPRINTS + i) == fingerprint && keyCodec.equalsAt(buffer, entryOffset(i), key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Lookup a key
+     * @return the value of the key, or empty if not found
+     */
+    public Optional<ValueType> lookup(KeyType key) {
+        int idx = IndexOf(key);
+        return idx == -1 ? Optional.empty() : Optional.of(ValueAt(idx));
+    }
+
+    /**
+     * Attempts to insert a key and value in the bucket.
+     * @return true if inserted, false if bucket is full or the same key is already present
+     */
+    public boolean Insert(KeyType key, ValueType value) {
+        final int size = Size();
+        if (size >= MaxSize() || IndexOf(key) != -1) {
+            return false;
+        }
+        int offset = entryOffset(size);
+        buffer.put(OFFSET_FINGERPRINTS + size, Fingerprint(key));
+        keyCodec.encode(buffer, offset, key);
+        valueCodec.encode(buffer, offset + keyCodec.width(), value);
+        setSize(size + 1);
+        return true;
+    }
+
+    /**
+     * Removes a key and value.
+     * @return true if removed, false if not found
+     */
+    public boolean Remove(KeyType key) {
+        int idx = IndexOf(key);
+        if (idx == -1) {
+            return false;
+        }
+        RemoveAt(idx);
+        return true;
+    }
+
+    /**
+     * 将最后一个entry（及其fingerprint）移动到被删除的位置，所以只需要复制一个entry，但是entry的顺序会改变
+     */
+    public void RemoveAt(@UnsignedInt int bucket_idx) {
+        final int last = Size() - 1;
+        assert bucket_idx <= last;
+        if (bucket_idx != last) {
+            buffer.put(OFFSET_FINGERPRINTS + bucket_idx, buffer.get(OFFSET_FINGERPRINTS + last));
+            buffer.put(entryOffset(bucket_idx), buffer, entryOffset(last), entrySize);
+        }
+        setSize(last);
+    }
+
+    public KeyType KeyAt(@UnsignedInt int bucket_idx) {
+        return keyCodec.decode(buffer, entryOffset(bucket_idx));
+    }
+
+    public ValueType ValueAt(@UnsignedInt int bucket_idx) {
+        return valueCodec.decode(buffer, entryOffset(bucket_idx) + keyCodec.width());
+    }
+
+    public Pair<KeyType, ValueType> EntryAt(@UnsignedInt int bucket_idx) {
+        return new Pair<>(KeyAt(bucket_idx), ValueAt(bucket_idx));
+    }
+
+    /**
+     * @return number of entries in the bucket
+     */
+    public @UnsignedInt int Size() {
+        return buffer.getInt(OFFSET_SIZE);
+    }
+
+    /**
+     * @return the maximum number of entries the bucket can hold, set by init
+     */
+    public @UnsignedInt int MaxSize() {
+        return buffer.getInt(OFFSET_MAX_SIZE);
+    }
+
+    public boolean IsFull() {
+        return Size() >= MaxSize();
+    }
+
+    public boolean IsEmpty() {
+        return Size() == 0;
+    }
+}
@@ -117,11 +117,13 @@ public class ExtendibleHTableDirectoryPage implements SerializablePageData {
     /**
      * Gets the split image of an index
      *
-     * @param bucket_idx the directory index for which to find the split image
+     * @param bucket_idx the directory index for which to find the split image, 其local depth必须大于0（否则没有split image）
      * @return the directory index of the split image
      **/
     public @UnsignedInt int GetSplitImageIndex(@UnsignedInt int bucket_idx) /*const*/ {
-        return 0; //TODO
+        int localDepth = localDepths[bucket_idx];
+        assert localDepth > 0;
+        return bucket_idx ^ (1 << (localDepth - 1)); // 只在第 localDepth 位不同
     }
 
     /**
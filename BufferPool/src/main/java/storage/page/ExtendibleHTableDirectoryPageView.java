@@ -0,0 +1,192 @@
+package storage.page;
+
+import annotation.UnsignedInt;
+import config.DBConfig;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Zero-copy view of a directory page, 布局与 {@link ExtendibleHTableDirectoryPage} 注释中的格式相同:
+ *  --------------------------------------------------------------------------------------
+ * | MaxDepth (4) | GlobalDepth (4) | LocalDepths (512) | BucketPageIds(2048) | Free(1528)
+ *  --------------------------------------------------------------------------------------
+ */
+public class ExtendibleHTableDirectoryPageView extends PageView {
+    private static final int HTABLE_DIRECTORY_MAX_DEPTH = 9;
+    private static final int HTABLE_DIRECTORY_ARRAY_SIZE = 1 << HTABLE_DIRECTORY_MAX_DEPTH;
+
+    private static final int OFFSET_MAX_DEPTH = 0;
+    private static final int OFFSET_GLOBAL_DEPTH = OFFSET_MAX_DEPTH + Integer.BYTES;
+    private static final int OFFSET_LOCAL_DEPTHS = OFFSET_GLOBAL_DEPTH + Integer.BYTES;
+    private static final int OFFSET_BUCKET_PAGE_IDS = OFFSET_LOCAL_DEPTHS + HTABLE_DIRECTORY_ARRAY_SIZE;
+
+    static {
+        assert OFFSET_BUCKET_PAGE_IDS + Integer.BYTES * HTABLE_DIRECTORY_ARRAY_SIZE <= DBConfig.BUSTUB_PAGE_SIZE;
+    }
+
+    public ExtendibleHTableDirectoryPageView(ByteBuffer buffer) {
+        super(buffer);
+    }
+
+    /**
+     * After creating a new directory page from buffer pool, must call initialize
+     * method to set default values
+     */
+    public void init() {
+        init(HTABLE_DIRECTORY_MAX_DEPTH);
+    }
+
+    public void init(@UnsignedInt int max_depth) {
+        assert max_depth >= 0 && max_depth <= HTABLE_DIRECTORY_MAX_DEPTH;
+        buffer.putInt(OFFSET_MAX_DEPTH, max_depth);
+        buffer.putInt(OFFSET_GLOBAL_DEPTH, 0);
+        for (int i = 0; i < MaxSize(); i++) {
+            SetLocalDepth(i, 0);
+            SetBucketPageId(i, Page.INVALID_PAGE_ID);
+        }
+    }
+
+    /**
+     * @return bucket index current key is hashed to, 取hash的低 globalDepth bit
+     */
+    public @UnsignedInt int HashToBucketIndex(@UnsignedInt int hash) {
+        return hash & GetGlobalDepthMask();
+    }
+
+    public int GetBucketPageId(@UnsignedInt int bucket_idx) {
+        return buffer.getInt(OFFSET_BUCKET_PAGE_IDS + bucket_idx * Integer.BYTES);
+    }
+
+    public void SetBucketPageId(@UnsignedInt int bucket_idx, int bucket_page_id) {
+        buffer.putInt(OFFSET_BUCKET_PAGE_IDS + bucket_idx * Integer.BYTES, bucket_page_id);
+    }
+
+    /**
+     * Gets the split image of an index: 与bucket_idx只在第 localDepth 位（从1开始）不同的那个index，
+     * 即bucket分裂时（分裂之后的localDepth）新的bucket，或者合并时（合并之前的localDepth）另一半的bucket
+     *
+     * @param bucket_idx the directory index for which to find the split image
+     * @return the directory index of the split image
+     */
+    public @UnsignedInt int GetSplitImageIndex(@UnsignedInt int bucket_idx) {
+        int localDepth = GetLocalDepth(bucket_idx);
+        assert localDepth > 0;
+        return bucket_idx ^ (1 << (localDepth - 1));
+    }
+
+    public @UnsignedInt int GetGlobalDepthMask() {
+        return (1 << GetGlobalDepth()) - 1;
+    }
+
+    public @UnsignedInt int GetLocalDepthMask(@UnsignedInt int bucket_idx) {
+        return (1 << GetLocalDepth(bucket_idx)) - 1;
+    }
+
+    public @UnsignedInt int GetGlobalDepth() {
+        return buffer.getInt(OFFSET_GLOBAL_DEPTH);
+    }
+
+    public @UnsignedInt int GetMaxDepth() {
+        return buffer.getInt(OFFSET_MAX_DEPTH);
+    }
+
+    /**
+     * Increment the global depth of the directory, 新的一半表项复制旧的一半
+     * @see ExtendibleHTableDirectoryPage#IncrGlobalDepth()
+     */
+    public void IncrGlobalDepth() {
+        assert GetGlobalDepth() < GetMaxDepth();
+        final int oldSize = Size();
+        buffer.putInt(OFFSET_GLOBAL_DEPTH, GetGlobalDepth() + 1);
+        for (int i = 0; i < oldSize; i++) {
+            SetBucketPageId(i + oldSize, GetBucketPageId(i));
+            SetLocalDepth(i + oldSize, GetLocalDepth(i));
+        }
+    }
+
+    /**
+     * Decrement the global depth of the directory, 丢弃后一半的表项
+     */
+    public void DecrGlobalDepth() {
+        assert GetGlobalDepth() > 0;
+        buffer.putInt(OFFSET_GLOBAL_DEPTH, GetGlobalDepth() - 1);
+    }
+
+    /**
+     * Only shrink the directory if the local depth of every bucket is strictly less than the global depth of the directory.
+     * @return true if the directory can be shrunk
+     */
+    public boolean CanShrink() {
+        final int globalDepth = GetGlobalDepth();
+        if (globalDepth == 0) {
+            return false;
+        }
+        for (int i = 0; i < Size(); i++) {
+            if (GetLocalDepth(i) >= globalDepth) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public @UnsignedInt int Size() {
+        return 1 << GetGlobalDepth();
+    }
+
+    public @UnsignedInt int MaxSize() {
+        return 1 << GetMaxDepth();
+    }
+
+    public @UnsignedInt int GetLocalDepth(@UnsignedInt int bucket_idx) {
+        return buffer.get(OFFSET_LOCAL_DEPTHS + bucket_idx);
+    }
+
+    public void SetLocalDepth(@UnsignedInt int bucket_idx, @UnsignedInt int local_depth) {
+        buffer.put(OFFSET_LOCAL_DEPTHS + bucket_idx, (byte) local_depth);
+    }
+
+    public void IncrLocalDepth(@UnsignedInt int bucket_idx) {
+        SetLocalDepth(bucket_idx, GetLocalDepth(bucket_idx) + 1);
+    }
+
+    public void DecrLocalDepth(@UnsignedInt int bucket_idx) {
+        int localDepth = GetLocalDepth(bucket_idx);
+        if (localDepth > 0) {
+            SetLocalDepth(bucket_idx, localDepth - 1);
+        }
+    }
+
+    /**
+     * Verify the following invariants:
+     * (1) All LD <= GD.
+     * (2) Each bucket has precisely 2^(GD - LD) pointers pointing to it.
+     * (3) The LD is the same at each index with the same bucket_page_id
+     * @throws RuntimeException if any of them is violated
+     */
+    public void VerifyIntegrity() {
+        final int globalDepth = GetGlobalDepth();
+        final Map<Integer, Integer> localDepthOf = new HashMap<>();
+        final Map<Integer, Integer> numOfPointers = new HashMap<>();
+        for (int idx = 0; idx < Size(); idx++) {
+            int bucketPageId = GetBucketPageId(idx);
+            int localDepth = GetLocalDepth(idx);
+            if (localDepth > globalDepth) {
+                throw new RuntimeException("VerifyIntegrity fail, because localDepths[" + idx + "] > globalDepth");
+            }
+            Integer other = localDepthOf.putIfAbsent(bucketPageId, localDepth);
+            if (other != null && other != localDepth) {
+                throw new RuntimeException("VerifyIntegrity fail, because OtherLD=" + other + ", _not_eq_ThisLd=" + localDepth);
+            }
+            numOfPointers.merge(bucketPageId, 1, Integer::sum);
+        }
+        for (var entry : numOfPointers.entrySet()) {
+            int localDepth = localDepthOf.get(entry.getKey());
+            if (entry.getValue() != 1 << (globalDepth - localDepth)) {
+                throw new RuntimeException("VerifyIntegrity fail, because bucketPageId = " + entry.getKey()
+                        + " has " + entry.getValue() + " pointers, but its local depth is " + localDepth);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package storage.page;
+
+import annotation.UnsignedInt;
+import config.DBConfig;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Zero-copy view of a header page, 布局与 {@link ExtendibleHTableHeaderPage} 注释中的格式相同:
+ *  ---------------------------------------------------
+ * | DirectoryPageIds(2048) | MaxDepth (4) | Free(2044)
+ *  ---------------------------------------------------
+ */
+public class ExtendibleHTableHeaderPageView extends PageView {
+    private static final int HTABLE_HEADER_MAX_DEPTH = 9;
+    private static final int HTABLE_HEADER_ARRAY_SIZE = 1 << HTABLE_HEADER_MAX_DEPTH;
+
+    private static final int OFFSET_DIRECTORY_PAGE_IDS = 0;
+    private static final int OFFSET_MAX_DEPTH = OFFSET_DIRECTORY_PAGE_IDS + Integer.BYTES * HTABLE_HEADER_ARRAY_SIZE;
+
+    static {
+        assert OFFSET_MAX_DEPTH + Integer.BYTES <= DBConfig.BUSTUB_PAGE_SIZE;
+    }
+
+    public ExtendibleHTableHeaderPageView(ByteBuffer buffer) {
+        super(buffer);
+    }
+
+    /**
+     * After creating a new header page from buffer pool, must call initialize
+     * method to set default values
+     */
+    public void init() {
+        init(HTABLE_HEADER_MAX_DEPTH);
+    }
+
+    public void init(int maxDepth) {
+        assert maxDepth >= 0 && maxDepth <= HTABLE_HEADER_MAX_DEPTH;
+        buffer.putInt(OFFSET_MAX_DEPTH, maxDepth);
+        for (int i = 0; i < maxSize(); i++) {
+            setDirectoryPageId(i, Page.INVALID_PAGE_ID);
+        }
+    }
+
+    /**
+     * Get the directory index that the key is hashed to, 取hash的高 maxDepth bit
+     * @see ExtendibleHTableHeaderPage#hashToDirectoryIndex
+     */
+    public @UnsignedInt int hashToDirectoryIndex(@UnsignedInt long hash) {
+        hash = hash & 0x00000000ffffffffL;
+        return (int) (hash >>> (Integer.SIZE - getMaxDepth()));
+    }
+
+    public int getDirectoryPageId(@UnsignedInt int directory_idx) {
+        return buffer.getInt(OFFSET_DIRECTORY_PAGE_IDS + directory_idx * Integer.BYTES);
+    }
+
+    public void setDirectoryPageId(@UnsignedInt int directory_idx, int directory_page_id) {
+        buffer.putInt(OFFSET_DIRECTORY_PAGE_IDS + directory_idx * Integer.BYTES, directory_page_id);
+    }
+
+    public @UnsignedInt int getMaxDepth() {
+        return buffer.getInt(OFFSET_MAX_DEPTH);
+    }
+
+    /**
+     * @return the maximum number of directory page ids the header page could handle
+     */
+    public @UnsignedInt int maxSize() {
+        return 1 << getMaxDepth();
+    }
+}
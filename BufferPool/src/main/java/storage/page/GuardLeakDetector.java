@@ -0,0 +1,66 @@
+package storage.page;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records where every open page guard of a buffer pool was acquired.
+ * <p>
+ * 忘记drop（close）的guard会永远持有page的pin，缓冲池可用的frame越来越少，直到newPage返回null。
+ * 开启检测之后，每个guard在创建时记录一次调用栈，drop时移除；{@link #reportLeaks()}（BufferPoolManager在shutDown时调用）
+ * 将仍然没有被drop的guard及其获取的位置输出到日志中。记录调用栈的开销较大，所以默认关闭。
+ * 只能检测通过guard获取的pin，直接调用fetchPage而没有unpin的情况不会被记录。
+ * </p>
+ */
+public class GuardLeakDetector {
+    private static final Logger logger = Logger.getLogger(GuardLeakDetector.class.getName());
+
+    /** Map&lt;guard, 创建guard时的调用栈&gt;，guard没有重写equals，即按照identity比较 */
+    private final Map<BasicPageGuard, Throwable> openGuards = new ConcurrentHashMap<>();
+
+    void track(BasicPageGuard guard, int pageId) {
+        openGuards.put(guard, new Throwable("guard of page " + pageId + " acquired by " + Thread.currentThread().getName()));
+    }
+
+    /**
+     * guard被移动（例如升级为ReadPageGuard）时，将记录转移给新的guard
+     */
+    void moved(BasicPageGuard from, BasicPageGuard to) {
+        Throwable acquisition = openGuards.remove(from);
+        if (acquisition != null) {
+            openGuards.put(to, acquisition);
+        }
+    }
+
+    void release(BasicPageGuard guard) {
+        openGuards.remove(guard);
+    }
+
+    /** @return the number of guards which have not been dropped */
+    public int getNumOpenGuards() {
+        return openGuards.size();
+    }
+
+    /**
+     * @return where the guards which have not been dropped were acquired
+     */
+    public List<Throwable> getOpenGuardAcquisitions() {
+        return new ArrayList<>(openGuards.values());
+    }
+
+    /**
+     * 将仍然没有被drop的guard（以及它们被获取的位置）输出到日志中
+     * @return the number of leaked guards
+     */
+    public int reportLeaks() {
+        List<Throwable> acquisitions = getOpenGuardAcquisitions();
+        for (Throwable acquisition : acquisitions) {
+            logger.log(Level.WARNING, "page guard leaked, it was never dropped", acquisition);
+        }
+        return acquisitions.size();
+    }
+}
@@ -3,9 +3,9 @@ package storage.page;
 import config.DBConfig;
 import util.ArrayUtils;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Page is the basic unit of storage within the database system. Page provides a wrapper for actual data pages being
@@ -17,28 +17,74 @@ public class Page {
     /** The actual data that is stored within a page. */
     // Usually this should be stored as `char data_[BUSTUB_PAGE_SIZE]{};`. But to enable ASAN to detect page overflow,
     // we store it as a ptr.
-    private final byte[] data = new byte[DBConfig.BUSTUB_PAGE_SIZE];
+    // 在arena模式下，data为null，页面的内容只存在于off-heap的buffer中
+    private final byte[] data;
+    /** 包装了data的buffer（或者arena中的一个slice），用于I/O时直接读写frame，避免每次I/O都重新wrap */
+    private final ByteBuffer buffer;
+    /** buffer的只读视图，供乐观读使用 */
+    private final ByteBuffer readOnlyBuffer;
     /** The ID of this page. */
     private int pageId = INVALID_PAGE_ID;
-    /** The pin count of this page. */
-    private int pinCount = 0;
+    /** The pin count of this page. 只在持有page table对应stripe的锁时修改 */
+    private volatile int pinCount = 0;
     /** True if the page is dirty, i.e. it is different from its corresponding page on disk. */
-    private boolean isDirty = false;
-    /** Page latch. */
-    private final ReadWriteLock rwlock;
+    private volatile boolean isDirty = false;
+    /**
+     * Page latch. 与bustub中的std::shared_mutex相同，latch不属于某一个线程（所以异步获取的guard可以在另一个线程中释放），
+     * 也不可重入：持有写锁的线程不能再获取读锁。
+     * 每次获取和释放写锁都会改变latch的版本，所以读者也可以不获取读锁，而是在读之后验证版本（{@link #tryOptimisticRead()}）
+     */
+    private final StampedLock rwlock = new StampedLock();
 
     protected static final int SIZE_PAGE_HEADER = 8;
     protected static final int OFFSET_PAGE_START = 0;
     protected static final int OFFSET_LSN = 4;
 
     public Page() { //TODO resetMemory
-        this.rwlock = new ReentrantReadWriteLock(); //这里使用的可重入的读写锁的实现
+        this.data = new byte[DBConfig.BUSTUB_PAGE_SIZE];
+        this.buffer = ByteBuffer.wrap(data);
+        this.readOnlyBuffer = buffer.asReadOnlyBuffer();
     }
 
+    /**
+     * Creates a page whose memory is the given frame, e.g. a slice of an off-heap arena.
+     * @param frame buffer of exactly BUSTUB_PAGE_SIZE bytes
+     * @see buffer.FrameArena
+     */
+    public Page(ByteBuffer frame) {
+        assert frame.capacity() == DBConfig.BUSTUB_PAGE_SIZE;
+        boolean wholeArray = frame.hasArray() && frame.arrayOffset() == 0 && frame.array().length == DBConfig.BUSTUB_PAGE_SIZE;
+        this.data = wholeArray ? frame.array() : null;
+        this.buffer = frame;
+        this.readOnlyBuffer = frame.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the heap array of this page
+     * @throws UnsupportedOperationException if the page is backed by off-heap memory, use {@link #getBuffer()} instead
+     */
     public byte[] getData() {
+        if (data == null) {
+            throw new UnsupportedOperationException("page is backed by off-heap memory, use getBuffer() instead");
+        }
         return data;
     }
 
+    /**
+     * @return true if the page is backed by a heap array
+     */
+    public boolean hasArray() {
+        return data != null;
+    }
+
+    /**
+     * @return the buffer which wraps the data of this page, it is used by the disk I/O to read into / write from
+     * the frame in place.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
     public int getPageId() {
         return pageId;
     }
@@ -55,18 +101,56 @@ public class Page {
     public void wUnLatch() {
         wlock().unlock();
     }
-    public void rLatch() {
-        rlock().lock();
+    /**
+     * @return a stamp of the read latch, which can be used to upgrade it by {@link #tryUpgradeLatch(long)}
+     */
+    public long rLatch() {
+        return rwlock.readLock();
     }
     public void rUnLatch() {
         rlock().unlock();
     }
 
+    /**
+     * 开始一次乐观读：读者不修改latch的状态，所以读热点页面时不会在多个核之间争抢同一个cache line。
+     * 读完之后必须用 {@link #validate(long)} 检查读的过程中是否有写者，若有则读到的数据可能是不一致的，需要重读
+     * @return a stamp, or 0 if the page is write latched now
+     */
+    public long tryOptimisticRead() {
+        return rwlock.tryOptimisticRead();
+    }
+
+    /**
+     * @param stamp the stamp returned by {@link #tryOptimisticRead()}
+     * @return true if the page has not been write latched since the stamp was issued
+     */
+    public boolean validate(long stamp) {
+        return rwlock.validate(stamp);
+    }
+
+    /**
+     * @return a read-only view of the buffer, only the absolute get methods may be used since it is shared by all
+     * the readers
+     */
+    public ByteBuffer getReadOnlyBuffer() {
+        return readOnlyBuffer;
+    }
+
+    /**
+     * 若当前持有读锁的只有调用者自己，则原子地将读锁升级为写锁，否则不等待，立即返回false（仍然持有读锁）。
+     * 升级之后使用 {@link #wUnLatch()} 释放
+     * @param readStamp the stamp returned by {@link #rLatch()}
+     * @return true if the read latch has been converted to the write latch
+     */
+    public boolean tryUpgradeLatch(long readStamp) {
+        return rwlock.tryConvertToWriteLock(readStamp) != 0;
+    }
+
     private Lock wlock() {
-        return rwlock.writeLock();
+        return rwlock.asWriteLock();
     }
     private Lock rlock() {
-        return rwlock.readLock();
+        return rwlock.asReadLock();
     }
 
     public void setDirty(boolean dirty) {
@@ -77,13 +161,13 @@ public class Page {
         this.isDirty = false;
         this.pageId = INVALID_PAGE_ID;
         this.pinCount = 0;
-        ArrayUtils.makeEmpty(data);
+        ArrayUtils.makeEmpty(buffer);
     }
     public void reset(int pageId) {
         this.isDirty = false;
         this.pageId = pageId;
         this.pinCount = 0;
-        ArrayUtils.makeEmpty(data);
+        ArrayUtils.makeEmpty(buffer);
     }
 
     /**
@@ -92,7 +176,7 @@ public class Page {
      */
     public void setData(byte[] buf) {
         assert buf.length == DBConfig.BUSTUB_PAGE_SIZE;
-        System.arraycopy(buf, 0, data, 0, DBConfig.BUSTUB_PAGE_SIZE);
+        buffer.put(0, buf, 0, DBConfig.BUSTUB_PAGE_SIZE);
     }
 
     public void decrPinCount() {
@@ -0,0 +1,152 @@
+package storage.page;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Encodes a key or a value of an index into a fixed-width slot of a page, e.g. the entries of
+ * {@link ExtendibleHTableBucketPageView}. 与Java序列化不同，不写入类名等元数据，槽位的宽度固定，
+ * 所以页面中的第 i 个entry可以直接通过offset定位。
+ * <p>
+ * 编码必须是规范的（canonical）：两个值相等当且仅当它们的编码相同，这样查找时可以直接比较页面中的字节，
+ * 而不需要先解码出对象
+ * </p>
+ * @param <T> the type of the keys or values
+ */
+public interface PageCodec<T> {
+    PageCodec<Integer> INT = new IntCodec();
+    PageCodec<Long> LONG = new LongCodec();
+
+    /**
+     * @param maxLength 最大的长度（字节），不能超过 {@link Short#MAX_VALUE}
+     * @return a codec of byte arrays, 每个值占用 2（长度）+ maxLength 字节
+     */
+    static PageCodec<byte[]> bytes(int maxLength) {
+        return new BytesCodec(maxLength);
+    }
+
+    /**
+     * @return the number of bytes each encoded value occupies
+     */
+    int width();
+
+    /**
+     * 将value写入buf的 [offset, offset + width()) 中
+     */
+    void encode(ByteBuffer buf, int offset, T value);
+
+    T decode(ByteBuffer buf, int offset);
+
+    /**
+     * @return true if the value encoded at offset equals to the given value, 不需要解码（分配对象）
+     */
+    boolean equalsAt(ByteBuffer buf, int offset, T value);
+
+    /**
+     * @return the hash of the value, 编码相同的值的hash必须相同（用于bucket中的fingerprint）
+     */
+    default int hash(T value) {
+        return value.hashCode();
+    }
+
+    final class IntCodec implements PageCodec<Integer> {
+        private IntCodec() {}
+
+        @Override
+        public int width() {
+            return Integer.BYTES;
+        }
+
+        @Override
+        public void encode(ByteBuffer buf, int offset, Integer value) {
+            buf.putInt(offset, value);
+        }
+
+        @Override
+        public Integer decode(ByteBuffer buf, int offset) {
+            return buf.getInt(offset);
+        }
+
+        @Override
+        public boolean equalsAt(ByteBuffer buf, int offset, Integer value) {
+            return buf.getInt(offset) == value;
+        }
+    }
+
+    final class LongCodec implements PageCodec<Long> {
+        private LongCodec() {}
+
+        @Override
+        public int width() {
+            return Long.BYTES;
+        }
+
+        @Override
+        public void encode(ByteBuffer buf, int offset, Long value) {
+            buf.putLong(offset, value);
+        }
+
+        @Override
+        public Long decode(ByteBuffer buf, int offset) {
+            return buf.getLong(offset);
+        }
+
+        @Override
+        public boolean equalsAt(ByteBuffer buf, int offset, Long value) {
+            return buf.getLong(offset) == value;
+        }
+    }
+
+    /**
+     * Length-prefixed bytes: | length (2) | bytes (maxLength) |，未使用的部分不会被写入
+     */
+    final class BytesCodec implements PageCodec<byte[]> {
+        private final int maxLength;
+
+        private BytesCodec(int maxLength) {
+            if (maxLength < 0 || maxLength > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("maxLength must be in [0, " + Short.MAX_VALUE + "]: " + maxLength);
+            }
+            this.maxLength = maxLength;
+        }
+
+        @Override
+        public int width() {
+            return Short.BYTES + maxLength;
+        }
+
+        @Override
+        public void encode(ByteBuffer buf, int offset, byte[] value) {
+            if (value.length > maxLength) {
+                throw new IllegalArgumentException("value of " + value.length + " bytes exceeds the max length " + maxLength);
+            }
+            buf.putShort(offset, (short) value.length);
+            buf.put(offset + Short.BYTES, value);
+        }
+
+        @Override
+        public byte[] decode(ByteBuffer buf, int offset) {
+            byte[] value = new byte[buf.getShort(offset)];
+            buf.get(offset + Short.BYTES, value);
+            return value;
+        }
+
+        @Override
+        public boolean equalsAt(ByteBuffer buf, int offset, byte[] value) {
+            if (buf.getShort(offset) != value.length) {
+                return false;
+            }
+            for (int i = 0; i < value.length; i++) {
+                if (buf.get(offset + Short.BYTES + i) != value[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hash(byte[] value) {
+            return Arrays.hashCode(value);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package storage.page;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A typed view of a page: 与 {@link BasicPageGuard#As} 不同，不反序列化出一个新的对象，
+ * 而是在每次访问时直接按照固定的offset读写frame的buffer（absolute get/put），没有复制、分配对象和反射。
+ * <p>
+ * view只在获取它的guard被drop之前有效；通过只读的guard（或者 {@link BasicPageGuard#AsView}）获取的view
+ * 使用只读的buffer，修改时会抛出 {@link java.nio.ReadOnlyBufferException}
+ * </p>
+ * @see BasicPageGuard#AsViewMut
+ */
+public abstract class PageView {
+    /** frame的buffer，position和limit不会被使用，所以可以被多个view共享 */
+    protected final ByteBuffer buffer;
+
+    protected PageView(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+}
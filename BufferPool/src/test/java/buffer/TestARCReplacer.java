@@ -0,0 +1,248 @@
+package buffer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntFunction;
+import java.util.logging.Logger;
+
+public class TestARCReplacer {
+    private static final Logger logger = Logger.getLogger(TestARCReplacer.class.getName());
+
+    @Test
+    public void SampleTest() {
+        ARCReplacer arc_replacer = new ARCReplacer(2);
+        // Scenario: pages 10 and 11 are new, so both go to T1.
+        arc_replacer.recordAccess(0, 10);
+        arc_replacer.recordAccess(1, 11);
+        arc_replacer.unpin(0);
+        arc_replacer.unpin(1);
+        Assertions.assertEquals(2, arc_replacer.getSize());
+
+        // Scenario: page 10 is accessed again and moves to T2, so T1 is evicted first.
+        arc_replacer.pin(0);
+        arc_replacer.recordAccess(0, 10);
+        arc_replacer.unpin(0);
+        Assertions.assertArrayEquals(new int[]{1, 0}, arc_replacer.evictionCandidates(2));
+        Assertions.assertEquals(1, arc_replacer.victimFrame()); // page 11 -> B1
+
+        arc_replacer.recordAccess(1, 12);
+        arc_replacer.unpin(1);
+        Assertions.assertEquals(1, arc_replacer.victimFrame()); // page 12 -> B1
+        Assertions.assertEquals(0, arc_replacer.getTargetT1Size());
+
+        // Scenario: page 11 comes back while it is in B1, so T1 was too small and its target size grows.
+        arc_replacer.recordAccess(1, 11);
+        arc_replacer.unpin(1);
+        Assertions.assertEquals(1, arc_replacer.getTargetT1Size());
+        // both frames are in T2 now, page 10 is the LRU one
+        Assertions.assertEquals(0, arc_replacer.victimFrame()); // page 10 -> B2
+
+        // Scenario: page 10 comes back while it is in B2, so the target size of T1 shrinks again.
+        arc_replacer.recordAccess(0, 10);
+        Assertions.assertEquals(0, arc_replacer.getTargetT1Size());
+
+        // Scenario: pinned and removed frames are never chosen.
+        arc_replacer.remove(1);
+        Assertions.assertEquals(0, arc_replacer.getSize());
+        Assertions.assertEquals(Replacer.NO_VICTIM, arc_replacer.victimFrame());
+        Assertions.assertFalse(arc_replacer.victim().isPresent());
+    }
+
+    @Test
+    public void AdaptationTest() {
+        ARCReplacer arc_replacer = new ARCReplacer(5);
+        // Scenario: pages 20-22 are accessed twice (T2) and evicted into B2.
+        for (int frameId = 0; frameId < 3; frameId++) {
+            arc_replacer.recordAccess(frameId, 20 + frameId);
+            arc_replacer.recordAccess(frameId, 20 + frameId);
+            arc_replacer.unpin(frameId);
+        }
+        for (int frameId = 0; frameId < 3; frameId++) {
+            Assertions.assertEquals(frameId, arc_replacer.victimFrame());
+        }
+        // Scenario: pages 30 and 31 are accessed once (T1) and evicted into B1.
+        arc_replacer.recordAccess(0, 30);
+        arc_replacer.recordAccess(1, 31);
+        arc_replacer.unpin(0);
+        arc_replacer.unpin(1);
+        Assertions.assertEquals(0, arc_replacer.victimFrame());
+        Assertions.assertEquals(1, arc_replacer.victimFrame());
+
+        // Scenario: a hit in B1 moves p by |B2| / |B1| measured before the hit leaves B1, i.e. 3 / 2 = 1, not 3 / 1.
+        arc_replacer.recordAccess(0, 30);
+        Assertions.assertEquals(1, arc_replacer.getTargetT1Size());
+        // Scenario: a hit in B2 moves p back by 1, since |B2| >= |B1|.
+        arc_replacer.recordAccess(1, 20);
+        Assertions.assertEquals(0, arc_replacer.getTargetT1Size());
+    }
+
+    @Test
+    public void UntrackedFrameTest() {
+        ARCReplacer arc_replacer = new ARCReplacer(3);
+        arc_replacer.recordAccess(0, 10);
+        arc_replacer.unpin(0);
+        // Scenario: a frame unpinned without any recorded access is the oldest page of T1.
+        arc_replacer.unpin(1);
+        Assertions.assertArrayEquals(new int[]{1, 0}, arc_replacer.evictionCandidates(2));
+        Assertions.assertEquals(1, arc_replacer.victimFrame());
+
+        // Scenario: the first access to such a frame is a new page (T1), not a second hit (T2).
+        arc_replacer.unpin(2);
+        arc_replacer.recordAccess(2);
+        arc_replacer.recordAccess(0, 10); // page 10 -> T2
+        Assertions.assertArrayEquals(new int[]{2, 0}, arc_replacer.evictionCandidates(2));
+        Assertions.assertEquals(2, arc_replacer.victimFrame());
+        Assertions.assertEquals(0, arc_replacer.victimFrame());
+        Assertions.assertEquals(Replacer.NO_VICTIM, arc_replacer.victimFrame());
+    }
+
+    @Test
+    public void ScanResistanceTest() {
+        final int poolSize = 4;
+        int[] trace = new int[4 + 20];
+        trace[0] = 0;
+        trace[1] = 1;
+        trace[2] = 0;
+        trace[3] = 1;
+        for (int i = 0; i < 20; i++) {
+            trace[4 + i] = 100 + i; // a scan which is much larger than the buffer pool
+        }
+        Simulation simulation = new Simulation(new ARCReplacer(poolSize), poolSize);
+        simulation.run(trace);
+        // Scenario: the pages which were accessed twice are still resident after the scan.
+        Assertions.assertTrue(simulation.isResident(0));
+        Assertions.assertTrue(simulation.isResident(1));
+
+        simulation = new Simulation(new LRUReplacer(poolSize), poolSize);
+        simulation.run(trace);
+        Assertions.assertFalse(simulation.isResident(0));
+        Assertions.assertFalse(simulation.isResident(1));
+    }
+
+    /**
+     * 在两个trace上比较各个replacer的命中率：
+     * 1. 点查询的热点集合中间穿插着大的顺序scan；
+     * 2. 访问的热点集合随时间缓慢漂移（没有scan）。
+     */
+    @Test
+    public void HitRatioTest() {
+        final int poolSize = 100;
+        Map<String, IntFunction<Replacer>> replacers = new HashMap<>();
+        replacers.put("LRU", LRUReplacer::new);
+        replacers.put("LRU-2", n -> new LRUKReplacer(n, 2));
+        replacers.put("CLOCK", ClockReplacer::new);
+        replacers.put("ARC", ARCReplacer::new);
+
+        int[] scanTrace = lookupsWithScans(200_000, 80, 500, 300);
+        int[] driftTrace = driftingHotSet(200_000, 120);
+        Map<String, Double> scanHitRatios = new HashMap<>();
+        for (Map.Entry<String, IntFunction<Replacer>> entry : replacers.entrySet()) {
+            Simulation scan = new Simulation(entry.getValue().apply(poolSize), poolSize);
+            scan.run(scanTrace);
+            Simulation drift = new Simulation(entry.getValue().apply(poolSize), poolSize);
+            drift.run(driftTrace);
+            scanHitRatios.put(entry.getKey(), scan.hitRatio());
+            logger.info(String.format("%-5s hit ratio: lookups with scans %.3f, drifting hot set %.3f",
+                    entry.getKey(), scan.hitRatio(), drift.hitRatio()));
+        }
+        // Scenario: the scan-resistant policies keep the hot set while LRU flushes it on every scan.
+        Assertions.assertTrue(scanHitRatios.get("ARC") > scanHitRatios.get("LRU"));
+        Assertions.assertTrue(scanHitRatios.get("LRU-2") > scanHitRatios.get("LRU"));
+    }
+
+    /**
+     * @param hotPages 点查询均匀的访问 [0, hotPages)
+     * @param scanEvery 每隔多少次点查询进行一次scan
+     * @param scanLength 每次scan访问的（从未访问过的）页面数
+     */
+    private static int[] lookupsWithScans(int length, int hotPages, int scanEvery, int scanLength) {
+        Random random = new Random(15445);
+        int[] trace = new int[length];
+        int nextScanPage = 1_000_000;
+        int i = 0;
+        while (i < length) {
+            for (int j = 0; j < scanEvery && i < length; j++) {
+                trace[i++] = random.nextInt(hotPages);
+            }
+            for (int j = 0; j < scanLength && i < length; j++) {
+                trace[i++] = nextScanPage++;
+            }
+        }
+        return trace;
+    }
+
+    private static int[] driftingHotSet(int length, int hotPages) {
+        Random random = new Random(15445);
+        int[] trace = new int[length];
+        for (int i = 0; i < length; i++) {
+            int base = i / 1000; // 热点集合每1000次访问移动一个页面
+            trace[i] = base + (int) Math.abs(random.nextGaussian() * hotPages / 3);
+        }
+        return trace;
+    }
+
+    /**
+     * 模拟BufferPoolManager对replacer的使用：命中时pin、记录访问、unpin；未命中时先使用空闲的frame，否则替换
+     */
+    private static class Simulation {
+        private final Replacer replacer;
+        private final Map<Integer, Integer> pageTable = new HashMap<>();
+        private final int[] pageOfFrame;
+        private final Deque<Integer> freeList = new ArrayDeque<>();
+        private long hits;
+        private long accesses;
+
+        Simulation(Replacer replacer, int poolSize) {
+            this.replacer = replacer;
+            this.pageOfFrame = new int[poolSize];
+            Arrays.fill(pageOfFrame, -1);
+            for (int i = 0; i < poolSize; i++) {
+                freeList.addLast(i);
+            }
+        }
+
+        void run(int[] trace) {
+            for (int pageId : trace) {
+                access(pageId);
+            }
+        }
+
+        void access(int pageId) {
+            accesses++;
+            Integer frameId = pageTable.get(pageId);
+            if (frameId != null) {
+                hits++;
+                replacer.recordAccess(frameId, pageId);
+                replacer.pin(frameId);
+                replacer.unpin(frameId);
+                return;
+            }
+            frameId = freeList.pollFirst();
+            if (frameId == null) {
+                frameId = replacer.victimFrame();
+                Assertions.assertNotEquals(Replacer.NO_VICTIM, frameId);
+                pageTable.remove(pageOfFrame[frameId]);
+            }
+            pageTable.put(pageId, frameId);
+            pageOfFrame[frameId] = pageId;
+            replacer.recordAccess(frameId, pageId);
+            replacer.pin(frameId);
+            replacer.unpin(frameId);
+        }
+
+        boolean isResident(int pageId) {
+            return pageTable.containsKey(pageId);
+        }
+
+        double hitRatio() {
+            return (double) hits / accesses;
+        }
+    }
+}
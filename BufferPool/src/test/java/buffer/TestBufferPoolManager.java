@@ -0,0 +1,783 @@
+package buffer;
+
+import config.DBConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import storage.disk.DiskManager;
+import storage.page.BasicPageGuard;
+import storage.page.Page;
+import util.ThreadUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import static config.DBConfig.BUSTUB_PAGE_SIZE;
+
+public class TestBufferPoolManager {
+    private static final Logger logger = Logger.getLogger(TestBufferPoolManager.class.getName());
+    private static final String DB_NAME = "test_bpm.db";
+
+    @AfterEach
+    public void cleanUp() {
+        try {
+            Files.deleteIfExists(Paths.get(DB_NAME));
+            Files.deleteIfExists(Paths.get("test_bpm.log"));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void copyString(Page page, String str) {
+        byte[] bytes = str.getBytes();
+        page.getBuffer().put(0, bytes);
+    }
+
+    private static String readString(Page page, int length) {
+        byte[] bytes = new byte[length];
+        page.getBuffer().get(0, bytes);
+        return new String(bytes);
+    }
+
+    @Test
+    public void BinaryDataTest() {
+        binaryDataTest(false);
+        binaryDataTest(true);
+    }
+
+    private void binaryDataTest(boolean offHeap) {
+        final int bufferPoolSize = 10;
+        DiskManager diskManager = new DiskManager(DB_NAME);
+        BufferPoolManager bpm = new BufferPoolManager(bufferPoolSize, diskManager, offHeap);
+
+        Page page0 = bpm.newPage();
+        // Scenario: The buffer pool is empty. We should be able to create a new page.
+        Assertions.assertNotNull(page0);
+        Assertions.assertEquals(0, page0.getPageId());
+        Assertions.assertEquals(!offHeap, page0.hasArray());
+
+        byte[] randomBinaryData = new byte[BUSTUB_PAGE_SIZE];
+        new Random(15445).nextBytes(randomBinaryData);
+        // Insert terminal characters both in the middle and at end
+        randomBinaryData[BUSTUB_PAGE_SIZE / 2] = '\0';
+        randomBinaryData[BUSTUB_PAGE_SIZE - 1] = '\0';
+
+        // Scenario: Once we have a page, we should be able to read and write content.
+        page0.getBuffer().put(0, randomBinaryData);
+        byte[] check = new byte[BUSTUB_PAGE_SIZE];
+        page0.getBuffer().get(0, check);
+        Assertions.assertArrayEquals(randomBinaryData, check);
+
+        // Scenario: We should be able to create new pages until we fill up the buffer pool.
+        for (int i = 1; i < bufferPoolSize; ++i) {
+            Assertions.assertNotNull(bpm.newPage());
+        }
+        // Scenario: Once the buffer pool is full, we should not be able to create any new pages.
+        for (int i = bufferPoolSize; i < bufferPoolSize * 2; ++i) {
+            Assertions.assertNull(bpm.newPage());
+        }
+
+        // Scenario: After unpinning pages {0, 1, 2, 3, 4}, we should be able to create 5 new pages
+        for (int i = 0; i < 5; ++i) {
+            Assertions.assertTrue(bpm.unpinPage(i, true));
+            bpm.flushPage(i);
+        }
+        for (int i = 0; i < 5; ++i) {
+            Page page = bpm.newPage();
+            Assertions.assertNotNull(page);
+            bpm.unpinPage(page.getPageId(), false);
+        }
+        // Scenario: We should be able to fetch the data we wrote a while ago.
+        page0 = bpm.fetchPage(0);
+        Assertions.assertNotNull(page0);
+        page0.getBuffer().get(0, check);
+        Assertions.assertArrayEquals(randomBinaryData, check);
+        Assertions.assertTrue(bpm.unpinPage(0, true));
+
+        bpm.shutDown();
+        diskManager.shutDown();
+        cleanUp();
+    }
+
+    @Test
+    public void SampleTest() {
+        sampleTest(false);
+        sampleTest(true);
+    }
+
+    private void sampleTest(boolean offHeap) {
+        final int bufferPoolSize = 10;
+        DiskManager diskManager = new DiskManager(DB_NAME);
+        BufferPoolManager bpm = new BufferPoolManager(bufferPoolSize, diskManager, offHeap);
+
+        Page page0 = bpm.newPage();
+        Assertions.assertNotNull(page0);
+        Assertions.assertEquals(0, page0.getPageId());
+
+        copyString(page0, "Hello");
+        Assertions.assertEquals("Hello", readString(page0, 5));
+
+        for (int i = 1; i < bufferPoolSize; ++i) {
+            Assertions.assertNotNull(bpm.newPage());
+        }
+        for (int i = bufferPoolSize; i < bufferPoolSize * 2; ++i) {
+            Assertions.assertNull(bpm.newPage());
+        }
+
+        // Scenario: After unpinning pages {0, 1, 2, 3, 4} and pinning another 4 new pages,
+        // there would still be one buffer page left for reading page 0.
+        for (int i = 0; i < 5; ++i) {
+            Assertions.assertTrue(bpm.unpinPage(i, true));
+        }
+        for (int i = 0; i < 4; ++i) {
+            Assertions.assertNotNull(bpm.newPage());
+        }
+
+        // Scenario: We should be able to fetch the data we wrote a while ago.
+        page0 = bpm.fetchPage(0);
+        Assertions.assertNotNull(page0);
+        Assertions.assertEquals("Hello", readString(page0, 5));
+
+        // Scenario: If we unpin page 0 and then make a new page, all the buffer pages should
+        // now be pinned. Fetching page 0 again should fail.
+        Assertions.assertTrue(bpm.unpinPage(0, true));
+        Assertions.assertNotNull(bpm.newPage());
+        Assertions.assertNull(bpm.fetchPage(0));
+
+        bpm.shutDown();
+        diskManager.shutDown();
+        cleanUp();
+    }
+
+    @Test
+    public void ConcurrentFetchTest() throws InterruptedException {
+        final int bufferPoolSize = 16;
+        final int numPages = 64;
+        final int numThreads = 4;
+        DiskManager diskManager = new DiskManager(DB_NAME);
+        BufferPoolManager bpm = new BufferPoolManager(bufferPoolSize, diskManager);
+
+        for (int i = 0; i < numPages; ++i) {
+            Page page = bpm.newPage();
+            Assertions.assertNotNull(page);
+            page.getBuffer().putInt(0, page.getPageId());
+            Assertions.assertTrue(bpm.unpinPage(page.getPageId(), true));
+        }
+
+        // Scenario: hits and misses of different threads interleave, every fetched page must hold its own content.
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; ++t) {
+            final int seed = t;
+            threads.add(new Thread(() -> {
+                try {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 2000; ++i) {
+                        int pageId = random.nextInt(numPages);
+                        Page page = bpm.fetchPage(pageId);
+                        Assertions.assertNotNull(page);
+                        Assertions.assertEquals(pageId, page.getPageId());
+                        Assertions.assertEquals(pageId, page.getBuffer().getInt(0));
+                        Assertions.assertTrue(bpm.unpinPage(pageId, false));
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertNull(failure.get());
+        for (Page page : bpm.getPages()) {
+            Assertions.assertEquals(0, page.getPinCount());
+        }
+
+        bpm.shutDown();
+        diskManager.shutDown();
+        cleanUp();
+    }
+
+    @Test
+    public void AccessStrategyTest() {
+        final int bufferPoolSize = 16;
+        final int numHotPages = 8;
+        final int numScanPages = 40;
+        DiskManager diskManager = new DiskManager(DB_NAME);
+        BufferPoolManager bpm = new BufferPoolManager(bufferPoolSize, diskManager);
+
+        for (int i = 0; i < numHotPages; ++i) {
+            Page page = bpm.newPage();
+            page.getBuffer().putInt(0, page.getPageId());
+            Assertions.assertTrue(bpm.unpinPage(page.getPageId(), true));
+        }
+        Assertions.assertNull(bpm.getAccessStrategy(AccessType.NORMAL));
+
+        // Scenario: a bulk write much larger than the pool only cycles through its own ring.
+        BufferAccessStrategy bulkWrite = bpm.getAccessStrategy(AccessType.BULK_WRITE);
+        Assertions.assertEquals(bufferPoolSize / 8, bulkWrite.getRingSize());
+        for (int i = 0; i < numScanPages; ++i) {
+            Page page = bpm.newPage(bulkWrite);
+            Assertions.assertNotNull(page);
+            page.getBuffer().putInt(0, page.getPageId());
+            Assertions.assertTrue(bpm.unpinPage(page.getPageId(), true));
+        }
+        bpm.freeAccessStrategy(bulkWrite);
+        assertResident(bpm, 0, numHotPages);
+
+        // Scenario: a sequential scan reads every page back correctly without evicting the hot pages.
+        BufferAccessStrategy scan = bpm.getAccessStrategy(AccessType.SEQUENTIAL);
+        for (int pageId = numHotPages; pageId < numHotPages + numScanPages; ++pageId) {
+            Page page = bpm.fetchPage(pageId, scan);
+            Assertions.assertNotNull(page);
+            Assertions.assertEquals(pageId, page.getBuffer().getInt(0));
+            Assertions.assertTrue(bpm.unpinPage(pageId, false));
+        }
+        assertResident(bpm, 0, numHotPages);
+        int scanFrames = 0;
+        for (Page page : bpm.getPages()) {
+            if (page.getPageId() >= numHotPages) {
+                scanFrames++;
+            }
+        }
+        Assertions.assertTrue(scanFrames <= scan.getRingSize() + bulkWrite.getRingSize());
+        bpm.freeAccessStrategy(scan);
+
+        // Scenario: a bulk rewrite of existing pages (e.g. VACUUM) through write guards stays in its ring too.
+        BufferAccessStrategy rewrite = bpm.getAccessStrategy(AccessType.BULK_WRITE);
+        for (int pageId = numHotPages; pageId < numHotPages + numScanPages; ++pageId) {
+            try (BasicPageGuard.WritePageGuard guard = bpm.FetchPageWrite(pageId, rewrite)) {
+                Assertions.assertNotNull(guard);
+                guard.GetBufferMut().putInt(0, -pageId);
+            }
+        }
+        bpm.freeAccessStrategy(rewrite);
+        assertResident(bpm, 0, numHotPages);
+        BufferAccessStrategy check = bpm.getAccessStrategy(AccessType.SEQUENTIAL);
+        for (int pageId = numHotPages; pageId < numHotPages + numScanPages; ++pageId) {
+            try (BasicPageGuard guard = bpm.fetchPageBasic(pageId, check)) {
+                Assertions.assertEquals(-pageId, ByteBuffer.wrap(guard.getData()).getInt(0));
+            }
+        }
+        bpm.freeAccessStrategy(check);
+        assertResident(bpm, 0, numHotPages);
+
+        // Scenario: after the rings are freed, all the frames can be used by normal fetches again.
+        for (int pageId = numHotPages; pageId < numHotPages + bufferPoolSize; ++pageId) {
+            Assertions.assertNotNull(bpm.fetchPage(pageId));
+        }
+        Assertions.assertNull(bpm.fetchPage(0));
+
+        bpm.shutDown();
+        diskManager.shutDown();
+        cleanUp();
+    }
+
+    @Test
+    public void PrefetchTest() {
+        final int bufferPoolSize = 16;
+        final int numPages = 64;
+        DiskManager diskManager = new DiskManager(DB_NAME);
+        BufferPoolManager bpm = new BufferPoolManager(bufferPoolSize, diskManager);
+        for (int i = 0; i < numPages; ++i) {
+            Page page = bpm.newPage();
+            page.getBuffer().putInt(0, page.getPageId());
+            Assertions.assertTrue(bpm.unpinPage(page.getPageId(), true));
+        }
+        Assertions.assertFalse(isResident(bpm, 0));
+
+        // Scenario: an explicit hint reads the pages in before they are fetched, but does not pin them.
+        Assertions.assertEquals(bufferPoolSize / 4, bpm.prefetch(0, 100));
+        assertResident(bpm, 0, bufferPoolSize / 4);
+        for (int pageId = 0; pageId < bufferPoolSize / 4; ++pageId) {
+            Assertions.assertFalse(bpm.unpinPage(pageId, false));
+        }
+        // pages which have not been allocated are never prefetched
+        Assertions.assertEquals(0, bpm.prefetch(numPages, 4));
+
+        // Scenario: by default, ascending point fetches without a SEQUENTIAL strategy do not read ahead.
+        final int pointFrom = numPages / 2 + 8;
+        final int pointTo = pointFrom + DBConfig.READ_AHEAD_TRIGGER;
+        for (int pageId = pointFrom; pageId < pointTo; ++pageId) {
+            Assertions.assertNotNull(bpm.fetchPage(pageId));
+            Assertions.assertTrue(bpm.unpinPage(pageId, false));
+        }
+        for (int pageId = pointTo; pageId < pointTo + DBConfig.READ_AHEAD_TRIGGER; ++pageId) {
+            Assertions.assertFalse(isResident(bpm, pageId));
+        }
+
+        // Scenario: an ascending scan triggers read-ahead, so the next pages are resident before they are fetched.
+        bpm.setReadAheadAllFetches(true);
+        int readAhead = 0;
+        for (int pageId = 0; pageId < numPages; ++pageId) {
+            if (pageId >= DBConfig.READ_AHEAD_TRIGGER && isResident(bpm, pageId)) {
+                readAhead++;
+            }
+            Page page = bpm.fetchPage(pageId);
+            Assertions.assertNotNull(page);
+            Assertions.assertEquals(pageId, page.getBuffer().getInt(0));
+            Assertions.assertTrue(bpm.unpinPage(pageId, false));
+        }
+        Assertions.assertEquals(numPages - DBConfig.READ_AHEAD_TRIGGER, readAhead);
+
+        // Scenario: the prefetched pages can be flushed and evicted like any other page.
+        bpm.flushAllPages();
+        for (int i = 0; i < bufferPoolSize; ++i) {
+            Assertions.assertNotNull(bpm.newPage());
+        }
+
+        bpm.shutDown();
+        diskManager.shutDown();
+        cleanUp();
+    }
+
+    @Test
+    public void ReopenTest() {
+        final int bufferPoolSize = 16;
+        final int numPages = 3;
+        DiskManager diskManager = new DiskManager(DB_NAME);
+        BufferPoolManager bpm = new BufferPoolManager(bufferPoolSize, diskManager);
+        for (int i = 0; i < numPages; ++i) {
+            Page page = bpm.newPage();
+            page.getBuffer().putInt(0, page.getPageId());
+            Assertions.assertTrue(bpm.unpinPage(page.getPageId(), true));
+        }
+        bpm.flushAllPages();
+        bpm.shutDown();
+        diskManager.shutDown();
+
+        // Scenario: after reopening the db file, new pages do not overwrite the existing ones.
+        diskManager = new DiskManager(DB_NAME);
+        bpm = new BufferPoolManager(bufferPoolSize, diskManager);
+        Page newPage = bpm.newPage();
+        Assertions.assertNotNull(newPage);
+        Assertions.assertTrue(newPage.getPageId() >= numPages);
+        Assertions.assertTrue(bpm.unpinPage(newPage.getPageId(), false));
+
+        // Scenario: the existing pages can be prefetched and fetched.
+        Assertions.assertEquals(numPages, bpm.prefetch(0, numPages));
+        for (int pageId = 0; pageId < numPages; ++pageId) {
+            Page page = bpm.fetchPage(pageId);
+            Assertions.assertNotNull(page);
+            Assertions.assertEquals(pageId, page.getBuffer().getInt(0));
+            Assertions.assertTrue(bpm.unpinPage(pageId, false));
+        }
+
+        bpm.shutDown();
+        diskManager.shutDown();
+        cleanUp();
+    }
+
+    @Test
+    public void BackgroundWriterTest() {
+        final int bufferPoolSize = 8;
+        DiskManager diskManager = new DiskManager(DB_NAME);
+        BufferPoolManager bpm = new BufferPoolManager(bufferPoolSize, diskManager);
+        bpm.setBackgroundWriterCleanFraction(0); // 由测试线程手动触发
+        for (int i = 0; i < bufferPoolSize; ++i) {
+            Page page = bpm.newPage();
+            page.getBuffer().putInt(0, page.getPageId());
+            Assertions.assertTrue(bpm.unpinPage(page.getPageId(), true));
+        }
+        Page pinned = bpm.fetchPage(0);
+        Assertions.assertNotNull(pinned);
+
+        // Scenario: the next victims are written back in one batch, pinned pages are skipped.
+        Assertions.assertEquals(bufferPoolSize / 2, bpm.writeEvictionCandidates(0.5));
+        Assertions.assertEquals(0, bpm.writeEvictionCandidates(0.5));
+        Assertions.assertTrue(pinned.isDirty());
+
+        // Scenario: evicting the clean pages does not have to wait for a write-back.
+        for (int i = 0; i < bufferPoolSize / 2; ++i) {
+            Page page = bpm.newPage();
+            Assertions.assertNotNull(page);
+            Assertions.assertTrue(bpm.unpinPage(page.getPageId(), false));
+        }
+        Assertions.assertEquals(0, bpm.getNumEvictionWrites());
+        Assertions.assertTrue(bpm.unpinPage(0, false));
+
+        // Scenario: the written pages can be read back.
+        for (int pageId = 1; pageId <= bufferPoolSize / 2; ++pageId) {
+            Page page = bpm.fetchPage(pageId);
+            Assertions.assertNotNull(page);
+            Assertions.assertEquals(pageId, page.getBuffer().getInt(0));
+            Assertions.assertTrue(bpm.unpinPage(pageId, false));
+        }
+
+        bpm.shutDown();
+        diskManager.shutDown();
+        cleanUp();
+    }
+
+    @Test
+    public void AsyncFetchTest() throws InterruptedException {
+        final int bufferPoolSize = 8;
+        final int numPages = 32;
+        DiskManager diskManager = new DiskManager(DB_NAME);
+        BufferPoolManager bpm = new BufferPoolManager(bufferPoolSize, diskManager);
+        for (int i = 0; i < numPages; ++i) {
+            Page page = bpm.newPage();
+            page.getBuffer().putInt(0, page.getPageId());
+            Assertions.assertTrue(bpm.unpinPage(page.getPageId(), true));
+        }
+
+        // Scenario: all the misses are outstanding at the same time, and every page is read correctly.
+        List<CompletableFuture<BasicPageGuard>> futures = new ArrayList<>();
+        for (int pageId = 0; pageId < bufferPoolSize; pageId += 2) { // 不连续，不会触发预读
+            futures.add(bpm.fetchPageAsync(pageId));
+        }
+        for (int i = 0; i < futures.size(); ++i) {
+            BasicPageGuard guard = futures.get(i).join();
+            Assertions.assertNotNull(guard);
+            Assertions.assertEquals(i * 2, guard.getPageId());
+            Assertions.assertEquals(i * 2, guard.GetBufferMut().getInt(0));
+        }
+
+        // Scenario: two requests for the same page share one read and one frame.
+        CompletableFuture<BasicPageGuard> first = bpm.fetchPageAsync(numPages - 1);
+        CompletableFuture<BasicPageGuard> second = bpm.fetchPageAsync(numPages - 1);
+        Assertions.assertEquals(numPages - 1, first.join().GetBufferMut().getInt(0));
+        Assertions.assertEquals(numPages - 1, second.join().GetBufferMut().getInt(0));
+        Assertions.assertTrue(bpm.unpinPage(numPages - 1, false));
+        Assertions.assertTrue(bpm.unpinPage(numPages - 1, false));
+        Assertions.assertFalse(bpm.unpinPage(numPages - 1, false));
+
+        // Scenario: once every frame is pinned, the request completes with null.
+        for (int pageId = 1; pageId < bufferPoolSize; pageId += 2) {
+            Assertions.assertNotNull(bpm.fetchPageAsync(pageId).join());
+        }
+        Assertions.assertNull(bpm.fetchPageAsync(numPages - 1).join());
+        for (int pageId = 0; pageId < bufferPoolSize; ++pageId) {
+            Assertions.assertTrue(bpm.unpinPage(pageId, false));
+        }
+
+        // Scenario: the async latched guards behave like FetchPageRead and FetchPageWrite.
+        BasicPageGuard.WritePageGuard writeGuard = bpm.FetchPageWriteAsync(numPages - 2).join();
+        Assertions.assertNotNull(writeGuard);
+        CompletableFuture<BasicPageGuard.ReadPageGuard> readFuture = bpm.FetchPageReadAsync(numPages - 2);
+        Thread.sleep(100);
+        Assertions.assertFalse(readFuture.isDone()); // 写锁被持有，读者只能等待
+        writeGuard.drop(null);
+        BasicPageGuard.ReadPageGuard readGuard = readFuture.join();
+        Assertions.assertNotNull(readGuard);
+        readGuard.drop();
+        Assertions.assertFalse(bpm.unpinPage(numPages - 2, false));
+
+        bpm.shutDown();
+        diskManager.shutDown();
+        cleanUp();
+    }
+
+    @Test
+    public void ThreadFactoryTest() {
+        GatedDiskManager diskManager = new GatedDiskManager(DB_NAME, 0);
+        AtomicInteger numThreads = new AtomicInteger();
+        ThreadFactory threadFactory = task -> {
+            numThreads.incrementAndGet();
+            return new Thread(task);
+        };
+        BufferPoolManager bpm = new BufferPoolManager(4, diskManager, false, new ClockReplacer(4), threadFactory);
+        // Scenario: the disk scheduler workers and the background writer are created by the factory.
+        Assertions.assertEquals(DBConfig.DISK_SCHEDULER_NUM_WORKERS + 1, numThreads.get());
+
+        for (int i = 0; i < 8; ++i) {
+            Assertions.assertTrue(bpm.unpinPage(bpm.newPage().getPageId(), true));
+        }
+        // Scenario: the completion of an async miss runs on a thread of the factory too.
+        // 读被阻塞直到future的回调注册之后，否则读可能已经完成，future在调用者的线程中直接返回
+        int before = numThreads.get();
+        CompletableFuture<BasicPageGuard> future = bpm.fetchPageAsync(0);
+        diskManager.gate.countDown();
+        BasicPageGuard guard = future.join();
+        Assertions.assertNotNull(guard);
+        Assertions.assertTrue(numThreads.get() > before);
+        Assertions.assertTrue(bpm.unpinPage(0, false));
+
+        bpm.shutDown();
+        diskManager.shutDown();
+        cleanUp();
+    }
+
+    /**
+     * 10k个virtual thread同时读一个固定大小的缓冲池，只在JDK 21及以上运行。
+     * 注意：这个benchmark（以及ThreadUtils中通过反射创建virtual thread的路径）还没有在JDK 21上运行过，
+     * 在JDK 17上它总是被skip，所以"缓冲池可以在virtual thread上运行且不会pin carrier thread"目前是未经验证的。
+     * 在JDK 21上以 -Djdk.tracePinnedThreads=full 运行，检查输出中没有pinned的栈
+     */
+    @Test
+    public void VirtualThreadReadersBenchmark() throws InterruptedException {
+        Assumptions.assumeTrue(ThreadUtils.isVirtualThreadSupported(), "virtual threads are not supported");
+        final int bufferPoolSize = 64;
+        final int numPages = 256;
+        final int numReaders = 10_000;
+        final int readsPerReader = 20;
+        DiskManager diskManager = new DiskManager(DB_NAME);
+        BufferPoolManager bpm = new BufferPoolManager(bufferPoolSize, diskManager, false,
+                new LRUKReplacer(bufferPoolSize, DBConfig.LRUK_REPLACER_K), ThreadUtils.virtualThreadFactory("bpm-"));
+        for (int i = 0; i < numPages; ++i) {
+            Page page = bpm.newPage();
+            page.getBuffer().putInt(0, page.getPageId());
+            Assertions.assertTrue(bpm.unpinPage(page.getPageId(), true));
+        }
+        bpm.flushAllPages();
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicLong retries = new AtomicLong();
+        long start = System.nanoTime();
+        ExecutorService readers = ThreadUtils.newVirtualThreadPerTaskExecutor("reader-");
+        for (int r = 0; r < numReaders; ++r) {
+            final int seed = r;
+            readers.execute(() -> {
+                try {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < readsPerReader; ++i) {
+                        int pageId = random.nextInt(numPages);
+                        Page page;
+                        while ((page = bpm.fetchPage(pageId)) == null) { // 所有的frame都被其他reader pin了
+                            retries.incrementAndGet();
+                            Thread.sleep(1);
+                        }
+                        Assertions.assertEquals(pageId, page.getBuffer().getInt(0));
+                        Assertions.assertTrue(bpm.unpinPage(pageId, false));
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+        }
+        readers.shutdown();
+        Assertions.assertTrue(readers.awaitTermination(5, TimeUnit.MINUTES));
+        long elapsed = System.nanoTime() - start;
+        Assertions.assertNull(failure.get());
+        logger.info(String.format("%d virtual thread readers, %d reads: %.1f ms, %.0f reads/s, %d retries",
+                numReaders, numReaders * readsPerReader, elapsed / 1e6,
+                numReaders * readsPerReader / (elapsed / 1e9), retries.get()));
+
+        bpm.shutDown();
+        diskManager.shutDown();
+        cleanUp();
+    }
+
+    @Test
+    public void SingleFlightTest() throws InterruptedException {
+        final int bufferPoolSize = 4;
+        final int numThreads = 8;
+        final int slowPageId = 0;
+        final int otherPageId = DBConfig.DISK_SCHEDULER_STRIPE_PAGES; // 由另一个worker读入
+        GatedDiskManager diskManager = new GatedDiskManager(DB_NAME, slowPageId);
+        BufferPoolManager bpm = new BufferPoolManager(bufferPoolSize, diskManager);
+        for (int i = 0; i <= otherPageId + bufferPoolSize; ++i) {
+            Page page = bpm.newPage();
+            page.getBuffer().putInt(0, page.getPageId());
+            Assertions.assertTrue(bpm.unpinPage(page.getPageId(), true));
+        }
+        Assertions.assertFalse(isResident(bpm, slowPageId));
+        Assertions.assertFalse(isResident(bpm, otherPageId));
+
+        // Scenario: concurrent misses of the same page wait for one read instead of each reading it.
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(numThreads);
+        for (int t = 0; t < numThreads; ++t) {
+            new Thread(() -> {
+                try {
+                    Page page = bpm.fetchPage(slowPageId);
+                    Assertions.assertNotNull(page);
+                    Assertions.assertEquals(slowPageId, page.getBuffer().getInt(0));
+                    Assertions.assertTrue(bpm.unpinPage(slowPageId, false));
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        Assertions.assertTrue(diskManager.readStarted.await(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(numThreads, done.getCount()); // 读被阻塞，所有的fetch都在等待
+
+        // Scenario: the miss of another page does not wait for the I/O in progress.
+        Page other = bpm.fetchPage(otherPageId);
+        Assertions.assertNotNull(other);
+        Assertions.assertEquals(otherPageId, other.getBuffer().getInt(0));
+        Assertions.assertTrue(bpm.unpinPage(otherPageId, false));
+
+        diskManager.gate.countDown();
+        Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assertions.assertNull(failure.get());
+        Assertions.assertEquals(1, diskManager.gatedReads.get());
+
+        bpm.shutDown();
+        diskManager.shutDown();
+        cleanUp();
+    }
+
+    @Test
+    public void PendingReadVictimTest() throws InterruptedException {
+        final int bufferPoolSize = 4;
+        final int numPages = 2 * bufferPoolSize;
+        final int slowPageId = 0;
+        GatedDiskManager diskManager = new GatedDiskManager(DB_NAME, slowPageId);
+        BufferPoolManager bpm = new BufferPoolManager(bufferPoolSize, diskManager);
+        for (int i = 0; i < numPages; ++i) {
+            Page page = bpm.newPage();
+            page.getBuffer().putInt(0, page.getPageId());
+            Assertions.assertTrue(bpm.unpinPage(page.getPageId(), true));
+        }
+        bpm.flushAllPages();
+        // 只有一个frame是evictable的，预读占用它之后，其读被阻塞
+        for (int pageId = numPages - bufferPoolSize + 1; pageId < numPages; ++pageId) {
+            Assertions.assertNotNull(bpm.fetchPage(pageId));
+        }
+        Assertions.assertEquals(1, bpm.prefetch(slowPageId, 1));
+        Assertions.assertTrue(diskManager.readStarted.await(10, TimeUnit.SECONDS));
+
+        // Scenario: a miss whose only victim is still being read waits for the read outside the global lock.
+        AtomicReference<Page> fetched = new AtomicReference<>();
+        Thread fetcher = new Thread(() -> fetched.set(bpm.fetchPage(slowPageId + 1)));
+        fetcher.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (fetcher.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        Assertions.assertEquals(Thread.State.WAITING, fetcher.getState());
+        // 需要获取全局锁，若fetcher在持有全局锁时等待，则会一直阻塞
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), () -> bpm.prefetch(numPages, 1));
+
+        // Scenario: once the read completes, the prefetched page is evicted for the miss.
+        diskManager.gate.countDown();
+        fetcher.join(TimeUnit.SECONDS.toMillis(10));
+        Assertions.assertNotNull(fetched.get());
+        Assertions.assertEquals(slowPageId + 1, fetched.get().getBuffer().getInt(0));
+        Assertions.assertFalse(isResident(bpm, slowPageId));
+
+        bpm.shutDown();
+        diskManager.shutDown();
+        cleanUp();
+    }
+
+    @Test
+    public void EvictionWriteFailureTest() {
+        final int bufferPoolSize = 2;
+        FailingDiskManager diskManager = new FailingDiskManager(DB_NAME);
+        BufferPoolManager bpm = new BufferPoolManager(bufferPoolSize, diskManager);
+        bpm.setBackgroundWriterCleanFraction(0); // 只有evict会写回
+        for (int i = 0; i < bufferPoolSize; ++i) {
+            Page page = bpm.newPage();
+            page.getBuffer().putInt(0, page.getPageId());
+            Assertions.assertTrue(bpm.unpinPage(page.getPageId(), true));
+        }
+
+        // Scenario: the write-back of every victim fails, so no frame is available, but the dirty pages stay resident.
+        diskManager.failWrites = true;
+        Assertions.assertNull(bpm.newPage());
+        for (int pageId = 0; pageId < bufferPoolSize; ++pageId) {
+            Page page = bpm.fetchPage(pageId);
+            Assertions.assertNotNull(page);
+            Assertions.assertEquals(pageId, page.getBuffer().getInt(0));
+            Assertions.assertTrue(bpm.unpinPage(pageId, false));
+        }
+
+        // Scenario: once the disk recovers, the victims are written back again and their frames reused.
+        diskManager.failWrites = false;
+        for (int i = 0; i < bufferPoolSize; ++i) {
+            Page page = bpm.newPage();
+            Assertions.assertNotNull(page);
+            Assertions.assertTrue(bpm.unpinPage(page.getPageId(), false));
+        }
+        for (int pageId = 0; pageId < bufferPoolSize; ++pageId) {
+            Page page = bpm.fetchPage(pageId);
+            Assertions.assertNotNull(page);
+            Assertions.assertEquals(pageId, page.getBuffer().getInt(0));
+            Assertions.assertTrue(bpm.unpinPage(pageId, false));
+        }
+
+        bpm.shutDown();
+        diskManager.shutDown();
+        cleanUp();
+    }
+
+    /**
+     * failWrites为true时，所有的写都会失败
+     */
+    private static class FailingDiskManager extends DiskManager {
+        volatile boolean failWrites;
+
+        FailingDiskManager(String dbFileName) {
+            super(dbFileName);
+        }
+
+        @Override
+        public void writePage(int page_id, ByteBuffer page_data) {
+            if (failWrites)
+                throw new RuntimeException("injected write failure of page " + page_id);
+            super.writePage(page_id, page_data);
+        }
+
+        @Override
+        public void writePages(int first_page_id, ByteBuffer[] pages) {
+            if (failWrites)
+                throw new RuntimeException("injected write failure of page " + first_page_id);
+            super.writePages(first_page_id, pages);
+        }
+    }
+
+    /**
+     * 对某一个page的读会被阻塞，直到gate被打开
+     */
+    private static class GatedDiskManager extends DiskManager {
+        final int gatedPageId;
+        final CountDownLatch gate = new CountDownLatch(1);
+        final CountDownLatch readStarted = new CountDownLatch(1);
+        final AtomicInteger gatedReads = new AtomicInteger();
+
+        GatedDiskManager(String dbFileName, int gatedPageId) {
+            super(dbFileName);
+            this.gatedPageId = gatedPageId;
+        }
+
+        @Override
+        public void readPage(int page_id, ByteBuffer page_data) {
+            if (page_id == gatedPageId) {
+                gatedReads.incrementAndGet();
+                readStarted.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            super.readPage(page_id, page_data);
+        }
+    }
+
+    private static boolean isResident(BufferPoolManager bpm, int pageId) {
+        for (Page page : bpm.getPages()) {
+            if (page.getPageId() == pageId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void assertResident(BufferPoolManager bpm, int fromPageId, int toPageId) {
+        for (int pageId = fromPageId; pageId < toPageId; ++pageId) {
+            Assertions.assertTrue(isResident(bpm, pageId), "page " + pageId + " is not in the buffer pool");
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package buffer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class TestClockReplacer {
+    @Test
+    public void SampleTest() {
+        ClockReplacer clock_replacer = new ClockReplacer(7);
+
+        // Scenario: unpin six elements, i.e. add them to the replacer.
+        clock_replacer.unpin(1);
+        clock_replacer.unpin(2);
+        clock_replacer.unpin(3);
+        clock_replacer.unpin(4);
+        clock_replacer.unpin(5);
+        clock_replacer.unpin(6);
+        clock_replacer.unpin(1);
+        Assertions.assertEquals(6, clock_replacer.getSize());
+
+        // Scenario: get three victims from the clock.
+        Assertions.assertEquals(Optional.of(1), clock_replacer.victim());
+        Assertions.assertEquals(Optional.of(2), clock_replacer.victim());
+        Assertions.assertEquals(Optional.of(3), clock_replacer.victim());
+
+        // Scenario: pin elements in the replacer.
+        // Note that 3 has already been victimized, so pinning 3 should have no effect.
+        clock_replacer.pin(3);
+        clock_replacer.pin(4);
+        Assertions.assertEquals(2, clock_replacer.getSize());
+
+        // Scenario: unpin 4. We expect that the reference bit of 4 will be set to 1.
+        clock_replacer.unpin(4);
+
+        // Scenario: continue looking for victims. We expect these victims.
+        Assertions.assertEquals(Optional.of(5), clock_replacer.victim());
+        Assertions.assertEquals(Optional.of(6), clock_replacer.victim());
+        Assertions.assertEquals(Optional.of(4), clock_replacer.victim());
+
+        // find a victim from an empty clock, should have no effects
+        Assertions.assertFalse(clock_replacer.victim().isPresent());
+        Assertions.assertEquals(Replacer.NO_VICTIM, clock_replacer.victimFrame());
+        Assertions.assertEquals(0, clock_replacer.getSize());
+
+        // invalid frames are ignored
+        clock_replacer.unpin(-1);
+        clock_replacer.unpin(7);
+        Assertions.assertEquals(0, clock_replacer.getSize());
+    }
+
+    @Test
+    public void SecondChanceTest() {
+        ClockReplacer clock_replacer = new ClockReplacer(3);
+        clock_replacer.unpin(0);
+        clock_replacer.unpin(1);
+        clock_replacer.unpin(2);
+        // 第一圈清除了所有的reference bit，0被替换，指针停在1
+        Assertions.assertEquals(0, clock_replacer.victimFrame());
+
+        // Scenario: frame 1 is accessed again, so it gets a second chance and 2 is evicted first.
+        clock_replacer.recordAccess(1);
+        Assertions.assertArrayEquals(new int[]{2, 1}, clock_replacer.evictionCandidates(3));
+        Assertions.assertEquals(2, clock_replacer.victimFrame());
+        Assertions.assertEquals(1, clock_replacer.victimFrame());
+
+        // Scenario: a removed frame is never chosen.
+        clock_replacer.unpin(0);
+        clock_replacer.unpin(1);
+        clock_replacer.remove(0);
+        Assertions.assertEquals(1, clock_replacer.getSize());
+        Assertions.assertEquals(1, clock_replacer.victimFrame());
+        Assertions.assertEquals(Replacer.NO_VICTIM, clock_replacer.victimFrame());
+    }
+
+    @Test
+    public void MultiThreadVictimTest() throws InterruptedException {
+        final int numFrames = 1024;
+        final int numThreads = 4;
+        ClockReplacer clock_replacer = new ClockReplacer(numFrames);
+        for (int i = 0; i < numFrames; i++) {
+            clock_replacer.unpin(i);
+        }
+
+        // Scenario: concurrent victims never return the same frame twice, and together they return every frame.
+        AtomicIntegerArray victimized = new AtomicIntegerArray(numFrames);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            threads.add(new Thread(() -> {
+                int frameId;
+                while ((frameId = clock_replacer.victimFrame()) != Replacer.NO_VICTIM) {
+                    victimized.incrementAndGet(frameId);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < numFrames; i++) {
+            Assertions.assertEquals(1, victimized.get(i));
+        }
+        Assertions.assertEquals(0, clock_replacer.getSize());
+    }
+}
@@ -0,0 +1,293 @@
+package buffer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+
+public class TestLRUKReplacer {
+    @Test
+    public void SampleTest() {
+        LRUKReplacer lru_replacer = new LRUKReplacer(7, 2);
+
+        // Scenario: add six elements to the replacer. We have [1,2,3,4,5]. Frame 6 is non-evictable.
+        for (int i = 1; i <= 6; i++) {
+            lru_replacer.recordAccess(i);
+        }
+        for (int i = 1; i <= 6; i++) {
+            lru_replacer.unpin(i);
+        }
+        lru_replacer.pin(6);
+        Assertions.assertEquals(5, lru_replacer.getSize());
+
+        // Scenario: Insert access history for frame 1. Now frame 1 has two access histories.
+        // All other frames have max backward k-dist. The order of eviction is [2,3,4,5,1].
+        lru_replacer.recordAccess(1);
+        // peeking at the eviction order does not change the state of the replacer
+        Assertions.assertArrayEquals(new int[]{2, 3, 4}, lru_replacer.evictionCandidates(3));
+        Assertions.assertArrayEquals(new int[]{2, 3, 4, 5, 1}, lru_replacer.evictionCandidates(10));
+        Assertions.assertEquals(5, lru_replacer.getSize());
+
+        // Scenario: Evict three pages from the replacer. Elements with max k-distance should be popped
+        // first based on LRU.
+        Assertions.assertEquals(Optional.of(2), lru_replacer.victim());
+        Assertions.assertEquals(Optional.of(3), lru_replacer.victim());
+        Assertions.assertEquals(Optional.of(4), lru_replacer.victim());
+        Assertions.assertEquals(2, lru_replacer.getSize());
+
+        // Scenario: Now replacer has frames [5,1].
+        // Insert new frames 3, 4, and update access history for 5. We should end with [3,1,5,4]
+        lru_replacer.recordAccess(3);
+        lru_replacer.recordAccess(4);
+        lru_replacer.recordAccess(5);
+        lru_replacer.recordAccess(4);
+        lru_replacer.unpin(3);
+        lru_replacer.unpin(4);
+        Assertions.assertEquals(4, lru_replacer.getSize());
+
+        // Scenario: continue looking for victims. We expect 3 to be evicted next.
+        Assertions.assertEquals(Optional.of(3), lru_replacer.victim());
+        Assertions.assertEquals(3, lru_replacer.getSize());
+
+        // Set 6 to be evictable. 6 Should be evicted next since it has max backward k-dist.
+        lru_replacer.unpin(6);
+        Assertions.assertEquals(4, lru_replacer.getSize());
+        Assertions.assertEquals(Optional.of(6), lru_replacer.victim());
+        Assertions.assertEquals(3, lru_replacer.getSize());
+
+        // Now we have [1,5,4]. Continue looking for victims.
+        lru_replacer.pin(1);
+        Assertions.assertEquals(2, lru_replacer.getSize());
+        Assertions.assertEquals(Optional.of(5), lru_replacer.victim());
+        Assertions.assertEquals(1, lru_replacer.getSize());
+
+        // Update access history for 1. Now we have [4,1]. Next victim is 4.
+        lru_replacer.recordAccess(1);
+        lru_replacer.recordAccess(1);
+        lru_replacer.unpin(1);
+        Assertions.assertEquals(2, lru_replacer.getSize());
+        Assertions.assertEquals(Optional.of(4), lru_replacer.victim());
+
+        Assertions.assertEquals(1, lru_replacer.getSize());
+        Assertions.assertEquals(Optional.of(1), lru_replacer.victim());
+        Assertions.assertEquals(0, lru_replacer.getSize());
+
+        // This operation should not modify size
+        lru_replacer.recordAccess(1);
+        lru_replacer.pin(1);
+        Assertions.assertEquals(0, lru_replacer.getSize());
+        Assertions.assertFalse(lru_replacer.victim().isPresent());
+
+        lru_replacer.unpin(1);
+        Assertions.assertEquals(1, lru_replacer.getSize());
+        Assertions.assertEquals(Optional.of(1), lru_replacer.victim());
+        Assertions.assertEquals(0, lru_replacer.getSize());
+        Assertions.assertFalse(lru_replacer.victim().isPresent());
+
+        // invalid frames are ignored
+        lru_replacer.unpin(-1);
+        lru_replacer.unpin(7);
+        Assertions.assertEquals(0, lru_replacer.getSize());
+    }
+
+    @Test
+    public void RemoveTest() {
+        LRUKReplacer lru_replacer = new LRUKReplacer(3, 2);
+        lru_replacer.recordAccess(0);
+        lru_replacer.recordAccess(0);
+        lru_replacer.recordAccess(1);
+        lru_replacer.unpin(0);
+        lru_replacer.unpin(1);
+
+        // Scenario: removing a frame drops its history, so frame 0 looks like a new frame afterwards.
+        lru_replacer.remove(0);
+        Assertions.assertEquals(1, lru_replacer.getSize());
+        lru_replacer.recordAccess(0);
+        lru_replacer.unpin(0);
+        Assertions.assertEquals(Optional.of(1), lru_replacer.victim());
+        Assertions.assertEquals(Optional.of(0), lru_replacer.victim());
+    }
+
+    @Test
+    public void CorrelatedReferenceTest() {
+        // Frame 1 is referenced twice, far apart. Frame 0 is referenced twice in a burst, e.g. by one scan.
+        // Frame 2 is pinned and only used to advance the clock.
+        LRUKReplacer withoutPeriod = new LRUKReplacer(3, 2);
+        LRUKReplacer withPeriod = new LRUKReplacer(3, 2, 2);
+        for (LRUKReplacer replacer : new LRUKReplacer[]{withoutPeriod, withPeriod}) {
+            replacer.recordAccess(1); // t1
+            replacer.recordAccess(0); // t2
+            replacer.recordAccess(0); // t3
+            replacer.recordAccess(1); // t4
+            replacer.recordAccess(2); // t5
+            replacer.recordAccess(2); // t6
+            replacer.recordAccess(2); // t7
+            replacer.unpin(0);
+            replacer.unpin(1);
+        }
+
+        // Scenario: plain LRU-2 thinks frame 0 is hotter, because HIST(0, 2) = t2 is later than HIST(1, 2) = t1.
+        Assertions.assertEquals(Optional.of(1), withoutPeriod.victim());
+        // Scenario: with a correlated reference period, the burst counts as one reference, so frame 0 has only one
+        // reference and +inf backward k-distance.
+        Assertions.assertEquals(Optional.of(0), withPeriod.victim());
+
+        // Scenario: a frame still inside its correlated reference period is not evicted while other frames are available.
+        LRUKReplacer replacer = new LRUKReplacer(2, 2, 2);
+        replacer.recordAccess(1); // t1
+        replacer.recordAccess(0); // t2
+        replacer.recordAccess(1); // t3, correlated with t1
+        replacer.recordAccess(1); // t4, correlated with t3
+        replacer.recordAccess(1); // t5, correlated with t4
+        replacer.unpin(0);
+        replacer.unpin(1);
+        // 两者都只有一次引用，按照LRU本应选择frame 1；但是5 - LAST(0) > 2，而frame 1仍处于period中
+        Assertions.assertEquals(Optional.of(0), replacer.victim());
+        // Scenario: if every evictable frame is inside its period, one of them is still evicted.
+        Assertions.assertEquals(Optional.of(1), replacer.victim());
+
+        // Scenario: without a period, the most recently accessed frame is not skipped: frame 1 has +inf k-distance.
+        replacer = new LRUKReplacer(2, 2, 0);
+        replacer.recordAccess(0);
+        replacer.recordAccess(0);
+        replacer.recordAccess(1);
+        replacer.unpin(0);
+        replacer.unpin(1);
+        Assertions.assertEquals(Optional.of(1), replacer.victim());
+    }
+
+    @Test
+    public void RandomOperationsTest() {
+        // Scenario: the heap chooses the same victims (and eviction candidates) as a scan over all frames, with and
+        // without a correlated period.
+        final int numFrames = 32;
+        for (int period : new int[]{0, 3}) {
+            LRUKReplacer replacer = new LRUKReplacer(numFrames, 3, period);
+            ScanModel model = new ScanModel(numFrames, 3, period);
+            Random random = new Random(period);
+            for (int op = 0; op < 20_000; op++) {
+                int frameId = random.nextInt(numFrames);
+                switch (random.nextInt(5)) {
+                    case 0, 1 -> {
+                        replacer.recordAccess(frameId);
+                        model.recordAccess(frameId);
+                    }
+                    case 2 -> {
+                        replacer.unpin(frameId);
+                        model.evictable[frameId] = true;
+                    }
+                    case 3 -> {
+                        replacer.pin(frameId);
+                        model.evictable[frameId] = false;
+                    }
+                    default -> {
+                        Assertions.assertArrayEquals(model.candidates(8), replacer.evictionCandidates(8));
+                        int expected = model.victim();
+                        Assertions.assertEquals(expected, replacer.victimFrame());
+                        if (expected != Replacer.NO_VICTIM) {
+                            model.remove(expected);
+                        }
+                    }
+                }
+                Assertions.assertEquals(model.size(), replacer.getSize());
+            }
+        }
+    }
+
+    /**
+     * 通过扫描所有frame选择victim的LRU-K，作为参照
+     */
+    private static class ScanModel {
+        final int k;
+        final int period;
+        final long[][] history; // 从最近开始
+        final int[] historySize;
+        final long[] last;
+        final boolean[] evictable;
+        long now;
+
+        ScanModel(int numFrames, int k, int period) {
+            this.k = k;
+            this.period = period;
+            this.history = new long[numFrames][k];
+            this.historySize = new int[numFrames];
+            this.last = new long[numFrames];
+            this.evictable = new boolean[numFrames];
+        }
+
+        void recordAccess(int frameId) {
+            now++;
+            int n = historySize[frameId];
+            if (n == 0) {
+                history[frameId][0] = now;
+                historySize[frameId] = 1;
+            } else if (now - last[frameId] > period) {
+                long shift = last[frameId] - history[frameId][0];
+                int newSize = Math.min(n + 1, k);
+                for (int i = newSize - 1; i > 0; i--) {
+                    history[frameId][i] = history[frameId][i - 1] + shift;
+                }
+                history[frameId][0] = now;
+                historySize[frameId] = newSize;
+            }
+            last[frameId] = now;
+        }
+
+        int victim() {
+            int victim = scan(true);
+            return victim == Replacer.NO_VICTIM ? scan(false) : victim;
+        }
+
+        int scan(boolean skipCorrelated) {
+            int victim = Replacer.NO_VICTIM;
+            boolean victimInfinite = false;
+            long victimTimestamp = Long.MAX_VALUE;
+            for (int frameId = 0; frameId < evictable.length; frameId++) {
+                if (!evictable[frameId]) {
+                    continue;
+                }
+                if (skipCorrelated && period > 0 && historySize[frameId] > 0 && now - last[frameId] <= period) {
+                    continue;
+                }
+                boolean infinite = historySize[frameId] < k;
+                long timestamp = infinite ? history[frameId][0] : history[frameId][k - 1];
+                if ((infinite && !victimInfinite) || (infinite == victimInfinite && timestamp < victimTimestamp)) {
+                    victim = frameId;
+                    victimInfinite = infinite;
+                    victimTimestamp = timestamp;
+                }
+            }
+            return victim;
+        }
+
+        int[] candidates(int n) {
+            boolean[] saved = evictable.clone();
+            int[] candidates = new int[Math.min(n, size())];
+            for (int i = 0; i < candidates.length; i++) {
+                candidates[i] = victim();
+                evictable[candidates[i]] = false;
+            }
+            System.arraycopy(saved, 0, evictable, 0, saved.length);
+            return candidates;
+        }
+
+        void remove(int frameId) {
+            evictable[frameId] = false;
+            historySize[frameId] = 0;
+            last[frameId] = 0;
+            Arrays.fill(history[frameId], 0);
+        }
+
+        int size() {
+            int size = 0;
+            for (boolean e : evictable) {
+                if (e) {
+                    size++;
+                }
+            }
+            return size;
+        }
+    }
+}
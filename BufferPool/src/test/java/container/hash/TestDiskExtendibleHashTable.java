@@ -0,0 +1,213 @@
+package container.hash;
+
+import buffer.BufferPoolManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import storage.disk.DiskManager;
+import storage.page.BasicPageGuard;
+import storage.page.ExtendibleHTableDirectoryPageView;
+import storage.page.ExtendibleHTableHeaderPageView;
+import storage.page.PageCodec;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TestDiskExtendibleHashTable {
+    private static final String DB_NAME = "test_htable.db";
+
+    @AfterEach
+    public void cleanUp() {
+        try {
+            Files.deleteIfExists(Paths.get(DB_NAME));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void SampleTest() {
+        DiskManager diskManager = new DiskManager(DB_NAME);
+        BufferPoolManager bpm = new BufferPoolManager(50, diskManager);
+        // identity hash: 非负的key都在directory 0中，低2位决定bucket
+        var ht = new DiskExtendibleHashTable<Integer, Integer>("blah", bpm, PageCodec.INT, PageCodec.INT,
+                Integer::intValue, 1, 2, 2);
+
+        for (int i = 0; i < 8; i++) {
+            Assertions.assertTrue(ht.Insert(i, i * 10));
+            ht.VerifyIntegrity();
+        }
+        Assertions.assertFalse(ht.Insert(3, 0)); // duplicated key
+        Assertions.assertEquals(2, globalDepthOf(bpm, ht, 0));
+        // bucket 0 holds {0, 4} and cannot be split any more
+        Assertions.assertFalse(ht.Insert(8, 80));
+        Assertions.assertTrue(ht.GetValue(8).isEmpty());
+        for (int i = 0; i < 8; i++) {
+            Assertions.assertEquals(i * 10, ht.GetValue(i).get());
+        }
+
+        // a negative key goes to the other directory
+        Assertions.assertTrue(ht.GetValue(-1).isEmpty());
+        Assertions.assertTrue(ht.Insert(-1, -10));
+        Assertions.assertEquals(-10, ht.GetValue(-1).get());
+        Assertions.assertEquals(0, globalDepthOf(bpm, ht, 1));
+
+        // removing keys merges the empty buckets and shrinks the directory
+        for (int i = 0; i < 8; i += 2) {
+            Assertions.assertTrue(ht.Remove(i));
+            Assertions.assertFalse(ht.Remove(i));
+            ht.VerifyIntegrity();
+        }
+        for (int i = 0; i < 8; i++) {
+            Assertions.assertEquals(i % 2 == 0, ht.GetValue(i).isEmpty());
+        }
+        // buckets 0 and 2 are merged, but buckets 1 and 3 still have local depth 2
+        Assertions.assertEquals(2, globalDepthOf(bpm, ht, 0));
+        for (int i = 1; i < 8; i += 2) {
+            Assertions.assertTrue(ht.Remove(i));
+            ht.VerifyIntegrity();
+        }
+        Assertions.assertEquals(0, globalDepthOf(bpm, ht, 0));
+        Assertions.assertEquals(-10, ht.GetValue(-1).get());
+
+        // the table can be filled again
+        for (int i = 0; i < 8; i++) {
+            Assertions.assertTrue(ht.Insert(i, i));
+        }
+        ht.VerifyIntegrity();
+        for (int i = 0; i < 8; i++) {
+            Assertions.assertEquals(i, ht.GetValue(i).get());
+        }
+
+        bpm.shutDown();
+        diskManager.shutDown();
+    }
+
+    @Test
+    public void ConcurrentTest() throws InterruptedException {
+        final int numThreads = 8;
+        final int keysPerThread = 2000;
+        DiskManager diskManager = new DiskManager(DB_NAME);
+        BufferPoolManager bpm = new BufferPoolManager(64, diskManager);
+        var ht = new DiskExtendibleHashTable<Integer, Integer>("concurrent", bpm, PageCodec.INT, PageCodec.INT,
+                key -> key * 0x9E3779B9, 2, 9, 16);
+
+        // Scenario: threads insert disjoint keys, which split buckets concurrently.
+        runThreads(numThreads, t -> {
+            for (int i = 0; i < keysPerThread; i++) {
+                int key = t * keysPerThread + i;
+                Assertions.assertTrue(ht.Insert(key, -key));
+            }
+        });
+        ht.VerifyIntegrity();
+
+        // Scenario: readers see every key while other threads remove half of them.
+        runThreads(numThreads, t -> {
+            for (int i = 0; i < keysPerThread; i++) {
+                int key = t * keysPerThread + i;
+                if (t % 2 == 0) {
+                    Assertions.assertEquals(-key, ht.GetValue(key).get());
+                } else if (i % 2 == 0) {
+                    Assertions.assertTrue(ht.Remove(key));
+                }
+            }
+        });
+        ht.VerifyIntegrity();
+        for (int key = 0; key < numThreads * keysPerThread; key++) {
+            boolean removed = (key / keysPerThread) % 2 == 1 && key % 2 == 0;
+            Assertions.assertEquals(removed, ht.GetValue(key).isEmpty());
+        }
+
+        // Scenario: removing everything concurrently merges the buckets back.
+        runThreads(numThreads, t -> {
+            for (int i = 0; i < keysPerThread; i++) {
+                int key = t * keysPerThread + i;
+                boolean removed = t % 2 == 1 && i % 2 == 0;
+                Assertions.assertEquals(!removed, ht.Remove(key));
+            }
+        });
+        ht.VerifyIntegrity();
+        for (int directoryIdx = 0; directoryIdx < 4; directoryIdx++) {
+            Assertions.assertEquals(0, globalDepthOf(bpm, ht, directoryIdx));
+        }
+
+        bpm.shutDown();
+        diskManager.shutDown();
+    }
+
+    @Test
+    public void ReopenTest() {
+        final int numKeys = 1000;
+        DiskManager diskManager = new DiskManager(DB_NAME);
+        BufferPoolManager bpm = new BufferPoolManager(16, diskManager);
+        var ht = new DiskExtendibleHashTable<Integer, Integer>("reopen", bpm, PageCodec.INT, PageCodec.INT,
+                key -> key * 0x9E3779B9, 2, 9, 16);
+        for (int key = 0; key < numKeys; key++) {
+            Assertions.assertTrue(ht.Insert(key, -key));
+        }
+        final int headerPageId = ht.GetHeaderPageId();
+        bpm.flushAllPages();
+        bpm.shutDown();
+        diskManager.shutDown();
+
+        // Scenario: a new buffer pool on the same file finds every key through the header page.
+        diskManager = new DiskManager(DB_NAME);
+        bpm = new BufferPoolManager(16, diskManager);
+        var reopened = new DiskExtendibleHashTable<Integer, Integer>("reopen", bpm, headerPageId, PageCodec.INT,
+                PageCodec.INT, key -> key * 0x9E3779B9, 9, 16);
+        reopened.VerifyIntegrity();
+        for (int key = 0; key < numKeys; key++) {
+            Assertions.assertEquals(-key, reopened.GetValue(key).get());
+        }
+
+        // Scenario: the pages allocated after reopening do not overwrite the existing ones.
+        for (int key = numKeys; key < 2 * numKeys; key++) {
+            Assertions.assertTrue(reopened.Insert(key, -key));
+        }
+        reopened.VerifyIntegrity();
+        for (int key = 0; key < 2 * numKeys; key++) {
+            Assertions.assertEquals(-key, reopened.GetValue(key).get());
+        }
+
+        bpm.shutDown();
+        diskManager.shutDown();
+    }
+
+    private interface ThreadTask {
+        void run(int threadIdx);
+    }
+
+    private static void runThreads(int numThreads, ThreadTask task) throws InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            final int threadIdx = t;
+            threads.add(new Thread(() -> {
+                try {
+                    task.run(threadIdx);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertNull(failure.get());
+    }
+
+    private static int globalDepthOf(BufferPoolManager bpm, DiskExtendibleHashTable<?, ?> ht, int directoryIdx) {
+        int directoryPageId;
+        try (BasicPageGuard.ReadPageGuard headerGuard = bpm.FetchPageRead(ht.GetHeaderPageId())) {
+            directoryPageId = headerGuard.AsView(ExtendibleHTableHeaderPageView::new).getDirectoryPageId(directoryIdx);
+        }
+        try (BasicPageGuard.ReadPageGuard directoryGuard = bpm.FetchPageRead(directoryPageId)) {
+            return directoryGuard.AsView(ExtendibleHTableDirectoryPageView::new).GetGlobalDepth();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package storage.disk;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static config.DBConfig.BUSTUB_PAGE_SIZE;
+import static config.DBConfig.DISK_EXTENT_SIZE;
+
+public class TestDiskManager {
+    private static final String DB_NAME = "test_disk_manager.db";
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        Files.deleteIfExists(Paths.get(DB_NAME));
+        Files.deleteIfExists(Paths.get("test_disk_manager.log"));
+    }
+
+    @Test
+    public void ReadWritePageTest() throws IOException {
+        byte[] buf = new byte[BUSTUB_PAGE_SIZE];
+        byte[] data = new byte[BUSTUB_PAGE_SIZE];
+        DiskManager dm = new DiskManager(DB_NAME);
+        byte[] testArray = "A test string.".getBytes();
+        System.arraycopy(testArray, 0, data, 0, testArray.length);
+
+        dm.readPage(0, buf); // tolerate empty read
+        Assertions.assertArrayEquals(new byte[BUSTUB_PAGE_SIZE], buf);
+
+        dm.writePage(0, data);
+        dm.readPage(0, buf);
+        Assertions.assertArrayEquals(data, buf);
+
+        Arrays.fill(buf, (byte) 0);
+        dm.writePage(5, data);
+        dm.readPage(5, buf);
+        Assertions.assertArrayEquals(data, buf);
+        Assertions.assertEquals(2, dm.GetNumWrites());
+        // 文件按照extent增长
+        Assertions.assertEquals(DISK_EXTENT_SIZE, Files.size(Paths.get(DB_NAME)));
+        Assertions.assertEquals(DISK_EXTENT_SIZE / BUSTUB_PAGE_SIZE, dm.getNumPages());
+
+        dm.shutDown();
+        Assertions.assertEquals(1, dm.GetNumFlushes());
+
+        // 重新打开之后，数据依然存在
+        DiskManager reopened = new DiskManager(DB_NAME);
+        Assertions.assertEquals(DISK_EXTENT_SIZE / BUSTUB_PAGE_SIZE, reopened.getNumPages());
+        Arrays.fill(buf, (byte) 0);
+        reopened.readPage(5, buf);
+        Assertions.assertArrayEquals(data, buf);
+        reopened.shutDown();
+    }
+
+    @Test
+    public void ReadWritePageInPlaceTest() {
+        DiskManager dm = new DiskManager(DB_NAME);
+        byte[] data = new byte[BUSTUB_PAGE_SIZE];
+        Arrays.fill(data, (byte) 7);
+        dm.writePage(3, ByteBuffer.wrap(data));
+
+        // 直接读入到frame的buffer中，heap与direct buffer均可
+        ByteBuffer heap = ByteBuffer.wrap(new byte[BUSTUB_PAGE_SIZE]);
+        dm.readPage(3, heap);
+        Assertions.assertArrayEquals(data, heap.array());
+        Assertions.assertEquals(0, heap.position()); // buffer可以被直接复用
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(BUSTUB_PAGE_SIZE);
+        dm.readPage(3, direct);
+        byte[] buf = new byte[BUSTUB_PAGE_SIZE];
+        direct.get(0, buf);
+        Assertions.assertArrayEquals(data, buf);
+        dm.shutDown();
+    }
+
+    @Test
+    public void ReadWriteContiguousPagesTest() {
+        final int numPages = 8;
+        DiskManager dm = new DiskManager(DB_NAME);
+        ByteBuffer[] data = new ByteBuffer[numPages];
+        ByteBuffer[] buf = new ByteBuffer[numPages];
+        for (int i = 0; i < numPages; i++) {
+            byte[] bytes = new byte[BUSTUB_PAGE_SIZE];
+            Arrays.fill(bytes, (byte) (i + 1));
+            data[i] = ByteBuffer.wrap(bytes);
+            buf[i] = ByteBuffer.allocateDirect(BUSTUB_PAGE_SIZE);
+        }
+        dm.writePages(10, data);
+        Assertions.assertEquals(numPages, dm.GetNumWrites());
+
+        dm.readPages(10, buf);
+        for (int i = 0; i < numPages; i++) {
+            Assertions.assertEquals(data[i], buf[i]);
+        }
+        // 与单个页面的读写是一致的
+        byte[] single = new byte[BUSTUB_PAGE_SIZE];
+        dm.readPage(13, single);
+        Assertions.assertEquals(data[3], ByteBuffer.wrap(single));
+
+        // 超出文件末尾的部分为空
+        dm.readPages(DISK_EXTENT_SIZE / BUSTUB_PAGE_SIZE - 2, buf);
+        Assertions.assertEquals(ByteBuffer.allocate(BUSTUB_PAGE_SIZE), buf[numPages - 1]);
+        dm.shutDown();
+    }
+
+    @Test
+    public void ReadWriteLogTest() {
+        byte[] buf = new byte[16];
+        byte[] data = new byte[16];
+        DiskManager dm = new DiskManager(DB_NAME);
+        byte[] testArray = "A test string.".getBytes();
+        System.arraycopy(testArray, 0, data, 0, testArray.length);
+
+        Assertions.assertFalse(dm.ReadLog(buf, buf.length, 0)); // tolerate empty read
+
+        dm.WriteLog(data, data.length);
+        Assertions.assertTrue(dm.ReadLog(buf, buf.length, 0));
+        Assertions.assertArrayEquals(data, buf);
+        Assertions.assertEquals(1, dm.GetNumFlushes());
+        dm.shutDown();
+    }
+}
@@ -3,7 +3,9 @@ package storage.disk;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
@@ -39,7 +41,7 @@ public class TestDiskScheduler {
         byte[] buf = new byte[BUSTUB_PAGE_SIZE];
         byte[] data = new byte[BUSTUB_PAGE_SIZE];
 
-        DiskManager diskManager = new DiskManager(""); //TODO
+        DiskManager diskManager = new DiskManager("test.db");
         DiskScheduler diskScheduler = new DiskScheduler(diskManager);
 
         byte[] testArray = "A test string.".getBytes();
@@ -62,6 +64,81 @@ public class TestDiskScheduler {
 
     }
 
+    @Test
+    public void testMultiWorkerWriteReadPageTest() throws ExecutionException, InterruptedException {
+        DiskManager diskManager = new DiskManager("test.db");
+        DiskScheduler diskScheduler = new DiskScheduler(diskManager, 4);
+        Assertions.assertEquals(4, diskScheduler.getNumWorkers());
+        writeReadPages(diskScheduler);
+        diskScheduler.shutDown();
+        diskManager.shutDown();
+    }
+
+    @Test
+    public void testLockFreeQueueWriteReadPageTest() throws ExecutionException, InterruptedException {
+        DiskManager diskManager = new DiskManager("test.db");
+        DiskScheduler diskScheduler = new DiskScheduler(diskManager, 4, Thread::new, true);
+        writeReadPages(diskScheduler);
+        diskScheduler.shutDown();
+        diskManager.shutDown();
+    }
+
+    private static void writeReadPages(DiskScheduler diskScheduler) throws ExecutionException, InterruptedException {
+        final int numPages = 64;
+        byte[][] data = new byte[numPages][BUSTUB_PAGE_SIZE];
+        byte[][] buf = new byte[numPages][BUSTUB_PAGE_SIZE];
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int pageId = 0; pageId < numPages; pageId++) {
+            Arrays.fill(data[pageId], (byte) pageId);
+            // 同一个page的写请求和读请求被路由到同一个worker，所以读请求一定能读到刚刚写入的数据
+            Future<Boolean> writeFuture = DiskScheduler.createFuture();
+            diskScheduler.schedule(new DiskScheduler.DiskRequest(true, data[pageId], pageId, writeFuture));
+            Future<Boolean> readFuture = DiskScheduler.createFuture();
+            diskScheduler.schedule(new DiskScheduler.DiskRequest(false, buf[pageId], pageId, readFuture));
+            futures.add(writeFuture);
+            futures.add(readFuture);
+        }
+        for (Future<Boolean> future : futures) {
+            Assertions.assertTrue(future.get());
+        }
+        for (int pageId = 0; pageId < numPages; pageId++) {
+            Assertions.assertArrayEquals(data[pageId], buf[pageId]);
+        }
+    }
+
+    @Test
+    public void testBatchedContiguousPagesTest() throws ExecutionException, InterruptedException {
+        final int numPages = 256;
+        DiskManager diskManager = new DiskManager("test.db");
+        DiskScheduler diskScheduler = new DiskScheduler(diskManager, 2);
+
+        byte[][] data = new byte[numPages][BUSTUB_PAGE_SIZE];
+        byte[][] buf = new byte[numPages][BUSTUB_PAGE_SIZE];
+        List<Future<Boolean>> futures = new ArrayList<>();
+        // 逆序schedule，worker会将排队中的请求排序后合并
+        for (int pageId = numPages - 1; pageId >= 0; pageId--) {
+            Arrays.fill(data[pageId], (byte) (pageId * 7));
+            Future<Boolean> future = DiskScheduler.createFuture();
+            diskScheduler.schedule(new DiskScheduler.DiskRequest(true, data[pageId], pageId, future));
+            futures.add(future);
+        }
+        for (int pageId = 0; pageId < numPages; pageId++) {
+            Future<Boolean> future = DiskScheduler.createFuture();
+            diskScheduler.schedule(new DiskScheduler.DiskRequest(false, buf[pageId], pageId, future));
+            futures.add(future);
+        }
+        for (Future<Boolean> future : futures) {
+            Assertions.assertTrue(future.get());
+        }
+        for (int pageId = 0; pageId < numPages; pageId++) {
+            Assertions.assertArrayEquals(data[pageId], buf[pageId]);
+        }
+        Assertions.assertEquals(numPages, diskManager.GetNumWrites());
+
+        diskScheduler.shutDown();
+        diskManager.shutDown();
+    }
+
     @Test
     void testGetCharArrayLength() {
         char[] arr1 = "Hello".toCharArray();
@@ -5,8 +5,12 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import storage.disk.DiskManager;
 
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static storage.page.Page.INVALID_PAGE_ID;
 
@@ -70,6 +74,141 @@ public class ExtendibleHTablePageTest {
         }  // page guard dropped
     }
 
+    @Test
+    public void FingerprintBucketPageTest() {
+        var disk_mgr = new DiskManager("test.dbf");
+        var bpm = new BufferPoolManager(5, disk_mgr);
+
+        BasicPageGuard guard = bpm.newPageGuarded();
+        ExtendibleHTableBucketPage<Integer, Integer> bucket_page = guard.AsMut(new ExtendibleHTableBucketPage<Integer, Integer>(4, 4), ExtendibleHTableBucketPage.class );
+        bucket_page.init(200, 4, 4);
+        AtomicInteger numCompares = new AtomicInteger();
+        Comparator<Integer> comparator = (a, b) -> {
+            numCompares.incrementAndGet();
+            return Integer.compare(a, b);
+        };
+        for (int i = 0; i < 200; i++) {
+            Assertions.assertTrue(bucket_page.Insert(i, -i, comparator, Object::hashCode));
+        }
+
+        // the comparator is only called on the entries whose fingerprint matches
+        numCompares.set(0);
+        for (int i = 0; i < 200; i++) {
+            Assertions.assertEquals(-i, bucket_page.lookup(i, comparator, Object::hashCode).get());
+        }
+        Assertions.assertTrue(numCompares.get() < 200 * 2, "compared " + numCompares.get() + " times");
+        numCompares.set(0);
+        for (int i = 200; i < 400; i++) {
+            Assertions.assertTrue(bucket_page.lookup(i, comparator, Object::hashCode).isEmpty());
+        }
+        Assertions.assertTrue(numCompares.get() < 200, "compared " + numCompares.get() + " times");
+
+        // the fingerprints move with their entries
+        for (int i = 0; i < 200; i += 2) {
+            Assertions.assertTrue(bucket_page.Remove(i, comparator, Object::hashCode));
+        }
+        for (int i = 0; i < 200; i++) {
+            Assertions.assertEquals(i % 2 == 1, bucket_page.lookup(i, comparator, Object::hashCode).isPresent());
+        }
+        guard.drop();
+
+        // without a hash function, keys whose hashCode disagrees with the comparator are still found
+        var bytesBucket = new ExtendibleHTableBucketPage<byte[], Integer>(8, 4);
+        bytesBucket.init(16, 8, 4);
+        for (int i = 0; i < 16; i++) {
+            Assertions.assertTrue(bytesBucket.Insert(new byte[]{(byte) i}, i, Arrays::compare));
+        }
+        Assertions.assertFalse(bytesBucket.Insert(new byte[]{3}, 3, Arrays::compare));
+        for (int i = 0; i < 16; i++) {
+            Assertions.assertEquals(i, bytesBucket.lookup(new byte[]{(byte) i}, Arrays::compare).get());
+        }
+        Assertions.assertTrue(bytesBucket.Remove(new byte[]{7}, Arrays::compare));
+        Assertions.assertTrue(bytesBucket.lookup(new byte[]{7}, Arrays::compare).isEmpty());
+
+        // mixing calls with and without a hash function on one bucket fails loudly instead of missing entries
+        Assertions.assertThrows(RuntimeException.class,
+                () -> bytesBucket.lookup(new byte[]{3}, Arrays::compare, Arrays::hashCode));
+        Assertions.assertThrows(RuntimeException.class,
+                () -> bytesBucket.Insert(new byte[]{7}, 7, Arrays::compare, Arrays::hashCode));
+        var intBucket = new ExtendibleHTableBucketPage<Integer, Integer>(4, 4);
+        intBucket.init(16, 4, 4);
+        Assertions.assertTrue(intBucket.Insert(1, 1, comparator, Object::hashCode));
+        Assertions.assertThrows(RuntimeException.class, () -> intBucket.lookup(1, comparator));
+        Assertions.assertThrows(RuntimeException.class, () -> intBucket.Remove(1, comparator));
+        // init starts over, so the bucket can be reused in the other mode
+        intBucket.init(16, 4, 4);
+        Assertions.assertTrue(intBucket.Insert(1, 1, comparator));
+        Assertions.assertEquals(1, intBucket.lookup(1, comparator).get());
+
+        bpm.shutDown();
+        disk_mgr.shutDown();
+    }
+
+    @Test
+    public void SortedBucketPageTest() {
+        var disk_mgr = new DiskManager("test.dbf");
+        var bpm = new BufferPoolManager(5, disk_mgr);
+
+        BasicPageGuard guard = bpm.newPageGuarded();
+        ExtendibleHTableBucketPage<Integer, Integer> bucket_page = guard.AsMut(new ExtendibleHTableBucketPage<Integer, Integer>(4, 4), ExtendibleHTableBucketPage.class );
+        bucket_page.init(64, 4, 4, true);
+        Assertions.assertTrue(bucket_page.IsSorted());
+        AtomicInteger numCompares = new AtomicInteger();
+        Comparator<Integer> comparator = (a, b) -> {
+            numCompares.incrementAndGet();
+            return Integer.compare(a, b);
+        };
+
+        // insert in a scrambled order, the entries are kept ordered by key
+        for (int i = 0; i < 64; i++) {
+            int key = (i * 37) % 64;
+            Assertions.assertTrue(bucket_page.Insert(key, -key, comparator));
+        }
+        Assertions.assertTrue(bucket_page.IsFull());
+        Assertions.assertFalse(bucket_page.Insert(64, 64, comparator));
+        for (int i = 0; i < 64; i++) {
+            Assertions.assertEquals(i, bucket_page.KeyAt(i));
+            Assertions.assertEquals(-i, bucket_page.ValueAt(i));
+        }
+
+        // a lookup is a binary search
+        for (int i = 0; i < 64; i++) {
+            numCompares.set(0);
+            Assertions.assertEquals(-i, bucket_page.lookup(i, comparator).get());
+            Assertions.assertTrue(numCompares.get() <= 7);
+        }
+        numCompares.set(0);
+        Assertions.assertTrue(bucket_page.lookup(100, comparator).isEmpty());
+        Assertions.assertTrue(numCompares.get() <= 7);
+
+        // removing keeps the order
+        for (int i = 0; i < 64; i += 3) {
+            Assertions.assertTrue(bucket_page.Remove(i, comparator));
+        }
+        Assertions.assertFalse(bucket_page.Remove(0, comparator));
+        for (int i = 1; i < bucket_page.Size(); i++) {
+            Assertions.assertTrue(bucket_page.KeyAt(i - 1) < bucket_page.KeyAt(i));
+        }
+        Assertions.assertTrue(bucket_page.Insert(3, 3, comparator));
+        Assertions.assertEquals(3, bucket_page.KeyAt(2));
+        for (int i = 0; i < 64; i++) {
+            Assertions.assertEquals(i % 3 != 0 || i == 3, bucket_page.lookup(i, comparator).isPresent());
+        }
+
+        // the order survives writing the bucket back to the page
+        int bucket_page_id = guard.getPageId();
+        guard.drop(bucket_page);
+        guard = bpm.fetchPageBasic(bucket_page_id);
+        bucket_page = guard.As(new ExtendibleHTableBucketPage<Integer, Integer>(4, 4), ExtendibleHTableBucketPage.class );
+        Assertions.assertTrue(bucket_page.IsSorted());
+        Assertions.assertEquals(3, bucket_page.lookup(3, comparator).get());
+        Assertions.assertEquals(-62, bucket_page.lookup(62, comparator).get());
+        guard.drop();
+
+        bpm.shutDown();
+        disk_mgr.shutDown();
+    }
+
     @Test
     public void HeaderDirectoryPageSampleTest() {
         var disk_mgr = new DiskManager("test.dbf");
@@ -266,4 +405,178 @@ public class ExtendibleHTablePageTest {
         }  // page guard dropped
     }
 
+    @Test
+    public void HeaderDirectoryPageViewTest() {
+        var disk_mgr = new DiskManager("test.dbf");
+        var bpm = new BufferPoolManager(2, disk_mgr);
+
+        int header_page_id;
+        int directory_page_id;
+        try (BasicPageGuard header_guard = bpm.newPageGuarded()) {
+            header_page_id = header_guard.getPageId();
+            var header_page = header_guard.AsViewMut(ExtendibleHTableHeaderPageView::new);
+            header_page.init(2);
+            long[] hashes = new long[]{32768, 1073774592, 2147516416l, 3221258240l};
+            for (int i = 0; i < 4; i++) {
+                Assertions.assertEquals(i, header_page.hashToDirectoryIndex(hashes[i]));
+                Assertions.assertEquals(INVALID_PAGE_ID, header_page.getDirectoryPageId(i));
+            }
+            header_page.setDirectoryPageId(3, 7);
+        }
+
+        try (BasicPageGuard directory_guard = bpm.newPageGuarded()) {
+            directory_page_id = directory_guard.getPageId();
+            var directory_page = directory_guard.AsViewMut(ExtendibleHTableDirectoryPageView::new);
+            directory_page.init(3);
+            directory_page.SetBucketPageId(0, 2);
+            directory_page.VerifyIntegrity();
+            Assertions.assertFalse(directory_page.CanShrink());
+
+            // split bucket 0: 2 -> (2, 3)
+            directory_page.IncrGlobalDepth();
+            directory_page.IncrLocalDepth(0);
+            Assertions.assertEquals(1, directory_page.GetSplitImageIndex(0));
+            directory_page.SetBucketPageId(1, 3);
+            directory_page.SetLocalDepth(1, 1);
+            directory_page.VerifyIntegrity();
+
+            // split bucket 0 again: 2 -> (2, 4), bucket 3 is pointed to by 1 and 3
+            directory_page.IncrGlobalDepth();
+            directory_page.IncrLocalDepth(0);
+            Assertions.assertEquals(2, directory_page.GetSplitImageIndex(0));
+            directory_page.SetBucketPageId(2, 4);
+            directory_page.SetLocalDepth(2, 2);
+            directory_page.VerifyIntegrity();
+            Assertions.assertEquals(4, directory_page.Size());
+            Assertions.assertEquals(3, directory_page.GetBucketPageId(3));
+            Assertions.assertEquals(1, directory_page.GetLocalDepth(3));
+            Assertions.assertEquals(3, directory_page.GetLocalDepthMask(0));
+            for (int i = 0; i < 100; i++) {
+                Assertions.assertEquals(i % 4, directory_page.HashToBucketIndex(i));
+            }
+            Assertions.assertFalse(directory_page.CanShrink());
+        }
+
+        // evict both pages, the views are read from the frames written back to disk
+        for (int i = 0; i < 2; i++) {
+            try (BasicPageGuard guard = bpm.newPageGuarded()) {
+                Assertions.assertNotNull(guard);
+            }
+        }
+        try (BasicPageGuard.ReadPageGuard header_guard = bpm.FetchPageRead(header_page_id)) {
+            var header_page = header_guard.AsView(ExtendibleHTableHeaderPageView::new);
+            Assertions.assertEquals(4, header_page.maxSize());
+            Assertions.assertEquals(7, header_page.getDirectoryPageId(3));
+            Assertions.assertThrows(ReadOnlyBufferException.class, () -> header_page.setDirectoryPageId(0, 1));
+        }
+        try (BasicPageGuard.WritePageGuard directory_guard = bpm.FetchPageWrite(directory_page_id)) {
+            var directory_page = directory_guard.AsViewMut(ExtendibleHTableDirectoryPageView::new);
+            Assertions.assertEquals(2, directory_page.GetGlobalDepth());
+            Assertions.assertEquals(3, directory_page.GetMaxDepth());
+            directory_page.VerifyIntegrity();
+
+            // merge bucket 4 back into 2, then the directory can shrink
+            directory_page.SetBucketPageId(2, 2);
+            directory_page.DecrLocalDepth(0);
+            directory_page.DecrLocalDepth(2);
+            Assertions.assertTrue(directory_page.CanShrink());
+            directory_page.DecrGlobalDepth();
+            directory_page.VerifyIntegrity();
+            Assertions.assertEquals(2, directory_page.Size());
+        }
+
+        bpm.shutDown();
+        disk_mgr.shutDown();
+    }
+
+    @Test
+    public void BucketPageViewTest() {
+        var disk_mgr = new DiskManager("test.dbf");
+        var bpm = new BufferPoolManager(5, disk_mgr);
+
+        try (BasicPageGuard guard = bpm.newPageGuarded()) {
+            var bucket_page = guard.AsViewMut(ExtendibleHTableBucketPageView.of(PageCodec.INT, PageCodec.INT));
+            bucket_page.init(10);
+
+            for (int i = 0; i < 10; i++) {
+                Assertions.assertTrue(bucket_page.Insert(i, i));
+            }
+            Assertions.assertTrue(bucket_page.IsFull());
+            Assertions.assertFalse(bucket_page.Insert(11, 11));
+            for (int i = 0; i < 10; i++) {
+                Assertions.assertEquals(i, bucket_page.lookup(i).get());
+            }
+            for (int i = 1; i < 10; i += 2) {
+                Assertions.assertTrue(bucket_page.Remove(i));
+            }
+            for (int i = 0; i < 10; i++) {
+                if (i % 2 == 1) {
+                    Assertions.assertFalse(bucket_page.Remove(i));
+                    Assertions.assertTrue(bucket_page.lookup(i).isEmpty());
+                } else {
+                    Assertions.assertEquals(i, bucket_page.lookup(i).get());
+                }
+            }
+            Assertions.assertEquals(5, bucket_page.Size());
+            Assertions.assertFalse(bucket_page.Insert(0, 100)); // duplicated key
+            for (int i = 0; i < 10; i += 2) {
+                Assertions.assertTrue(bucket_page.Remove(i));
+            }
+            Assertions.assertTrue(bucket_page.IsEmpty());
+
+            // the default max size is every entry (with its fingerprint) which fits into the page
+            bucket_page.init();
+            Assertions.assertEquals((4096 - 8) / (8 + 1), bucket_page.MaxSize());
+            for (int i = 0; i < bucket_page.MaxSize(); i++) {
+                Assertions.assertTrue(bucket_page.Insert(i, -i));
+            }
+            Assertions.assertTrue(bucket_page.IsFull());
+            for (int i = 0; i < bucket_page.MaxSize(); i++) {
+                Assertions.assertEquals(-i, bucket_page.lookup(i).get());
+            }
+            Assertions.assertTrue(bucket_page.lookup(-1).isEmpty());
+        }
+
+        try (BasicPageGuard guard = bpm.newPageGuarded()) {
+            var bucket_page = guard.AsViewMut(ExtendibleHTableBucketPageView.of(PageCodec.bytes(16), PageCodec.LONG));
+            bucket_page.init();
+            Assertions.assertEquals((4096 - 8) / (2 + 16 + 8 + 1), bucket_page.MaxSize());
+            byte[] key = "hello".getBytes();
+            Assertions.assertTrue(bucket_page.Insert(key, 1L));
+            Assertions.assertTrue(bucket_page.Insert("hello!".getBytes(), 2L));
+            Assertions.assertTrue(bucket_page.Insert(new byte[0], 3L));
+            Assertions.assertFalse(bucket_page.Insert("hello".getBytes(), 4L));
+            Assertions.assertEquals(1L, bucket_page.lookup("hello".getBytes()).get());
+            Assertions.assertEquals(3L, bucket_page.lookup(new byte[0]).get());
+            Assertions.assertTrue(bucket_page.lookup("hell".getBytes()).isEmpty());
+            Assertions.assertArrayEquals(key, bucket_page.KeyAt(0));
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> bucket_page.Insert("a key longer than 16 bytes".getBytes(), 5L));
+        }
+
+        // every key has the same fingerprint, so the keys themselves must be compared
+        PageCodec<Integer> collidingCodec = new PageCodec<>() {
+            @Override public int width() { return PageCodec.INT.width(); }
+            @Override public void encode(ByteBuffer buf, int offset, Integer value) { PageCodec.INT.encode(buf, offset, value); }
+            @Override public Integer decode(ByteBuffer buf, int offset) { return PageCodec.INT.decode(buf, offset); }
+            @Override public boolean equalsAt(ByteBuffer buf, int offset, Integer value) { return PageCodec.INT.equalsAt(buf, offset, value); }
+            @Override public int hash(Integer value) { return 0; }
+        };
+        try (BasicPageGuard guard = bpm.newPageGuarded()) {
+            var bucket_page = guard.AsViewMut(ExtendibleHTableBucketPageView.of(collidingCodec, PageCodec.INT));
+            bucket_page.init(20);
+            for (int i = 0; i < 20; i++) {
+                Assertions.assertTrue(bucket_page.Insert(i, -i));
+            }
+            Assertions.assertFalse(bucket_page.Insert(20, 0));
+            Assertions.assertTrue(bucket_page.Remove(3));
+            for (int i = 0; i < 20; i++) {
+                Assertions.assertEquals(i != 3, bucket_page.lookup(i).isPresent());
+            }
+        }
+
+        bpm.shutDown();
+        disk_mgr.shutDown();
+    }
+
 }
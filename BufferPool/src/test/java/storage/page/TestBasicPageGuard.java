@@ -0,0 +1,326 @@
+package storage.page;
+
+import buffer.BufferPoolManager;
+import config.DBConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import storage.disk.DiskManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+public class TestBasicPageGuard {
+    private static final Logger logger = Logger.getLogger(TestBasicPageGuard.class.getName());
+    private static final String DB_NAME = "test_guard.db";
+
+    @AfterEach
+    public void cleanUp() {
+        try {
+            Files.deleteIfExists(Paths.get(DB_NAME));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void OptimisticReadTest() throws InterruptedException {
+        DiskManager diskManager = new DiskManager(DB_NAME);
+        BufferPoolManager bpm = new BufferPoolManager(4, diskManager);
+        BasicPageGuard guard = bpm.newPageGuarded();
+        Page page = bpm.getPages()[0];
+        Assertions.assertEquals(guard.getPageId(), page.getPageId());
+
+        // Scenario: without writers, the optimistic read sees the content of the page.
+        page.getBuffer().putLong(0, 42);
+        page.getBuffer().putLong(8, 42);
+        long value = guard.readOptimistic(buf -> buf.getLong(0));
+        Assertions.assertEquals(42L, value);
+        // the reader gets a read-only view
+        Assertions.assertThrows(ReadOnlyBufferException.class, () -> guard.readOptimistic(buf -> buf.putLong(0, 1)));
+
+        // Scenario: an Error thrown on data that was modified concurrently is ignored and the read is retried, but an
+        // Error thrown on consistent data is propagated.
+        AtomicInteger calls = new AtomicInteger();
+        long retried = guard.readOptimistic(buf -> {
+            if (calls.getAndIncrement() == 0) {
+                runAndJoin(() -> {
+                    page.wLatch();
+                    page.getBuffer().putLong(0, 43L);
+                    page.getBuffer().putLong(8, 43L);
+                    page.wUnLatch();
+                });
+                throw new OutOfMemoryError("a torn length field");
+            }
+            return buf.getLong(0);
+        });
+        Assertions.assertEquals(43L, retried);
+        Assertions.assertEquals(2, calls.get());
+        Assertions.assertThrows(OutOfMemoryError.class, () -> guard.readOptimistic(buf -> {
+            throw new OutOfMemoryError();
+        }));
+
+        // Scenario: while a writer keeps the two halves equal under the write latch, readers never see a torn pair.
+        Assertions.assertEquals(Boolean.TRUE, guard.readOptimistic(buf -> buf.getLong(0) == buf.getLong(8)));
+        AtomicBoolean stop = new AtomicBoolean(false);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            for (long v = 0; !stop.get(); v++) {
+                page.wLatch();
+                page.getBuffer().putLong(0, v);
+                page.getBuffer().putLong(8, v);
+                page.wUnLatch();
+            }
+        });
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            readers.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < 200_000; i++) {
+                        boolean consistent = guard.readOptimistic(buf -> buf.getLong(0) == buf.getLong(8));
+                        Assertions.assertTrue(consistent);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        writer.start();
+        readers.forEach(Thread::start);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        stop.set(true);
+        writer.join();
+        Assertions.assertNull(failure.get());
+
+        guard.drop();
+        bpm.shutDown();
+        diskManager.shutDown();
+    }
+
+    private static void runAndJoin(Runnable task) {
+        Thread thread = new Thread(task);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void UpgradeTest() throws InterruptedException {
+        DiskManager diskManager = new DiskManager(DB_NAME);
+        BufferPoolManager bpm = new BufferPoolManager(4, diskManager);
+        bpm.setBackgroundWriterCleanFraction(0);
+        BasicPageGuard guard = bpm.newPageGuarded();
+        int pageId = guard.getPageId();
+        Page page = bpm.getPages()[0];
+        guard.GetBufferMut().putInt(0, 42);
+
+        // Scenario: upgrading a basic guard keeps the pin and takes the latch.
+        BasicPageGuard.ReadPageGuard readGuard = guard.UpgradeRead();
+        Assertions.assertEquals(1, page.getPinCount());
+        Assertions.assertEquals(pageId, readGuard.PageId());
+        // the dirty flag moves with the pin
+        readGuard.drop();
+        Assertions.assertEquals(0, page.getPinCount());
+        Assertions.assertTrue(page.isDirty());
+
+        // Scenario: a read guard is upgraded in place only when it is the sole reader.
+        BasicPageGuard.ReadPageGuard first = bpm.FetchPageRead(pageId);
+        BasicPageGuard.ReadPageGuard second = bpm.FetchPageRead(pageId);
+        Assertions.assertNull(first.tryUpgradeWrite());
+        second.drop();
+        BasicPageGuard.WritePageGuard writeGuard = first.tryUpgradeWrite();
+        Assertions.assertNotNull(writeGuard);
+        Assertions.assertEquals(1, page.getPinCount());
+        Assertions.assertEquals(0, page.tryOptimisticRead()); // 持有写锁
+        writeGuard.drop(null);
+        Assertions.assertEquals(0, page.getPinCount());
+        Assertions.assertNotEquals(0, page.tryOptimisticRead());
+
+        // Scenario: UpgradeWrite waits for the other readers if it cannot upgrade at once.
+        BasicPageGuard.ReadPageGuard reader = bpm.FetchPageRead(pageId);
+        BasicPageGuard.ReadPageGuard other = bpm.FetchPageRead(pageId);
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            other.drop();
+        });
+        releaser.start();
+        writeGuard = reader.UpgradeWrite();
+        releaser.join();
+        Assertions.assertEquals(1, page.getPinCount());
+        writeGuard.drop(null);
+
+        // Scenario: a basic guard can be upgraded to a write guard directly.
+        guard = bpm.fetchPageBasic(pageId);
+        writeGuard = guard.UpgradeWrite();
+        Assertions.assertEquals(0, page.tryOptimisticRead());
+        Assertions.assertEquals(42, page.getBuffer().getInt(0));
+        Assertions.assertEquals(1, page.getPinCount());
+        writeGuard.drop(null);
+        Assertions.assertEquals(0, page.getPinCount());
+
+        bpm.shutDown();
+        diskManager.shutDown();
+    }
+
+    @Test
+    public void AutoCloseTest() {
+        DiskManager diskManager = new DiskManager(DB_NAME);
+        BufferPoolManager bpm = new BufferPoolManager(4, diskManager);
+        bpm.setGuardLeakDetection(true);
+        GuardLeakDetector leakDetector = bpm.getGuardLeakDetector();
+        Page page = bpm.getPages()[0];
+
+        // Scenario: guards are released at the end of try-with-resources, and closing twice is harmless.
+        int pageId;
+        try (BasicPageGuard guard = bpm.newPageGuarded()) {
+            pageId = guard.getPageId();
+            guard.GetBufferMut().putInt(0, 42);
+            Assertions.assertEquals(1, leakDetector.getNumOpenGuards());
+            guard.close();
+        }
+        Assertions.assertEquals(0, page.getPinCount());
+        try (BasicPageGuard.ReadPageGuard first = bpm.FetchPageRead(pageId);
+             BasicPageGuard.ReadPageGuard second = bpm.FetchPageRead(pageId)) {
+            Assertions.assertEquals(2, page.getPinCount());
+        }
+        Assertions.assertEquals(0, page.getPinCount());
+        try (BasicPageGuard.WritePageGuard guard = bpm.FetchPageWrite(pageId)) {
+            guard.GetBufferMut().putInt(0, 43);
+        }
+        Assertions.assertEquals(0, page.getPinCount());
+        Assertions.assertNotEquals(0, page.tryOptimisticRead()); // 写锁已经被释放
+
+        // Scenario: an upgraded guard is closed once, by its new owner.
+        try (BasicPageGuard.ReadPageGuard readGuard = bpm.FetchPageRead(pageId);
+             BasicPageGuard.WritePageGuard writeGuard = readGuard.tryUpgradeWrite()) {
+            Assertions.assertNotNull(writeGuard);
+        }
+        Assertions.assertEquals(0, page.getPinCount());
+        Assertions.assertEquals(0, leakDetector.getNumOpenGuards());
+
+        // Scenario: a guard which is never dropped is reported with the place it was acquired.
+        BasicPageGuard leaked = bpm.fetchPageBasic(pageId);
+        BasicPageGuard.ReadPageGuard upgraded = leaked.UpgradeRead();
+        Assertions.assertEquals(1, leakDetector.getNumOpenGuards());
+        Throwable acquisition = leakDetector.getOpenGuardAcquisitions().get(0);
+        Assertions.assertTrue(Arrays.stream(acquisition.getStackTrace())
+                .anyMatch(frame -> frame.getMethodName().equals("AutoCloseTest")));
+        Assertions.assertEquals(1, leakDetector.reportLeaks());
+        upgraded.close();
+        Assertions.assertEquals(0, leakDetector.getNumOpenGuards());
+
+        bpm.shutDown();
+        diskManager.shutDown();
+    }
+
+    @Test
+    public void FlushTest() {
+        DiskManager diskManager = new DiskManager(DB_NAME);
+        BufferPoolManager bpm = new BufferPoolManager(4, diskManager);
+        int pageId;
+        try (BasicPageGuard guard = bpm.newPageGuarded()) {
+            pageId = guard.getPageId();
+        }
+        ByteBuffer onDisk = ByteBuffer.allocate(DBConfig.BUSTUB_PAGE_SIZE);
+
+        // Scenario: a thread holding the latch flushes through its guard instead of deadlocking on the latch.
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            try (BasicPageGuard.WritePageGuard guard = bpm.FetchPageWrite(pageId)) {
+                guard.GetBufferMut().putInt(0, 42);
+                Assertions.assertTrue(guard.Flush());
+            }
+            diskManager.readPage(pageId, onDisk);
+            Assertions.assertEquals(42, onDisk.getInt(0));
+            try (BasicPageGuard.ReadPageGuard first = bpm.FetchPageRead(pageId);
+                 BasicPageGuard.ReadPageGuard second = bpm.FetchPageRead(pageId)) {
+                Assertions.assertTrue(first.Flush());
+            }
+        });
+        Page page = bpm.getPages()[0];
+        Assertions.assertEquals(0, page.getPinCount());
+        Assertions.assertNotEquals(0, page.tryOptimisticRead()); // latch已经被释放
+
+        // Scenario: without a guard, flushPage takes the latch itself.
+        try (BasicPageGuard.WritePageGuard guard = bpm.FetchPageWrite(pageId)) {
+            guard.GetBufferMut().putInt(0, 43);
+        }
+        Assertions.assertTrue(bpm.flushPage(pageId));
+        diskManager.readPage(pageId, onDisk);
+        Assertions.assertEquals(43, onDisk.getInt(0));
+
+        bpm.shutDown();
+        diskManager.shutDown();
+    }
+
+    /**
+     * 多个线程同时读同一个热点页面：每次都获取读锁 vs 乐观读
+     */
+    @Test
+    public void OptimisticReadBenchmark() throws InterruptedException {
+        final int numThreads = 4;
+        final int readsPerThread = 2_000_000;
+        DiskManager diskManager = new DiskManager(DB_NAME);
+        BufferPoolManager bpm = new BufferPoolManager(4, diskManager);
+        BasicPageGuard guard = bpm.newPageGuarded();
+        Page page = bpm.getPages()[0];
+        page.getBuffer().putLong(0, 42);
+
+        Function<ByteBuffer, Long> reader = buf -> buf.getLong(0);
+        long latched = runReaders(numThreads, () -> {
+            long sum = 0;
+            for (int i = 0; i < readsPerThread; i++) {
+                page.rLatch();
+                sum += reader.apply(page.getReadOnlyBuffer());
+                page.rUnLatch();
+            }
+            Assertions.assertEquals(42L * readsPerThread, sum);
+        });
+        long optimistic = runReaders(numThreads, () -> {
+            long sum = 0;
+            for (int i = 0; i < readsPerThread; i++) {
+                sum += guard.readOptimistic(reader);
+            }
+            Assertions.assertEquals(42L * readsPerThread, sum);
+        });
+        logger.info(String.format("%d threads x %d reads of one page: read latch %.1f ms, optimistic %.1f ms",
+                numThreads, readsPerThread, latched / 1e6, optimistic / 1e6));
+
+        guard.drop();
+        bpm.shutDown();
+        diskManager.shutDown();
+    }
+
+    private static long runReaders(int numThreads, Runnable task) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            threads.add(new Thread(task));
+        }
+        long start = System.nanoTime();
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -2,4 +2,46 @@ package config;
 
 public interface DBConfig {
     int BUSTUB_PAGE_SIZE = 4096;
+    /** db文件每次增长的大小，按照整块（extent）增长，而不是一个页面一个页面的增长 */
+    int DISK_EXTENT_SIZE = BUSTUB_PAGE_SIZE * 256;
+    /** DiskScheduler默认的后台I/O线程数，即同时进行中的I/O请求数（queue depth） */
+    int DISK_SCHEDULER_NUM_WORKERS = 4;
+    /** 连续的若干个页面被路由到同一个worker，从而使得相邻页面的请求可以被合并为一次vectored I/O */
+    int DISK_SCHEDULER_STRIPE_PAGES = 64;
+    /** DiskScheduler的worker一次最多从队列中取出的请求数 */
+    int DISK_SCHEDULER_MAX_BATCH = 64;
+    /**
+     * DiskScheduler是否默认使用lock-free的MPSC ring作为请求队列。默认关闭：在多个生产者使ring满的情况下，
+     * 它在测过的（单核）机器上比基于锁的无界队列更慢，需要在多核机器上重新测量之后再考虑打开
+     */
+    boolean DISK_SCHEDULER_LOCK_FREE_QUEUES = false;
+    /** DiskScheduler的lock-free队列的容量（2的幂），队列满时schedule会等待 */
+    int DISK_SCHEDULER_QUEUE_CAPACITY = 1024;
+    /** BufferPoolManager的page table被划分的stripe数（2的幂），每个stripe拥有自己的锁 */
+    int BUFFER_POOL_PAGE_TABLE_STRIPES = 64;
+    /** BufferPoolManager默认使用的LRU-K replacer的K */
+    int LRUK_REPLACER_K = 2;
+    /** 顺序scan使用的私有ring的页面数（256KB） */
+    int BUFFER_RING_SEQUENTIAL_PAGES = 64;
+    /** 批量写入使用的私有ring的页面数，比scan的大一些，从而不必每写一个页面就等待一次写回 */
+    int BUFFER_RING_BULK_WRITE_PAGES = 256;
+    /**
+     * 没有使用SEQUENTIAL strategy的fetch是否也检测顺序访问并预读。默认关闭：点查询（例如hash table的header和directory）
+     * 也可能恰好访问相邻的页面，不应因此预读一整个窗口
+     */
+    boolean READ_AHEAD_ALL_FETCHES = false;
+    /** 同一个调用者连续升序访问多少个页面之后开始预读 */
+    int READ_AHEAD_TRIGGER = 3;
+    /** 每次预读的页面数 */
+    int READ_AHEAD_PAGES = 16;
+    /** 乐观读失败（读的过程中页面被修改）多少次之后，改为获取读锁 */
+    int PAGE_OPTIMISTIC_READ_RETRIES = 4;
+    /** 是否默认记录每个page guard获取的位置，从而在shutDown时报告没有被drop的guard（泄漏的pin） */
+    boolean PAGE_GUARD_LEAK_DETECTION = false;
+    /** 后台写线程需要保持干净的evictable frame的比例，即replacer中最先被替换的这部分frame不应该是脏页 */
+    double BG_WRITER_CLEAN_FRACTION = 0.25;
+    /** 后台写线程每一轮之间的间隔 */
+    long BG_WRITER_DELAY_MS = 20;
+    /** 后台写线程每一轮最多写回的页面数 */
+    int BG_WRITER_MAX_PAGES = 128;
 }
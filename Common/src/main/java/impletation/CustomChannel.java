@@ -1,5 +1,7 @@
 package impletation;
 
+import java.util.Collection;
+
 // TODO 实现此类
 public interface CustomChannel<T> {
     void put(T element) throws InterruptedException;
@@ -7,4 +9,13 @@ public interface CustomChannel<T> {
     T get() throws InterruptedException;
 
     int size();
+
+    /**
+     * Removes at most the given number of available elements from this channel and adds them to the given collection.
+     * 不会阻塞，如果当前channel为空，则直接返回0
+     * @param c the collection to transfer elements into
+     * @param maxElements the maximum number of elements to transfer
+     * @return the number of elements transferred
+     */
+    int drainTo(Collection<? super T> c, int maxElements);
 }
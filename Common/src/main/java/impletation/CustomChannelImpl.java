@@ -1,6 +1,7 @@
 package impletation;
 
 import java.util.ArrayDeque;
+import java.util.Collection;
 import java.util.Queue;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -51,6 +52,27 @@ public class CustomChannelImpl<T> implements CustomChannel<T>{
 
     @Override
     public int size() {
-        return queue.size();
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> c, int maxElements) {
+        lock.lock();
+        try {
+            int n = 0;
+            T element;
+            while (n < maxElements && (element = queue.poll()) != null) {
+                c.add(element);
+                n++;
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
     }
 }
@@ -0,0 +1,189 @@
+package impletation;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map from int to int, without boxing.
+ * <p>
+ * 使用线性探测（linear probing），key和value分别存放在两个int数组中，查找时不需要任何的指针跳转，put也不会分配节点。
+ * 删除时使用backward shift，将后续同一个探测序列中的entry向前移动，所以不需要墓碑（tombstone），
+ * 查找的长度不会因为反复的put/remove而增长。
+ * </p>
+ * {@link #FREE_KEY} 被用来标记空的slot，所以不能作为key。非线程安全
+ */
+public class IntIntHashMap {
+    /** 空slot的标记，不能作为key */
+    public static final int FREE_KEY = Integer.MIN_VALUE;
+    private static final int MIN_CAPACITY = 8;
+    /** 装载因子为1/2，线性探测在装载因子较高时探测长度会迅速增长 */
+    private static final int MAX_LOAD_SHIFT = 1;
+
+    private final int missingValue;
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    /**
+     * @param expectedSize the number of entries expected to be held without resizing
+     * @param missingValue the value returned by {@link #get(int)}, {@link #put(int, int)} and {@link #remove(int)}
+     *                     when the key is absent
+     */
+    public IntIntHashMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        int capacity = MIN_CAPACITY;
+        while ((capacity >> MAX_LOAD_SHIFT) < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * @return the value of the key, or the missing value if the key is absent
+     */
+    public int get(int key) {
+        checkKey(key);
+        for (int i = slotOf(key); ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                return values[i];
+            }
+            if (k == FREE_KEY) {
+                return missingValue;
+            }
+        }
+    }
+
+    public boolean containsKey(int key) {
+        checkKey(key);
+        for (int i = slotOf(key); ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                return true;
+            }
+            if (k == FREE_KEY) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return the previous value of the key, or the missing value if the key was absent
+     */
+    public int put(int key, int value) {
+        checkKey(key);
+        int i = slotOf(key);
+        for (; keys[i] != FREE_KEY; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                int old = values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > (keys.length >> MAX_LOAD_SHIFT)) {
+            rehash(keys.length << 1);
+        }
+        return missingValue;
+    }
+
+    /**
+     * @return the removed value of the key, or the missing value if the key was absent
+     */
+    public int remove(int key) {
+        checkKey(key);
+        for (int i = slotOf(key); ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == FREE_KEY) {
+                return missingValue;
+            }
+            if (k == key) {
+                int old = values[i];
+                shiftBack(i);
+                size--;
+                return old;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        size = 0;
+    }
+
+    /**
+     * @return a copy of all the keys in the map, in no particular order
+     */
+    public int[] keys() {
+        int[] result = new int[size];
+        int n = 0;
+        for (int k : keys) {
+            if (k != FREE_KEY) {
+                result[n++] = k;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 删除slot中的entry：将探测序列中之后的entry向前移动，直到遇到空slot，
+     * 被移动的entry的理想位置不能在空出来的slot之后（按照环形的顺序）
+     * @param free the slot of the removed entry
+     */
+    private void shiftBack(int free) {
+        for (int i = (free + 1) & mask; keys[i] != FREE_KEY; i = (i + 1) & mask) {
+            int ideal = slotOf(keys[i]);
+            // 从ideal到i的探测路径经过了free，则可以移动到free
+            if (((i - ideal) & mask) >= ((i - free) & mask)) {
+                keys[free] = keys[i];
+                values[free] = values[i];
+                free = i;
+            }
+        }
+        keys[free] = FREE_KEY;
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            int key = oldKeys[j];
+            if (key != FREE_KEY) {
+                int i = slotOf(key);
+                while (keys[i] != FREE_KEY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE_KEY);
+        mask = capacity - 1;
+    }
+
+    private int slotOf(int key) {
+        int h = key * 0x9E3779B9; // 打散连续的key，否则线性探测会形成很长的cluster
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static void checkKey(int key) {
+        if (key == FREE_KEY) {
+            throw new IllegalArgumentException("key must not be " + FREE_KEY);
+        }
+    }
+}
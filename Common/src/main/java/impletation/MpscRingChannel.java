@@ -0,0 +1,155 @@
+package impletation;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free multi-producer / single-consumer channel backed by a ring buffer.
+ * <p>
+ * 生产者通过CAS tail来获取一个slot，之后再发布元素；唯一的消费者按照head的顺序取出元素。
+ * 与 {@link CustomChannelImpl} 不同，put 不需要获取锁，也不需要每次都signal：
+ * 只有在消费者因为队列为空而park时，生产者才会unpark它。
+ * 当ring满的时候，生产者会自旋等待（back-pressure），直到消费者取出元素。
+ * </p>
+ * 只能有一个线程调用 {@link #get()} 和 {@link #drainTo(Collection, int)}。
+ * Null Elements is prohibited
+ */
+public class MpscRingChannel<T> implements CustomChannel<T> {
+    /** 单核的机器上自旋没有意义，只会占用另一方所需要的CPU */
+    private static final int SPINS_BEFORE_YIELD = Runtime.getRuntime().availableProcessors() > 1 ? 64 : 0;
+    private static final int SPINS_BEFORE_PARK = SPINS_BEFORE_YIELD + 64;
+    private static final long PARK_NANOS = 10_000;
+
+    private final int capacity;
+    private final int mask;
+    /** null表示该slot为空，或者生产者已经获取了该slot但是还没有发布元素 */
+    private final AtomicReferenceArray<T> buffer;
+    /** 下一个被生产者获取的序号 */
+    private final AtomicLong tail = new AtomicLong(0);
+    /** 下一个被消费者取出的序号，只有消费者会修改 */
+    private volatile long head = 0;
+    /** 当前因为队列为空而被park的消费者，没有则为null */
+    private final AtomicReference<Thread> waitingConsumer = new AtomicReference<>();
+
+    /**
+     * @param capacity the capacity of the ring, must be a power of 2
+     */
+    public MpscRingChannel(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of 2: " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.buffer = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * 若ring已满，则等待消费者取出元素
+     * @param element the element to put, must not be null
+     */
+    @Override
+    public void put(T element) throws InterruptedException {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        long t;
+        for (int spins = 0; ; ) {
+            t = tail.get();
+            if (t - head >= capacity) { // full
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                backOff(spins++);
+                continue;
+            }
+            if (tail.compareAndSet(t, t + 1)) {
+                break;
+            }
+        }
+        buffer.set(index(t), element); // 发布元素（volatile write）
+        // 只有一个生产者会成功的取走waitingConsumer并unpark，避免每次put都进行一次系统调用
+        Thread consumer = waitingConsumer.get();
+        if (consumer != null && waitingConsumer.compareAndSet(consumer, null)) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * 若队列为空，则park当前（消费者）线程，直到有新的元素
+     */
+    @Override
+    public T get() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        final long h = head;
+        final int idx = index(h);
+        T element;
+        for (int spins = 0; (element = buffer.get(idx)) == null; spins++) {
+            if (tail.get() != h) { // 生产者已经获取了slot，但是还没有发布元素，很快就会完成
+                backOff(spins); // 生产者可能在发布之前被调度出去了
+                continue;
+            }
+            // 先声明自己将要park，再检查一次，避免错过生产者的unpark
+            waitingConsumer.set(Thread.currentThread());
+            if (buffer.get(idx) == null) {
+                LockSupport.park(this);
+            }
+            waitingConsumer.lazySet(null);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        take(h, idx);
+        return element;
+    }
+
+    @Override
+    public int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> c, int maxElements) {
+        int n = 0;
+        long h = head;
+        T element;
+        while (n < maxElements && (element = buffer.get(index(h))) != null) {
+            c.add(element);
+            take(h, index(h));
+            h++;
+            n++;
+        }
+        return n;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 先清空slot，再移动head，这样生产者看到新的head时，对应的slot一定已经为空
+     */
+    private void take(long h, int idx) {
+        buffer.lazySet(idx, null);
+        head = h + 1;
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence & mask);
+    }
+
+    private static void backOff(int spins) {
+        if (spins < SPINS_BEFORE_YIELD) {
+            Thread.onSpinWait();
+        } else if (spins < SPINS_BEFORE_PARK) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package util;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 public class ArrayUtils {
     public static void makeEmpty(char[] arr) {
         for (int i = 0; i < arr.length; i++) {
@@ -12,4 +15,22 @@ public class ArrayUtils {
             arr[i] = 0;
         }
     }
+
+    /**
+     * 将buffer中[0, capacity)全部置为0，不改变buffer的position和limit。
+     * 对于direct buffer，按照long的粒度进行写入
+     */
+    public static void makeEmpty(ByteBuffer buf) {
+        if (buf.hasArray()) {
+            Arrays.fill(buf.array(), buf.arrayOffset(), buf.arrayOffset() + buf.capacity(), (byte) 0);
+            return;
+        }
+        int i = 0;
+        for (; i + Long.BYTES <= buf.capacity(); i += Long.BYTES) {
+            buf.putLong(i, 0L);
+        }
+        for (; i < buf.capacity(); i++) {
+            buf.put(i, (byte) 0);
+        }
+    }
 }
@@ -14,6 +14,26 @@ public class BitUtils {
         return number >>> (Integer.SIZE - nBits);
     }
 
+    private static final long LOW_7_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long EVERY_BYTE = 0x0101010101010101L;
+
+    /**
+     * @return a one-byte fingerprint of the hash, 先乘以黄金分割常数再取最高的8位，所以hash的每一位都会影响结果
+     */
+    public static byte fingerprint(int hash) {
+        return (byte) ((hash * 0x9E3779B9) >>> 24);
+    }
+
+    /**
+     * SWAR (SIMD within a register)：一次比较一个long中的8个byte
+     * @return a mask with the highest bit set in every byte of word which equals to b, the other bits are 0
+     */
+    public static long matchBytes(long word, byte b) {
+        long x = word ^ ((b & 0xFFL) * EVERY_BYTE); // 相等的byte变为0
+        long t = ((x & LOW_7_BITS) + LOW_7_BITS) | x; // 非0的byte的最高位为1，不会在byte之间进位
+        return ~(t | LOW_7_BITS);
+    }
+
     public static void main(String[] args) {
         System.out.println(BitUtils.highestNbits(-1, 1));
     }
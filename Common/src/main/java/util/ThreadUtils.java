@@ -0,0 +1,74 @@
+package util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 创建virtual thread（JDK 21）的工具方法。项目以JDK 17编译，所以通过反射调用 Thread.ofVirtual()，
+ * 在不支持virtual thread的JDK上（包括没有开启preview的JDK 19/20）{@link #isVirtualThreadSupported()} 返回false。
+ * 注意：反射创建virtual thread的路径目前只在JDK 17上测试过不支持的分支，还没有在JDK 21上运行过
+ */
+public class ThreadUtils {
+    /** Thread.ofVirtual()，不支持时为null */
+    private static final Method OF_VIRTUAL;
+    /** Thread.Builder#name(String, long) */
+    private static final Method BUILDER_NAME;
+    /** Thread.Builder#factory() */
+    private static final Method BUILDER_FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            ofVirtual.invoke(null); // preview的JDK会抛出UnsupportedOperationException
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = name;
+        BUILDER_FACTORY = factory;
+    }
+
+    public static boolean isVirtualThreadSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @param namePrefix 线程名的前缀，之后是从0开始的编号
+     * @return a factory which creates (unstarted) virtual threads
+     * @throws UnsupportedOperationException if virtual threads are not supported by the running JDK
+     */
+    public static ThreadFactory virtualThreadFactory(String namePrefix) {
+        if (!isVirtualThreadSupported()) {
+            throw new UnsupportedOperationException("virtual threads are not supported by JDK " + Runtime.version());
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return an executor which starts a new virtual thread for each task
+     * @throws UnsupportedOperationException if virtual threads are not supported by the running JDK
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+        ThreadFactory factory = virtualThreadFactory(namePrefix);
+        try {
+            Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
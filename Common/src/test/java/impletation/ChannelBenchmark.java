@@ -0,0 +1,94 @@
+package impletation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较 {@link CustomChannelImpl} 和 {@link MpscRingChannel} 作为DiskScheduler请求队列时的吞吐量。
+ * 多个生产者put，一个消费者像DiskScheduler的worker一样批量地drainTo。
+ * 消费者不使用阻塞的get，否则在iteration结束、生产者停止之后它会一直阻塞。
+ * <p>
+ * 运行：mvn -pl Common test-compile 之后以test classpath运行本类的main方法
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChannelBenchmark {
+    /** 比 DBConfig.DISK_SCHEDULER_QUEUE_CAPACITY 大，使得iteration结束、消费者停止时ring不会满，否则生产者会一直等待 */
+    private static final int RING_CAPACITY = 1 << 16;
+    private static final int MAX_BATCH = 16;
+
+    @State(Scope.Group)
+    public static class Channel {
+        @Param({"lock", "ring"})
+        public String impl;
+
+        CustomChannel<Integer> channel;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            channel = impl.equals("ring") ? new MpscRingChannel<>(RING_CAPACITY) : new CustomChannelImpl<>();
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            channel.drainTo(new ArrayList<>(), Integer.MAX_VALUE);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Batch {
+        final List<Integer> batch = new ArrayList<>(MAX_BATCH);
+    }
+
+    @Benchmark
+    @Group("mpsc")
+    @GroupThreads(3)
+    public void put(Channel state) throws InterruptedException {
+        state.channel.put(1);
+    }
+
+    @Benchmark
+    @Group("mpsc")
+    @GroupThreads(1)
+    public int drain(Channel state, Batch batch) {
+        batch.batch.clear();
+        return state.channel.drainTo(batch.batch, MAX_BATCH);
+    }
+
+    /** 没有竞争时，一次put和一次取出的开销 */
+    @Benchmark
+    @Group("uncontended")
+    @GroupThreads(1)
+    public Integer putThenGet(Channel state) throws InterruptedException {
+        state.channel.put(1);
+        return state.channel.get();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ChannelBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,105 @@
+package impletation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较缓冲池page table（Map&lt;page_id, frame_id&gt;）使用 {@link IntIntHashMap} 和 HashMap&lt;Integer, Integer&gt; 时
+ * 命中的查找（fetch命中缓冲池）以及替换一个entry（miss之后淘汰一个page，载入另一个page）的开销。
+ * 使用 -prof gc 可以看到每次操作分配的字节数。
+ * <p>
+ * 运行：mvn -pl Common test-compile 之后以test classpath运行本类的main方法
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IntIntHashMapBenchmark {
+    private static final int MISSING = -1;
+    /** 2的幂，用于取模 */
+    private static final int NUM_LOOKUPS = 1 << 12;
+
+    /** 一个stripe中的entry数，以及整个缓冲池只有一个stripe时的entry数 */
+    @Param({"64", "4096"})
+    public int size;
+
+    private IntIntHashMap primitive;
+    private Map<Integer, Integer> boxed;
+    /** page_id都大于127，不会命中Integer的缓存 */
+    private int[] residentPageIds;
+    private int[] lookups;
+    private int next;
+    private int nextPageId;
+
+    @Setup
+    public void setUp() {
+        primitive = new IntIntHashMap(size, MISSING);
+        boxed = new HashMap<>();
+        residentPageIds = new int[size];
+        Random random = new Random(42);
+        for (int frameId = 0; frameId < size; frameId++) {
+            int pageId = 1000 + frameId * 7;
+            residentPageIds[frameId] = pageId;
+            primitive.put(pageId, frameId);
+            boxed.put(pageId, frameId);
+        }
+        lookups = new int[NUM_LOOKUPS];
+        for (int i = 0; i < NUM_LOOKUPS; i++) {
+            lookups[i] = residentPageIds[random.nextInt(size)];
+        }
+        nextPageId = 1000 + size * 7;
+    }
+
+    @Benchmark
+    public int hitPrimitive() {
+        return primitive.get(lookups[next++ & (NUM_LOOKUPS - 1)]);
+    }
+
+    @Benchmark
+    public int hitBoxed() {
+        Integer frameId = boxed.get(lookups[next++ & (NUM_LOOKUPS - 1)]);
+        return frameId == null ? MISSING : frameId;
+    }
+
+    /** 把frame中的page替换为一个新的page */
+    @Benchmark
+    public int replacePrimitive() {
+        int frameId = next++ & (size - 1);
+        primitive.remove(residentPageIds[frameId]);
+        residentPageIds[frameId] = nextPageId++;
+        return primitive.put(residentPageIds[frameId], frameId);
+    }
+
+    @Benchmark
+    public Integer replaceBoxed() {
+        int frameId = next++ & (size - 1);
+        boxed.remove(residentPageIds[frameId]);
+        residentPageIds[frameId] = nextPageId++;
+        return boxed.put(residentPageIds[frameId], frameId);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(IntIntHashMapBenchmark.class.getSimpleName())
+                .addProfiler("gc").build()).run();
+    }
+}
@@ -0,0 +1,102 @@
+package impletation;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Logger;
+
+public class TestIntIntHashMap {
+    private static final Logger logger = Logger.getLogger(TestIntIntHashMap.class.getName());
+    private static final int MISSING = -1;
+
+    @Test
+    public void testPutGetRemove() {
+        IntIntHashMap map = new IntIntHashMap(4, MISSING);
+        Assertions.assertEquals(MISSING, map.get(1));
+        Assertions.assertEquals(MISSING, map.put(1, 10));
+        Assertions.assertEquals(10, map.put(1, 11));
+        Assertions.assertEquals(11, map.get(1));
+        Assertions.assertTrue(map.containsKey(1));
+        Assertions.assertEquals(1, map.size());
+
+        Assertions.assertEquals(11, map.remove(1));
+        Assertions.assertEquals(MISSING, map.remove(1));
+        Assertions.assertFalse(map.containsKey(1));
+        Assertions.assertTrue(map.isEmpty());
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> map.put(IntIntHashMap.FREE_KEY, 0));
+    }
+
+    @Test
+    public void testAgainstHashMap() {
+        IntIntHashMap map = new IntIntHashMap(4, MISSING);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(15445);
+        for (int i = 0; i < 200_000; i++) {
+            int key = random.nextInt(1024) - 16; // 包括负数，且key的范围较小，从而反复的put/remove同一个探测序列
+            int op = random.nextInt(3);
+            if (op == 0) {
+                Assertions.assertEquals(expected.getOrDefault(key, MISSING), map.remove(key));
+                expected.remove(key);
+            } else if (op == 1) {
+                int value = random.nextInt(Integer.MAX_VALUE);
+                Assertions.assertEquals(expected.getOrDefault(key, MISSING), map.put(key, value));
+                expected.put(key, value);
+            } else {
+                Assertions.assertEquals(expected.getOrDefault(key, MISSING), map.get(key));
+            }
+            Assertions.assertEquals(expected.size(), map.size());
+        }
+        int[] keys = map.keys();
+        Arrays.sort(keys);
+        Assertions.assertArrayEquals(expected.keySet().stream().mapToInt(Integer::intValue).sorted().toArray(), keys);
+
+        map.clear();
+        Assertions.assertTrue(map.isEmpty());
+        Assertions.assertEquals(MISSING, map.get(keys.length > 0 ? keys[0] : 0));
+    }
+
+    /**
+     * page table的命中路径：对已经存在的page_id进行get
+     */
+    @Test
+    public void benchmarkHitPathAgainstHashMap() {
+        final int numPages = 1024;
+        final int lookups = 5_000_000;
+        int[] pageIds = new int[lookups];
+        Random random = new Random(0);
+        for (int i = 0; i < lookups; i++) {
+            pageIds[i] = random.nextInt(numPages);
+        }
+        IntIntHashMap primitive = new IntIntHashMap(numPages, MISSING);
+        Map<Integer, Integer> boxed = new HashMap<>();
+        for (int i = 0; i < numPages; i++) {
+            primitive.put(i, i % 64);
+            boxed.put(i, i % 64);
+        }
+
+        for (int round = 0; round < 3; round++) { // 前几轮用于预热
+            long start = System.nanoTime();
+            long sum = 0;
+            for (int pageId : pageIds) {
+                sum += primitive.get(pageId);
+            }
+            long primitiveNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long boxedSum = 0;
+            for (int pageId : pageIds) {
+                boxedSum += boxed.get(pageId);
+            }
+            long boxedNanos = System.nanoTime() - start;
+
+            Assertions.assertEquals(boxedSum, sum);
+            logger.info(String.format("round %d: IntIntHashMap %.2f ns/get, HashMap<Integer,Integer> %.2f ns/get",
+                    round, (double) primitiveNanos / lookups, (double) boxedNanos / lookups));
+        }
+    }
+}
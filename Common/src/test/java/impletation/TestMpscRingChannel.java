@@ -0,0 +1,109 @@
+package impletation;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Logger;
+
+public class TestMpscRingChannel {
+    private static final Logger logger = Logger.getLogger(TestMpscRingChannel.class.getName());
+
+    @Test
+    public void testFifo() throws InterruptedException {
+        CustomChannel<Integer> channel = new MpscRingChannel<>(4);
+        for (int i = 0; i < 4; i++) {
+            channel.put(i);
+        }
+        Assertions.assertEquals(4, channel.size());
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertEquals(i, channel.get());
+        }
+        Assertions.assertEquals(0, channel.size());
+
+        // 环形缓冲区可以被复用
+        for (int i = 0; i < 10; i++) {
+            channel.put(i);
+            List<Integer> drained = new ArrayList<>();
+            Assertions.assertEquals(1, channel.drainTo(drained, 8));
+            Assertions.assertEquals(List.of(i), drained);
+        }
+    }
+
+    @Test
+    public void testBlockingGetAndBackPressure() throws InterruptedException {
+        CustomChannel<Integer> channel = new MpscRingChannel<>(2);
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 100; i++) {
+                    channel.put(i); // ring满时会等待消费者
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        producer.start();
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals(i, channel.get());
+        }
+        producer.join();
+    }
+
+    @Test
+    public void testGetIsInterruptible() throws InterruptedException {
+        CustomChannel<Integer> channel = new MpscRingChannel<>(2);
+        Thread.currentThread().interrupt();
+        Assertions.assertThrows(InterruptedException.class, channel::get);
+    }
+
+    /**
+     * 多个生产者，一个消费者；比较与CustomChannelImpl的吞吐量
+     */
+    @Test
+    public void benchmarkAgainstCustomChannelImpl() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 200_000;
+        for (int round = 0; round < 3; round++) { // 前几轮作为预热
+            long lockBased = runMpsc(new CustomChannelImpl<>(), producers, perProducer);
+            long lockFree = runMpsc(new MpscRingChannel<>(1024), producers, perProducer);
+            logger.info(String.format("round %d: CustomChannelImpl %d ms, MpscRingChannel %d ms",
+                    round, lockBased / 1_000_000, lockFree / 1_000_000));
+        }
+    }
+
+    /**
+     * @return elapsed nanos
+     */
+    private static long runMpsc(CustomChannel<Long> channel, int producers, int perProducer) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                    for (long i = 0; i < perProducer; i++) {
+                        channel.put(i);
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        long sum = 0;
+        for (long i = 0; i < (long) producers * perProducer; i++) {
+            sum += channel.get();
+        }
+        long elapsed = System.nanoTime() - begin;
+        for (Thread t : threads) {
+            t.join();
+        }
+        Assertions.assertEquals((long) producers * perProducer * (perProducer - 1) / 2, sum);
+        return elapsed;
+    }
+}
@@ -0,0 +1,30 @@
+package util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class TestBitUtils {
+    @Test
+    public void testMatchBytes() {
+        Assertions.assertEquals(0x8000000000800080L, BitUtils.matchBytes(0x0501020304050605L, (byte) 5));
+        Assertions.assertEquals(0x8080808080808080L, BitUtils.matchBytes(-1L, (byte) -1));
+        Assertions.assertEquals(0L, BitUtils.matchBytes(0x0100010001000100L, (byte) 0x80));
+        // 0和0x80只有最高位不同，0x01紧跟在匹配的byte之后（不会因为借位产生false positive）
+        Assertions.assertEquals(0x0000800000800000L, BitUtils.matchBytes(0x8001000101008080L, (byte) 0));
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long word = random.nextLong();
+            byte b = (byte) (word >>> (8 * random.nextInt(8)));
+            long expected = 0;
+            for (int j = 0; j < Long.BYTES; j++) {
+                if ((byte) (word >>> (8 * j)) == b) {
+                    expected |= 0x80L << (8 * j);
+                }
+            }
+            Assertions.assertEquals(expected, BitUtils.matchBytes(word, b));
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TestThreadUtils {
+    @Test
+    public void testVirtualThreadFactory() throws InterruptedException {
+        Assertions.assertEquals(Runtime.version().feature() >= 21, ThreadUtils.isVirtualThreadSupported());
+        if (!ThreadUtils.isVirtualThreadSupported()) {
+            Assertions.assertThrows(UnsupportedOperationException.class, () -> ThreadUtils.virtualThreadFactory("vt-"));
+            return;
+        }
+        ThreadFactory factory = ThreadUtils.virtualThreadFactory("vt-");
+        AtomicBoolean ran = new AtomicBoolean(false);
+        Thread thread = factory.newThread(() -> ran.set(true));
+        Assertions.assertEquals("vt-0", thread.getName());
+        Assertions.assertTrue(thread.isDaemon()); // virtual thread总是daemon
+        thread.start();
+        thread.join();
+        Assertions.assertTrue(ran.get());
+    }
+}